@@ -0,0 +1,145 @@
+package org.rhm;
+
+import org.rhm.ast.Block;
+import org.rhm.ast.LoopOptimizer;
+import org.rhm.ast.Node;
+import org.rhm.ast.Optimizer;
+import org.rhm.ast.Resolver;
+import org.rhm.jit.JvmCodeCache;
+import org.rhm.tokens.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A script lexed, parsed, optimized and resolved once, for embedders that run the same script many times. Every run gets
+ * its own {@link Interpreter} and therefore fresh variables, the syntax tree is shared between runs.
+ */
+public class CompiledScript {
+    private final Block program;
+    private final Block optimized;
+    private final SymbolTable symbols;
+    private final SourceMap sourceMap;
+    private final RuntimeContext context;
+    private final Resolver resolver = new Resolver(true);
+    // JVM code of the optimized statements and their loops, compiled by the first run that needs it
+    private final JvmCodeCache jvmCode;
+
+    /**
+     * @param program top-level statements as parsed, with names referring to {@code symbols}
+     * @param context operators and functions the script was parsed with and runs with
+     */
+    public CompiledScript(Block program, SymbolTable symbols, SourceMap sourceMap, RuntimeContext context) {
+        this.program = program;
+        this.symbols = symbols;
+        this.sourceMap = sourceMap;
+        this.context = context;
+        this.jvmCode = new JvmCodeCache(context.getOperationManager());
+
+        Optimizer optimizer = new Optimizer(context);
+        LoopOptimizer loopOptimizer = new LoopOptimizer(newParser());
+        List<Node> statements = new ArrayList<>(program.statements().size());
+        for (Node statement : program.statements()) {
+            Node optimizedStatement = loopOptimizer.optimize(optimizer.optimize(statement));
+            resolver.resolve(optimizedStatement);
+            statements.add(optimizedStatement);
+        }
+        this.optimized = new Block(statements, program.offset());
+    }
+
+    /**
+     * Lexes and parses a whole script up front, in a context of its own.
+     *
+     * @throws SourceException if the script does not lex or parse
+     */
+    public static CompiledScript compile(String source) {
+        return compile(source, new RuntimeContext());
+    }
+
+    public static CompiledScript compile(String source, RuntimeContext context) {
+        TokenBuffer tokens = new Lexer(context).tokenizeCompact(source);
+        Block program = new Parser(tokens, context).getAstParser().parseProgram();
+        return new CompiledScript(program, tokens.getSymbols(), tokens.getSourceMap(), context);
+    }
+
+    /**
+     * @return the statements as parsed, before optimization
+     */
+    public Block getProgram() {
+        return program;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public SourceMap getSourceMap() {
+        return sourceMap;
+    }
+
+    public RuntimeContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return a parser carrying the symbols and source map of this script to an interpreter, it holds no tokens
+     */
+    private Parser newParser() {
+        return new Parser(new TokenBuffer(symbols, sourceMap, 1), context);
+    }
+
+    /**
+     * @return an interpreter without variables, to pass to {@link #execute(Interpreter)}. Interpreters of one script
+     * share its syntax tree and symbol table but no mutable state, so they may run on different threads.
+     */
+    public Interpreter newInterpreter() {
+        // a parser is bound to the interpreter created for it, every run gets its own
+        Interpreter interpreter = new Interpreter(newParser());
+        // the statements were optimized when the script was compiled
+        interpreter.setOptimizing(false);
+        interpreter.setResolver(resolver);
+        interpreter.getTierUp().setCache(jvmCode);
+        return interpreter;
+    }
+
+    /**
+     * @return an interpreter with {@code bindings} as its initial variables, names the script never mentions are
+     * left out since it cannot read them
+     */
+    public Interpreter newInterpreter(Map<String, ?> bindings) {
+        Interpreter interpreter = newInterpreter();
+        bindings.forEach((name, value) -> {
+            int symbol = symbols.lookup(name);
+            if (symbol != SymbolTable.NO_SYMBOL && value != null) {
+                interpreter.setVariableValue(symbol, value);
+            }
+        });
+        return interpreter;
+    }
+
+    /**
+     * Runs the script on an interpreter created by {@link #newInterpreter()}.
+     *
+     * @return value of the last top-level statement, see {@link Interpreter#interpret(Block)}
+     */
+    public Object execute(Interpreter interpreter) {
+        return interpreter.interpret(optimized);
+    }
+
+    /**
+     * Runs the script on the tree-walking engine with {@code bindings} as its initial variables.
+     *
+     * @return the variables the script ended with, including the bindings
+     */
+    public Map<String, Object> run(Map<String, ?> bindings) {
+        return run(bindings, Interpreter.Engine.TREE);
+    }
+
+    public Map<String, Object> run(Map<String, ?> bindings, Interpreter.Engine engine) {
+        Interpreter interpreter = newInterpreter(bindings);
+        interpreter.setEngine(engine);
+        execute(interpreter);
+        return interpreter.getVariables();
+    }
+}
@@ -0,0 +1,52 @@
+package org.rhm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects source errors instead of stopping at the first one.
+ */
+public class Diagnostics {
+    private static final Logger logger = LoggerFactory.getLogger(Diagnostics.class);
+
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    public void report(String message, int offset, SourceMap sourceMap) {
+        report(Diagnostic.at(message, offset, sourceMap));
+    }
+
+    public void report(Diagnostic diagnostic) {
+        logger.debug("Reported {}", diagnostic);
+        diagnostics.add(diagnostic);
+    }
+
+    public boolean hasErrors() {
+        return !diagnostics.isEmpty();
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * @param line   1-based line, 0 if the position is unknown
+     * @param column 1-based column, 0 if the position is unknown
+     */
+    public record Diagnostic(String message, int offset, int line, int column) {
+        public static Diagnostic at(String message, int offset, SourceMap sourceMap) {
+            if (offset == SourceMap.NO_POSITION || sourceMap == null) {
+                return new Diagnostic(message, offset, 0, 0);
+            }
+            return new Diagnostic(message, offset, sourceMap.line(offset), sourceMap.column(offset));
+        }
+
+        @Override
+        public String toString() {
+            return line == 0 ? message : line + ":" + column + ": " + message;
+        }
+    }
+}
@@ -4,14 +4,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FunctionManager {
     private static final Logger logger = LoggerFactory.getLogger(FunctionManager.class);
-
-    public final Map<String, FunctionHandler> functionHandlers = new HashMap<>();
+    // builtins whose result only depends on their arguments
+    private static final Set<String> PURE_FUNCTIONS = Set.of("sqrt", "abs", "max", "min", "len");
+
+    /**
+     * Whether all arguments are {@code Integer} or {@code Long}.
+     */
+    public static final String INTEGRAL = "$integral";
+    /**
+     * Whether the list argument has elements, fails like a {@code for} loop over a value that is not a list.
+     */
+    public static final String NON_EMPTY = "$nonempty";
+
+    // read by running scripts while functions are registered
+    public final Map<String, FunctionHandler> functionHandlers = new ConcurrentHashMap<>();
+    private final Map<String, FunctionHandler> builtinHandlers;
+    // bumped on every registration so interpreters drop functions they resolved by symbol
+    private volatile int version = 0;
 
     public FunctionManager() {
         functionHandlers.put("println", args -> {
@@ -53,8 +69,12 @@ public class FunctionManager {
             double result;
             if (value instanceof Integer) {
                 result = Math.abs((Integer) value);
+            } else if (value instanceof Long) {
+                result = Math.abs((Long) value);
             } else if (value instanceof Float) {
                 result = Math.abs((Float) value);
+            } else if (value instanceof Double) {
+                result = Math.abs((Double) value);
             } else {
                 logger.error("Unsupported type for 'abs': {}", value.getClass().getSimpleName());
                 throw new IllegalArgumentException("Unsupported type for abs: " + value.getClass().getSimpleName());
@@ -96,6 +116,48 @@ public class FunctionManager {
                 throw new IllegalArgumentException("Expected a list for 'len' function.");
             }
         });
+
+        // used by the loop optimizer, scripts cannot name them since identifiers never contain '$'
+        functionHandlers.put(INTEGRAL, args -> {
+            for (SafeObject arg : args) {
+                Object value = arg.getAs(Object.class);
+                if (!(value instanceof Integer || value instanceof Long)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+
+        functionHandlers.put(NON_EMPTY, args -> {
+            if (args[0].getAs(Object.class) instanceof List<?> list) {
+                return !list.isEmpty();
+            }
+            logger.error("Expected a list for 'for' loop, but found {}", args[0].getValueClass());
+            throw new IllegalArgumentException("Expected a list for 'for' loop.");
+        });
+
+        builtinHandlers = Map.copyOf(functionHandlers);
+    }
+
+    /**
+     * @return whether {@code name} is a builtin without side effects that has not been replaced, so calls with
+     * constant arguments may be evaluated ahead of time
+     */
+    public boolean isPure(String name) {
+        return PURE_FUNCTIONS.contains(name) && builtinHandlers.get(name) == functionHandlers.get(name);
+    }
+
+    /**
+     * Registers (or replaces) a builtin function at runtime.
+     */
+    public synchronized void registerFunction(String name, FunctionHandler handler) {
+        functionHandlers.put(name, handler);
+        version++;
+        logger.debug("Registered function '{}'", name);
+    }
+
+    public int getVersion() {
+        return version;
     }
 
     public interface FunctionHandler {
@@ -1,54 +1,358 @@
 package org.rhm;
 
-import org.rhm.keywords.KeywordManager;
-import org.rhm.tokens.TokenManager;
+import org.rhm.ast.Assign;
+import org.rhm.ast.AstParser;
+import org.rhm.ast.Block;
+import org.rhm.ast.Evaluator;
+import org.rhm.ast.FunctionDefinition;
+import org.rhm.ast.LoopOptimizer;
+import org.rhm.ast.Node;
+import org.rhm.ast.Optimizer;
+import org.rhm.ast.Resolver;
+import org.rhm.ast.ScriptFunction;
+import org.rhm.ast.Variable;
+import org.rhm.jit.JvmCode;
+import org.rhm.jit.TierUp;
 import org.rhm.util.Utils;
+import org.rhm.vm.BytecodeCompiler;
+import org.rhm.vm.VirtualMachine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Interpreter {
     private static final Logger logger = LoggerFactory.getLogger(Interpreter.class);
-    public static final OperationManager operationManager = new OperationManager();
-    public static final FunctionManager functionManager = new FunctionManager();
-    public static final KeywordManager keywordManager = new KeywordManager();
-    public static final TokenManager tokenManager = new TokenManager();
-    public static Interpreter instance;
+    /** Version of the language and its syntax tree, cached scripts of other versions are parsed again. */
+    public static final String VERSION = "1.0";
     private final Parser parser;
-    private final HashMap<String, Object> variables;
+    private final RuntimeContext context;
+    private final FunctionManager functionManager;
+    private final Evaluator evaluator;
+    private final VirtualMachine virtualMachine;
+    private final TierUp tierUp;
+    private final Optimizer optimizer;
+    private final LoopOptimizer loopOptimizer;
+    private Resolver resolver = new Resolver();
+    private boolean optimizing = true;
+    private Engine engine = Engine.TREE;
+    private final SymbolTable symbols;
+    // variable values and resolved functions, indexed by symbol id
+    private Object[] variables = new Object[64];
+    private FunctionManager.FunctionHandler[] functions = new FunctionManager.FunctionHandler[64];
+    private ScriptFunction[] scriptFunctions = new ScriptFunction[0];
+    private int functionVersion;
 
+    /**
+     * Creates an interpreter with fresh variables, running in the {@link RuntimeContext} of {@code parser}.
+     */
     public Interpreter(Parser parser) {
-        Interpreter.instance = this;
         this.parser = parser;
+        this.context = parser.getContext();
+        this.functionManager = context.getFunctionManager();
+        this.optimizer = new Optimizer(context);
         this.parser.interpreter = this;
-        this.variables = new HashMap<>();
+        this.symbols = parser.getSymbols();
+        this.functionVersion = functionManager.getVersion();
+        this.evaluator = new Evaluator(this);
+        this.virtualMachine = new VirtualMachine(this);
+        this.tierUp = new TierUp(this);
+        this.loopOptimizer = new LoopOptimizer(parser);
     }
 
+    /**
+     * How parsed statements are executed.
+     */
+    public enum Engine {
+        /** Walks the syntax tree directly. */
+        TREE,
+        /** Walks the syntax tree, specializing operators to the operand types they see. */
+        SPECIALIZING,
+        /** Compiles each statement to bytecode and runs it on the {@link VirtualMachine}. */
+        BYTECODE,
+        /**
+         * Compiles statements to JVM classes before running them, instead of waiting for them to get hot. Scripts
+         * parsed ahead of time are compiled as a whole before their first statement runs.
+         */
+        JVM
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+        evaluator.setSpecializing(engine == Engine.SPECIALIZING);
+    }
+
+    public boolean isOptimizing() {
+        return optimizing;
+    }
+
+    /**
+     * @param optimizing whether {@link #interpret()} runs statements through the {@link Optimizer} and
+     *                   {@link LoopOptimizer} first
+     */
+    public void setOptimizing(boolean optimizing) {
+        this.optimizing = optimizing;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public LoopOptimizer getLoopOptimizer() {
+        return loopOptimizer;
+    }
+
+    /**
+     * Runs the optimization passes {@link #interpret()} applies to every statement.
+     */
+    public Node optimize(Node node) {
+        return loopOptimizer.optimize(optimizer.optimize(node));
+    }
+
+    public Resolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * @param resolver finds the variables each statement needs defined before it runs
+     */
+    public void setResolver(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public TierUp getTierUp() {
+        return tierUp;
+    }
+
+    /**
+     * Called by the tree-walking evaluator as loops run.
+     *
+     * @return compiled code to continue with once {@code node} is hot, otherwise null
+     */
+    public JvmCode tierUp(Node node, int executions) {
+        return engine == Engine.TREE || engine == Engine.SPECIALIZING ? tierUp.count(node, executions) : null;
+    }
+
+    public Parser getParser() {
+        return parser;
+    }
+
+    public RuntimeContext getContext() {
+        return context;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Parses and executes the remaining script one top-level statement at a time, so streamed tokens can be
+     * released as soon as their statement is parsed.
+     */
     public void interpret() {
+        AstParser astParser = parser.getAstParser();
         while (parser.hasMoreTokens()) {
-            Utils.profile(parser::parseExpression, "parseExpression");
+            parser.releaseConsumedTokens();
+            Node parsed = astParser.parseStatement();
+            if (parsed != null) {
+                Node statement = optimizing ? optimize(parsed) : parsed;
+                // later statements are not parsed yet, so each one is checked right before it runs
+                checkDefined(resolver.resolve(statement));
+                Utils.profile(() -> executeStatement(statement), "execute");
+                // streamed statements run once, their profiles and code are not needed again
+                tierUp.reset();
+            }
+        }
+    }
+
+    /**
+     * Executes the top-level statements of a script parsed ahead of time, see {@link CompiledScript}. Reads of
+     * variables that neither the current variables nor any earlier statement define fail before the first statement
+     * runs.
+     *
+     * @return value of the last statement, the assigned value for an assignment and null for an empty script
+     */
+    public Object interpret(Block program) {
+        List<Node> statements = new ArrayList<>(program.statements().size());
+        // variables earlier statements may have assigned by the time a statement runs
+        BitSet defined = new BitSet();
+        for (Node statement : program.statements()) {
+            Node prepared = optimizing ? optimize(statement) : statement;
+            for (Variable read : resolver.resolve(prepared)) {
+                if (!defined.get(read.symbol())) {
+                    checkDefined(read);
+                }
+            }
+            defined.or(resolver.assigned(prepared));
+            statements.add(prepared);
+        }
+        if (engine == Engine.JVM) {
+            // a cache shared with earlier runs of the script already holds the code
+            for (Node statement : statements) {
+                if (!(statement instanceof FunctionDefinition)) {
+                    tierUp.compile(statement);
+                }
+            }
+        }
+        int last = statements.size() - 1;
+        for (int i = 0; i < last; i++) {
+            Node statement = statements.get(i);
+            Utils.profile(() -> executeStatement(statement), "execute");
+        }
+        if (last < 0) {
+            return null;
         }
+        Object[] value = new Object[1];
+        Utils.profile(() -> value[0] = execute(statements.get(last)), "execute");
+        return value[0] instanceof Parser.Assignment assignment ? assignment.value() : value[0];
     }
 
+    private void checkDefined(Variable... reads) {
+        for (Variable read : reads) {
+            if (read.symbol() >= variables.length || variables[read.symbol()] == null) {
+                logger.error("Statement reads the undefined variable {}", read.name());
+                throw new SourceException("Variable not defined: " + read.name(), read.offset(), parser.getSourceMap());
+            }
+        }
+    }
+
+    public Object execute(Node node) {
+        // function definitions are neither compiled to bytecode nor to JVM classes
+        if (engine == Engine.TREE || engine == Engine.SPECIALIZING || node instanceof FunctionDefinition) {
+            return evaluator.evaluate(node);
+        }
+
+        Object value;
+        if (engine == Engine.JVM) {
+            JvmCode code = tierUp.compile(node);
+            if (code == null) {
+                return evaluator.evaluate(node);
+            }
+            value = code.run(this);
+        } else {
+            value = virtualMachine.run(BytecodeCompiler.compileExpression(node));
+        }
+        return node instanceof Assign assign ? new Parser.Assignment(assign.name(), value) : value;
+    }
+
+    /**
+     * Runs a statement whose value is unused.
+     */
+    private void executeStatement(Node statement) {
+        if (engine == Engine.TREE || engine == Engine.SPECIALIZING || statement instanceof FunctionDefinition) {
+            evaluator.evaluate(statement);
+        } else if (engine == Engine.JVM) {
+            JvmCode code = tierUp.compile(statement);
+            if (code != null) {
+                code.run(this);
+            } else {
+                evaluator.evaluate(statement);
+            }
+        } else {
+            virtualMachine.run(BytecodeCompiler.compile(statement));
+        }
+    }
+
+
     public Object getVariableValue(String name) {
-        AtomicReference<Object> value = new AtomicReference<>();
-        Utils.profile(() -> {
-            value.set(variables.get(name));
-            if (value.get() == null) {
-                logger.error("Attempted to access an undefined variable: {}", name);
-                throw new IllegalArgumentException("Variable not defined: " + name);
+        int symbol = symbols.lookup(name);
+        if (symbol == SymbolTable.NO_SYMBOL) {
+            // reading must not intern, the symbol table may be shared with interpreters on other threads
+            logger.error("Attempted to access an undefined variable: {}", name);
+            throw new IllegalArgumentException("Variable not defined: " + name);
+        }
+        return getVariableValue(symbol);
+    }
+
+    public Object getVariableValue(int symbol) {
+        Object value = symbol < variables.length ? variables[symbol] : null;
+        if (value == null) {
+            logger.error("Attempted to access an undefined variable: {}", symbols.name(symbol));
+            throw new IllegalArgumentException("Variable not defined: " + symbols.name(symbol));
+        }
+        return value;
+    }
+
+    /**
+     * @return the defined variables by name, without the temporaries the optimizers introduce
+     */
+    public Map<String, Object> getVariables() {
+        Map<String, Object> defined = new LinkedHashMap<>();
+        for (int symbol = 0; symbol < Math.min(symbols.size(), variables.length); symbol++) {
+            if (variables[symbol] != null && !symbols.name(symbol).startsWith("$")) {
+                defined.put(symbols.name(symbol), variables[symbol]);
             }
-            logger.debug("Retrieved value {} for variable {}", value, name);
-        }, "getVariableValue");
-        return value.get();
+        }
+        return defined;
     }
 
     public void setVariableValue(String name, Object value) {
-        Utils.profile(() -> {
-            variables.put(name, value);
-            logger.debug("Assigned value {} to variable {}", value, name);
-        }, "setVariableValue");
+        setVariableValue(symbols.intern(name), value);
+    }
+
+    public void setVariableValue(int symbol, Object value) {
+        if (symbol >= variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(symbol + 1, variables.length * 2));
+        }
+        variables[symbol] = value;
+    }
+
+    /**
+     * @return the variable values indexed by symbol id, holding at least {@code size} slots. The array is replaced
+     * when a later assignment grows it, so it must not be kept across statements.
+     */
+    public Object[] getVariableSlots(int size) {
+        if (size > variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(size, variables.length * 2));
+        }
+        return variables;
+    }
+
+    /**
+     * Defines (or redefines) a function of the script. Builtins cannot be redefined.
+     */
+    public void defineFunction(ScriptFunction function) {
+        if (functionManager.functionHandlers.containsKey(function.getName())) {
+            logger.error("Attempted to redefine builtin function {}", function.getName());
+            throw new IllegalArgumentException("Cannot redefine builtin function: " + function.getName());
+        }
+        int symbol = function.getDefinition().symbol();
+        if (symbol >= scriptFunctions.length) {
+            scriptFunctions = Arrays.copyOf(scriptFunctions, Math.max(symbol + 1, scriptFunctions.length * 2));
+        }
+        scriptFunctions[symbol] = function;
+        logger.debug("Defined function {} with {} parameters", function.getName(), function.getArity());
+    }
+
+    /**
+     * @return the script or builtin function named by {@code symbol}, or null if there is none
+     */
+    public FunctionManager.FunctionHandler getFunction(int symbol) {
+        if (symbol < scriptFunctions.length && scriptFunctions[symbol] != null) {
+            return scriptFunctions[symbol];
+        }
+        if (functionVersion != functionManager.getVersion()) {
+            Arrays.fill(functions, null);
+            functionVersion = functionManager.getVersion();
+        }
+        if (symbol >= functions.length) {
+            functions = Arrays.copyOf(functions, Math.max(symbol + 1, functions.length * 2));
+        }
+
+        FunctionManager.FunctionHandler function = functions[symbol];
+        if (function == null) {
+            function = functionManager.functionHandlers.get(symbols.name(symbol));
+            functions[symbol] = function;
+        }
+        return function;
     }
 }
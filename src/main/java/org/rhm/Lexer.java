@@ -1,5 +1,7 @@
 package org.rhm;
 
+import org.rhm.tokens.ParenthesisTokenHandler;
+import org.rhm.tokens.TokenBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,10 +11,45 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class Lexer {
     private static final Logger logger = LoggerFactory.getLogger(Lexer.class);
     public static final Token<?> EOF_TOKEN = new Token<>(TokenType.EOF, null);
+    private final SymbolTable symbols;
+    private final RuntimeContext context;
+
+    /**
+     * Creates a lexer with its own {@link RuntimeContext}, which only knows the builtin operators and keywords.
+     */
+    public Lexer() {
+        this(new SymbolTable());
+    }
+
+    public Lexer(SymbolTable symbols) {
+        this(symbols, new RuntimeContext());
+    }
+
+    public Lexer(RuntimeContext context) {
+        this(new SymbolTable(), context);
+    }
+
+    /**
+     * @param context operators and keywords to recognize
+     */
+    public Lexer(SymbolTable symbols, RuntimeContext context) {
+        this.symbols = symbols;
+        this.context = context;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public RuntimeContext getContext() {
+        return context;
+    }
 
     public enum TokenType {
         INTEGER,
+        LONG,
         FLOAT,
+        DOUBLE,
         STRING,
         COMMENT,
         OPERATOR,
@@ -29,10 +66,17 @@ public class Lexer {
     public static class Token<T> {
         public TokenType type;
         private final SafeObject value;
+        // interned id of identifiers and string literals, SymbolTable.NO_SYMBOL for everything else
+        public final int symbol;
 
         public Token(TokenType type, T value) {
+            this(type, value, SymbolTable.NO_SYMBOL);
+        }
+
+        public Token(TokenType type, T value, int symbol) {
             this.type = type;
             this.value = new SafeObject(value);
+            this.symbol = symbol;
         }
 
         @Override
@@ -45,30 +89,149 @@ public class Lexer {
         }
     }
 
-    public List<Token<?>> tokenize(String source) {
+    public List<Token<?>> tokenize(CharSequence source) {
         List<Token<?>> tokens = new ArrayList<>();
-        int length = source.length();
+        tokenizeRange(source, 0, source.length(), symbols, tokens);
+        tokens.add(EOF_TOKEN);
+        return tokens;
+    }
+
+    /**
+     * Appends the tokens starting in {@code [start, end)} without an EOF token. Callers must only cut the source
+     * where no token spans the boundary.
+     */
+    void tokenizeRange(CharSequence source, int start, int end, SymbolTable symbols, List<Token<?>> tokens) {
+        AtomicInteger i = new AtomicInteger(start);
+
+        while (skipWhitespace(source, i, end)) {
+            tokens.add(nextToken(source, i, symbols, null));
+        }
+    }
+
+    /**
+     * Same token stream as {@link #tokenize(CharSequence)}, stored in a compact {@link TokenBuffer}.
+     */
+    public TokenBuffer tokenizeCompact(CharSequence source) {
+        return tokenizeCompact(source, null);
+    }
+
+    /**
+     * Like {@link #tokenizeCompact(CharSequence)}, but reports invalid input to {@code diagnostics} and skips it
+     * instead of throwing. Without diagnostics the first error is thrown as a {@link SourceException}.
+     */
+    public TokenBuffer tokenizeCompact(CharSequence source, Diagnostics diagnostics) {
+        SourceMap sourceMap = new SourceMap();
+        TokenBuffer tokens = new TokenBuffer(symbols, sourceMap);
         AtomicInteger i = new AtomicInteger(0);
+        int scanned = 0;
+
+        while (skipWhitespace(source, i, source.length())) {
+            int start = i.get();
+            sourceMap.scan(source, scanned, start);
+            scanned = start;
+
+            Token<?> token;
+            try {
+                token = nextToken(source, i, symbols, sourceMap);
+            } catch (SourceException e) {
+                if (diagnostics == null) {
+                    throw e;
+                }
+                diagnostics.report(e.getDiagnostic());
+                i.set(start + 1);
+                continue;
+            }
+            tokens.add(token.type, start, Math.min(i.get(), source.length()), token.getAs(Object.class), token.symbol);
+        }
 
-        while (i.get() < length) {
-            char currentChar = source.charAt(i.get());
+        sourceMap.scan(source, scanned, source.length());
+        tokens.add(TokenType.EOF, source.length(), source.length(), null, SymbolTable.NO_SYMBOL);
+        pairBrackets(tokens, diagnostics);
+        return tokens;
+    }
+
+    /**
+     * Pairs every bracket with its match, so the parser can find the end of a block without scanning for it.
+     * Unbalanced brackets are reported here, before anything is parsed.
+     */
+    private void pairBrackets(TokenBuffer tokens, Diagnostics diagnostics) {
+        int[] open = new int[16];
+        int depth = 0;
+        List<Diagnostics.Diagnostic> errors = new ArrayList<>();
 
-            if (Character.isWhitespace(currentChar)) {
-                i.incrementAndGet();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) != TokenType.PARENTHESIS) {
                 continue;
             }
 
-            Token<?> token = Interpreter.tokenManager.handleToken(source, i);
-            if (token != null) {
-                tokens.add(token);
-                logger.debug("Parsed token: {}", token);
+            ParenthesisTokenHandler.ParenthesisType type = (ParenthesisTokenHandler.ParenthesisType) tokens.value(i);
+            if (type.isOpening()) {
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                }
+                open[depth++] = i;
+            } else if (depth == 0) {
+                errors.add(Diagnostics.Diagnostic.at("Unmatched '" + type.getSymbol() + "'.", tokens.start(i), tokens.getSourceMap()));
             } else {
-                logger.error("Invalid character at index {}: {}", i.get(), currentChar);
-                throw new IllegalArgumentException("Invalid character at index " + i.get() + ": " + currentChar);
+                int opening = open[--depth];
+                ParenthesisTokenHandler.ParenthesisType openType = (ParenthesisTokenHandler.ParenthesisType) tokens.value(opening);
+                if (openType.closing() != type) {
+                    Diagnostics.Diagnostic at = Diagnostics.Diagnostic.at("", tokens.start(opening), tokens.getSourceMap());
+                    errors.add(Diagnostics.Diagnostic.at("Expected '" + openType.closing().getSymbol() + "' to close '"
+                            + openType.getSymbol() + "' from " + at.line() + ":" + at.column() + " but found '" + type.getSymbol() + "'.",
+                            tokens.start(i), tokens.getSourceMap()));
+                }
+                tokens.pair(opening, i);
             }
         }
 
-        tokens.add(EOF_TOKEN);
-        return tokens;
+        for (int i = 0; i < depth; i++) {
+            ParenthesisTokenHandler.ParenthesisType type = (ParenthesisTokenHandler.ParenthesisType) tokens.value(open[i]);
+            errors.add(Diagnostics.Diagnostic.at("Unclosed '" + type.getSymbol() + "'.", tokens.start(open[i]), tokens.getSourceMap()));
+        }
+
+        for (Diagnostics.Diagnostic error : errors) {
+            logger.error("Unbalanced brackets: {}", error);
+            if (diagnostics == null) {
+                throw new SourceException(error);
+            }
+            diagnostics.report(error);
+        }
+    }
+
+    /**
+     * @return whether there is a token left after skipping whitespace
+     */
+    private boolean skipWhitespace(CharSequence source, AtomicInteger i, int end) {
+        while (i.get() < end && Character.isWhitespace(source.charAt(i.get()))) {
+            i.incrementAndGet();
+        }
+        return i.get() < end;
+    }
+
+    /**
+     * @param sourceMap line starts up to the current index, or null to build them only when reporting an error
+     */
+    private Token<?> nextToken(CharSequence source, AtomicInteger i, SymbolTable symbols, SourceMap sourceMap) {
+        int start = i.get();
+        Token<?> token;
+        try {
+            token = context.getTokenManager().handleToken(source, i, symbols);
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            // handlers reject malformed literals without knowing where they are
+            i.set(start);
+            throw new SourceException(e.getMessage(), start, sourceMap != null ? sourceMap : SourceMap.of(source));
+        }
+
+        if (token == null) {
+            char currentChar = source.charAt(start);
+            SourceException error = new SourceException("Invalid character: " + currentChar, start, sourceMap != null ? sourceMap : SourceMap.of(source));
+            logger.error("{}", error.getMessage());
+            throw error;
+        }
+        logger.debug("Parsed token: {}", token);
+        return token;
     }
-}
\ No newline at end of file
+}
@@ -7,33 +7,110 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
+    // shared by every script this process runs, so the interactive mode keeps registered operators
+    private static final RuntimeContext context = new RuntimeContext();
+
+    private static Interpreter.Engine engine = Interpreter.Engine.TREE;
+    private static ScriptCache cache;
+
     public static void main(String[] args) {
-        if (args.length > 0) {
+        if (args.length > 1 && args[0].equals("--engine")) {
+            engine = switch (args[1]) {
+                case "vm" -> Interpreter.Engine.BYTECODE;
+                case "jvm" -> Interpreter.Engine.JVM;
+                case "specializing" -> Interpreter.Engine.SPECIALIZING;
+                default -> Interpreter.Engine.TREE;
+            };
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (args.length > 1 && args[0].equals("--cache")) {
+            cache = new ScriptCache(Paths.get(args[1]), context);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (args.length > 1 && args[0].equals("--stream")) {
+            streamFile(args[1]);
+        } else if (args.length > 0) {
             String filePath = args[0];
             String content = readFile(filePath);
 
-            if (content != null) {
-                Lexer lexer = new Lexer();
-                List<Lexer.Token<?>> tokens = new ArrayList<>();
-                Utils.profile(() -> tokens.addAll(lexer.tokenize(content)), "Lexing Process");
-                displayTokens(tokens);
-
-                Parser parser = new Parser(tokens);
-                Interpreter interpreter = new Interpreter(parser);
-                interpreter.interpret();
+            if (content != null && cache != null) {
+                runCached(filePath, content);
+            } else if (content != null) {
+                try {
+                    Lexer lexer = new Lexer(context);
+                    AtomicReference<List<Lexer.Token<?>>> tokenBuffer = new AtomicReference<>();
+                    Utils.profile(() -> tokenBuffer.set(lexer.tokenizeCompact(content)), "Lexing Process");
+                    List<Lexer.Token<?>> tokens = tokenBuffer.get();
+                    displayTokens(tokens);
+
+                    Parser parser = new Parser(tokens, context);
+                    Interpreter interpreter = new Interpreter(parser);
+                    interpreter.setEngine(engine);
+                    interpreter.interpret();
+                } catch (SourceException e) {
+                    System.err.println(filePath + ":" + e.getMessage());
+                }
             }
         } else {
             enterInteractiveMode();
         }
     }
 
+    /**
+     * Lexes and interprets a script straight from a memory-mapped file without holding all of its tokens.
+     */
+    private static void streamFile(String filePath) {
+        try (StreamingLexer lexer = StreamingLexer.open(Paths.get(filePath), context)) {
+            Parser parser = new Parser(lexer);
+            Interpreter interpreter = new Interpreter(parser);
+            interpreter.setEngine(engine);
+            Utils.profile(interpreter::interpret, "Streaming Interpretation");
+        } catch (SourceException e) {
+            System.err.println(filePath + ":" + e.getMessage());
+        } catch (IOException e) {
+            logger.error("Error reading file: {}", filePath, e);
+        }
+    }
+
+    /**
+     * Runs a script through the {@link ScriptCache}, so an unchanged script is neither lexed nor parsed again.
+     * Scripts that do not parse run uncached, which executes the statements before the error like any other run.
+     */
+    private static void runCached(String filePath, String content) {
+        CompiledScript script;
+        try {
+            script = cache.load(content);
+        } catch (SourceException e) {
+            logger.debug("Not caching {}: {}", filePath, e.getMessage());
+            try {
+                Interpreter interpreter = new Interpreter(new Parser(new Lexer(context).tokenizeCompact(content), context));
+                interpreter.setEngine(engine);
+                interpreter.interpret();
+            } catch (SourceException error) {
+                System.err.println(filePath + ":" + error.getMessage());
+            }
+            return;
+        }
+
+        try {
+            Interpreter interpreter = script.newInterpreter();
+            interpreter.setEngine(engine);
+            script.execute(interpreter);
+        } catch (SourceException e) {
+            System.err.println(filePath + ":" + e.getMessage());
+        }
+    }
+
     private static String readFile(String filePath) {
         try {
             return new String(Files.readAllBytes(Paths.get(filePath)));
@@ -57,13 +134,18 @@ public class Main {
             }
 
             if (!input.isEmpty()) {
-                Lexer lexer = new Lexer();
-                List<Lexer.Token<?>> tokens = lexer.tokenize(input);
-                displayTokens(tokens);
-
-                Parser parser = new Parser(tokens);
-                Interpreter interpreter = new Interpreter(parser);
-                interpreter.interpret();
+                try {
+                    Lexer lexer = new Lexer(context);
+                    List<Lexer.Token<?>> tokens = lexer.tokenizeCompact(input);
+                    displayTokens(tokens);
+
+                    Parser parser = new Parser(tokens, context);
+                    Interpreter interpreter = new Interpreter(parser);
+                    interpreter.setEngine(engine);
+                    interpreter.interpret();
+                } catch (SourceException e) {
+                    System.err.println(e.getMessage());
+                }
             }
         }
 
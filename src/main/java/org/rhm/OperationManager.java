@@ -3,83 +3,97 @@ package org.rhm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
 
 public class OperationManager {
     private static final Logger logger = LoggerFactory.getLogger(OperationManager.class);
+    /**
+     * Precedence of operators registered without one, binds like {@code +}.
+     */
+    public static final int DEFAULT_PRECEDENCE = 9;
+    // operand types of the dispatch table, the numeric types followed by everything else
+    private static final int OTHER = 4;
+    private static final int OPERAND_TYPES = OTHER + 1;
+    // binding strength of the builtin operators, higher binds tighter
+    private static final Map<String, Integer> PRECEDENCE = Map.ofEntries(
+            Map.entry("=", 1), Map.entry("+=", 1), Map.entry("-=", 1), Map.entry("^=", 1), Map.entry("%=", 1),
+            Map.entry("||", 2),
+            Map.entry("&&", 3),
+            Map.entry("|", 4),
+            Map.entry("&", 5),
+            Map.entry("==", 6),
+            Map.entry("<", 7), Map.entry("<=", 7), Map.entry(">", 7), Map.entry(">=", 7),
+            Map.entry("<<", 8), Map.entry(">>", 8),
+            Map.entry("+", 9), Map.entry("-", 9),
+            Map.entry("*", 10), Map.entry("/", 10), Map.entry("//", 10), Map.entry("%", 10),
+            Map.entry("^", 11),
+            Map.entry("~", 12));
+    private static final Set<String> RIGHT_ASSOCIATIVE = Set.of("=", "+=", "-=", "^=", "%=", "^");
+
     public final LinkedHashMap<String, OperatorHandler> operatorHandlers = new LinkedHashMap<>();
+    // handlers defined by the constructor, whose semantics evaluators may reimplement
+    private final Map<String, OperatorHandler> builtinHandlers;
+    private final Map<String, Operator> operators = new ConcurrentHashMap<>();
+    // indexed by operator code, replaced as a whole on registration
+    private volatile Operator[] operatorsByCode = new Operator[0];
+    // implementations of builtin operators for each pair of numeric operand types, see dispatch
+    private final Map<String, OperatorHandler[]> numericHandlers = new LinkedHashMap<>();
+    // indexed by (operator code, left operand type, right operand type), replaced as a whole with operatorsByCode
+    private volatile OperatorHandler[] dispatch = new OperatorHandler[0];
+    // bumped on every registration so the lexer knows when to recompile its operator table
+    private volatile int version = 0;
 
     public OperationManager() {
         operatorHandlers.put("+", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '+' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer && rightOperand instanceof Integer) {
-                return (Integer) leftOperand + (Integer) rightOperand;
-            } else {
-                float left = toFloat(leftOperand);
-                float right = toFloat(rightOperand);
-                return left + right;
-            }
+            return arithmetic(leftOperand, rightOperand, Integer::sum, Long::sum, Double::sum);
         });
 
         operatorHandlers.put("-", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '-' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer && rightOperand instanceof Integer) {
-                return (Integer) leftOperand - (Integer) rightOperand;
-            } else {
-                float left = toFloat(leftOperand);
-                float right = toFloat(rightOperand);
-                return left - right;
-            }
+            return arithmetic(leftOperand, rightOperand, (left, right) -> left - right, (left, right) -> left - right, (left, right) -> left - right);
         });
 
         operatorHandlers.put("*", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '*' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer && rightOperand instanceof Integer) {
-                return (Integer) leftOperand * (Integer) rightOperand;
-            } else {
-                float left = toFloat(leftOperand);
-                float right = toFloat(rightOperand);
-                return left * right;
-            }
+            return arithmetic(leftOperand, rightOperand, (left, right) -> left * right, (left, right) -> left * right, (left, right) -> left * right);
         });
 
         operatorHandlers.put("//", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '//' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer && rightOperand instanceof Integer) {
-                return (Integer) leftOperand / (Integer) rightOperand;
-            } else {
-                float left = toFloat(leftOperand);
-                float right = toFloat(rightOperand);
-                return Math.round(left) / Math.round(right);
+            switch (promote(leftOperand, rightOperand)) {
+                case INTEGER:
+                    return (Integer) leftOperand / (Integer) rightOperand;
+                case LONG:
+                    return toLong(leftOperand) / toLong(rightOperand);
+                case FLOAT:
+                    return Math.round((float) toDouble(leftOperand)) / Math.round((float) toDouble(rightOperand));
+                default:
+                    return Math.round(toDouble(leftOperand)) / Math.round(toDouble(rightOperand));
             }
         });
         operatorHandlers.put("/", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '/' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer && rightOperand instanceof Integer) {
-                return (Integer) leftOperand / (Integer) rightOperand;
-            } else {
-                float left = toFloat(leftOperand);
-                float right = toFloat(rightOperand);
-                return left / right;
-            }
+            return arithmetic(leftOperand, rightOperand, (left, right) -> left / right, (left, right) -> left / right, (left, right) -> left / right);
         });
 
         operatorHandlers.put("%", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '%' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer && rightOperand instanceof Integer) {
-                return (Integer) leftOperand % (Integer) rightOperand;
-            } else {
-                float left = toFloat(leftOperand);
-                float right = toFloat(rightOperand);
-                return left % right;
-            }
+            return arithmetic(leftOperand, rightOperand, (left, right) -> left % right, (left, right) -> left % right, (left, right) -> left % right);
         });
 
         operatorHandlers.put("^", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '^' with operands: {} and {}", leftOperand, rightOperand);
-            float left = toFloat(leftOperand);
-            float right = toFloat(rightOperand);
-            return (float) Math.pow(left, right);
+            double result = Math.pow(toDouble(leftOperand), toDouble(rightOperand));
+            return promote(leftOperand, rightOperand) == NumericType.DOUBLE ? (Object) result : (Object) (float) result;
         });
 
         operatorHandlers.put("=", (leftOperand, rightOperand) -> {
@@ -94,22 +108,34 @@ public class OperationManager {
 
         operatorHandlers.put(">=", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '>=' with operands: {} and {}", leftOperand, rightOperand);
-            return toFloat(leftOperand) >= toFloat(rightOperand);
+            if (isIntegral(leftOperand) && isIntegral(rightOperand)) {
+                return toLong(leftOperand) >= toLong(rightOperand);
+            }
+            return toDouble(leftOperand) >= toDouble(rightOperand);
         });
 
         operatorHandlers.put("<=", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '<=' with operands: {} and {}", leftOperand, rightOperand);
-            return toFloat(leftOperand) <= toFloat(rightOperand);
+            if (isIntegral(leftOperand) && isIntegral(rightOperand)) {
+                return toLong(leftOperand) <= toLong(rightOperand);
+            }
+            return toDouble(leftOperand) <= toDouble(rightOperand);
         });
 
         operatorHandlers.put(">", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '>' with operands: {} and {}", leftOperand, rightOperand);
-            return toFloat(leftOperand) > toFloat(rightOperand);
+            if (isIntegral(leftOperand) && isIntegral(rightOperand)) {
+                return toLong(leftOperand) > toLong(rightOperand);
+            }
+            return toDouble(leftOperand) > toDouble(rightOperand);
         });
 
         operatorHandlers.put("<", (leftOperand, rightOperand) -> {
             logger.debug("Handling operator '<' with operands: {} and {}", leftOperand, rightOperand);
-            return toFloat(leftOperand) < toFloat(rightOperand);
+            if (isIntegral(leftOperand) && isIntegral(rightOperand)) {
+                return toLong(leftOperand) < toLong(rightOperand);
+            }
+            return toDouble(leftOperand) < toDouble(rightOperand);
         });
 
         operatorHandlers.put("&&", (leftOperand, rightOperand) -> {
@@ -124,70 +150,347 @@ public class OperationManager {
 
         operatorHandlers.put("&", (leftOperand, rightOperand) -> {
             logger.debug("Handling bitwise operator '&' with operands: {} and {}", leftOperand, rightOperand);
+            if (leftOperand instanceof Long || rightOperand instanceof Long) {
+                return toLong(leftOperand) & toLong(rightOperand);
+            }
             return (Integer) leftOperand & (Integer) rightOperand;
         });
 
         operatorHandlers.put("|", (leftOperand, rightOperand) -> {
             logger.debug("Handling bitwise operator '|' with operands: {} and {}", leftOperand, rightOperand);
+            if (leftOperand instanceof Long || rightOperand instanceof Long) {
+                return toLong(leftOperand) | toLong(rightOperand);
+            }
             return (Integer) leftOperand | (Integer) rightOperand;
         });
 
         operatorHandlers.put("~", (leftOperand, rightOperand) -> {
             logger.debug("Handling bitwise operator '~' with operand: {}", leftOperand);
+            if (leftOperand instanceof Long) {
+                return ~(Long) leftOperand;
+            }
             return ~(Integer) leftOperand;
         });
 
         operatorHandlers.put("<<", (leftOperand, rightOperand) -> {
             logger.debug("Handling bitwise operator '<<' with operands: {} and {}", leftOperand, rightOperand);
+            if (leftOperand instanceof Long) {
+                return (Long) leftOperand << toLong(rightOperand);
+            }
             return (Integer) leftOperand << (Integer) rightOperand;
         });
 
         operatorHandlers.put(">>", (leftOperand, rightOperand) -> {
             logger.debug("Handling bitwise operator '>>' with operands: {} and {}", leftOperand, rightOperand);
+            if (leftOperand instanceof Long) {
+                return (Long) leftOperand >> toLong(rightOperand);
+            }
             return (Integer) leftOperand >> (Integer) rightOperand;
         });
 
         operatorHandlers.put("+=", (leftOperand, rightOperand) -> {
             logger.debug("Handling compound operator '+=' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer) {
-                return (Integer) leftOperand + (Integer) rightOperand;
-            } else {
-                return toFloat(leftOperand) + toFloat(rightOperand);
-            }
+            return arithmetic(leftOperand, rightOperand, Integer::sum, Long::sum, Double::sum);
         });
 
         operatorHandlers.put("-=", (leftOperand, rightOperand) -> {
             logger.debug("Handling compound operator '-=' with operands: {} and {}", leftOperand, rightOperand);
-            if (leftOperand instanceof Integer) {
-                return (Integer) leftOperand - (Integer) rightOperand;
-            } else {
-                return toFloat(leftOperand) - toFloat(rightOperand);
-            }
+            return arithmetic(leftOperand, rightOperand, (left, right) -> left - right, (left, right) -> left - right, (left, right) -> left - right);
         });
 
         operatorHandlers.put("^=", (leftOperand, rightOperand) -> {
             logger.debug("Handling compound operator '^=' with operands: {} and {}", leftOperand, rightOperand);
-            return Math.pow(toFloat(leftOperand), toFloat(rightOperand));
+            return Math.pow(toDouble(leftOperand), toDouble(rightOperand));
         });
 
         operatorHandlers.put("%=", (leftOperand, rightOperand) -> {
             logger.debug("Handling compound operator '%=' with operands: {} and {}", leftOperand, rightOperand);
-            return (Integer) leftOperand % (Integer) rightOperand;
+            return arithmetic(leftOperand, rightOperand, (left, right) -> left % right, (left, right) -> left % right, (left, right) -> left % right);
         });
+
+        for (String operator : List.of("+", "+=")) {
+            numericHandlers.put(operator, arithmetic(Integer::sum, Long::sum, Double::sum));
+        }
+        for (String operator : List.of("-", "-=")) {
+            numericHandlers.put(operator, arithmetic((left, right) -> left - right, (left, right) -> left - right, (left, right) -> left - right));
+        }
+        numericHandlers.put("*", arithmetic((left, right) -> left * right, (left, right) -> left * right, (left, right) -> left * right));
+        numericHandlers.put("/", arithmetic((left, right) -> left / right, (left, right) -> left / right, (left, right) -> left / right));
+        for (String operator : List.of("%", "%=")) {
+            numericHandlers.put(operator, arithmetic((left, right) -> left % right, (left, right) -> left % right, (left, right) -> left % right));
+        }
+        numericHandlers.put("<", comparison((left, right) -> left < right, (left, right) -> left < right));
+        numericHandlers.put("<=", comparison((left, right) -> left <= right, (left, right) -> left <= right));
+        numericHandlers.put(">", comparison((left, right) -> left > right, (left, right) -> left > right));
+        numericHandlers.put(">=", comparison((left, right) -> left >= right, (left, right) -> left >= right));
+
+        builtinHandlers = Map.copyOf(operatorHandlers);
+        operatorHandlers.forEach((operator, handler) -> define(operator, PRECEDENCE.get(operator),
+                RIGHT_ASSOCIATIVE.contains(operator) ? Associativity.RIGHT : Associativity.LEFT, handler));
     }
 
-    private float toFloat(Object operand) {
-        logger.debug("Converting operand {} to float", operand);
+    /**
+     * Registers (or replaces) an operator at runtime. The lexer picks up the new operator on its next token.
+     * Replaced operators keep their precedence, new ones get {@link #DEFAULT_PRECEDENCE} and group left to right.
+     */
+    public synchronized void registerOperator(String operator, OperatorHandler handler) {
+        Operator existing = operators.get(operator);
+        if (existing != null) {
+            registerOperator(operator, existing.precedence(), existing.associativity(), handler);
+        } else {
+            registerOperator(operator, DEFAULT_PRECEDENCE, Associativity.LEFT, handler);
+        }
+    }
+
+    /**
+     * Registers (or replaces) an operator with an explicit precedence, higher binds tighter.
+     */
+    public synchronized void registerOperator(String operator, int precedence, Associativity associativity, OperatorHandler handler) {
+        if (operator.isEmpty()) {
+            throw new IllegalArgumentException("Operator must not be empty.");
+        }
+        if (precedence < 1) {
+            throw new IllegalArgumentException("Operator precedence must be positive.");
+        }
+        operatorHandlers.put(operator, handler);
+        define(operator, precedence, associativity, handler);
+        version++;
+        logger.debug("Registered operator '{}' with precedence {}", operator, precedence);
+    }
+
+    /**
+     * @return the operator with the given symbol, or null if there is none
+     */
+    public Operator getOperator(String operator) {
+        Operator defined = operators.get(operator);
+        if (defined == null) {
+            // operatorHandlers is guarded by this, handlers put into it directly have no precedence yet
+            synchronized (this) {
+                defined = operators.get(operator);
+                if (defined == null && operatorHandlers.containsKey(operator)) {
+                    define(operator, DEFAULT_PRECEDENCE, Associativity.LEFT, operatorHandlers.get(operator));
+                    defined = operators.get(operator);
+                }
+            }
+        }
+        return defined;
+    }
+
+    /**
+     * @return the operator with the given code, see {@link Operator#code()}
+     */
+    public Operator getOperator(int code) {
+        return operatorsByCode[code];
+    }
+
+    /**
+     * Applies {@code operator} through the dispatch table, builtin operators on numeric operands run an implementation
+     * bound to their operand types without any type checks. Other operands and custom operators reach the handler.
+     */
+    public Object apply(Operator operator, Object leftOperand, Object rightOperand) {
+        OperatorHandler[] table = dispatch;
+        int row = operator.code() * OPERAND_TYPES * OPERAND_TYPES;
+        // records of replaced operators keep their own handler
+        if (row >= table.length || operatorsByCode[operator.code()] != operator) {
+            return operator.handler().parse(leftOperand, rightOperand);
+        }
+        return table[row + operandType(leftOperand) * OPERAND_TYPES + operandType(rightOperand)].parse(leftOperand, rightOperand);
+    }
+
+    /**
+     * @return the error message for operands the operator cannot combine, shared by all engines
+     */
+    public static String unsupportedOperands(Operator operator, Object leftOperand, Object rightOperand) {
+        return "Unsupported operands for '" + operator.symbol() + "': " + typeName(leftOperand) + " and " + typeName(rightOperand);
+    }
+
+    public static String typeName(Object value) {
+        return value == null ? "null" : value.getClass().getSimpleName();
+    }
+
+    private void define(String operator, int precedence, Associativity associativity, OperatorHandler handler) {
+        Operator existing = operators.get(operator);
+        int code = existing != null ? existing.code() : operatorsByCode.length;
+        Operator defined = new Operator(operator, code, precedence, associativity, handler);
+
+        Operator[] byCode = Arrays.copyOf(operatorsByCode, Math.max(operatorsByCode.length, code + 1));
+        byCode[code] = defined;
+
+        OperatorHandler[] table = Arrays.copyOf(dispatch, byCode.length * OPERAND_TYPES * OPERAND_TYPES);
+        OperatorHandler[] numeric = builtinHandlers.get(operator) == handler ? numericHandlers.get(operator) : null;
+        int row = code * OPERAND_TYPES * OPERAND_TYPES;
+        for (int left = 0; left < OPERAND_TYPES; left++) {
+            for (int right = 0; right < OPERAND_TYPES; right++) {
+                boolean bound = numeric != null && left != OTHER && right != OTHER;
+                table[row + left * OPERAND_TYPES + right] = bound ? numeric[left * NumericType.values().length + right] : handler;
+            }
+        }
+
+        operators.put(operator, defined);
+        dispatch = table;
+        operatorsByCode = byCode;
+    }
+
+    /**
+     * @return whether {@code operator} still has the handler this manager was created with
+     */
+    public boolean isBuiltin(Operator operator) {
+        return builtinHandlers.get(operator.symbol()) == operator.handler();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return snapshot of the registered operator symbols, safe to use while operators are being registered
+     */
+    public synchronized List<String> getOperators() {
+        return List.copyOf(operatorHandlers.keySet());
+    }
+
+    /**
+     * @return implementations of an arithmetic operator for each pair of numeric operand types, indexed like
+     * {@link #dispatch} rows
+     */
+    private static OperatorHandler[] arithmetic(IntBinaryOperator ints, LongBinaryOperator longs, DoubleBinaryOperator decimals) {
+        NumericType[] types = NumericType.values();
+        OperatorHandler[] handlers = new OperatorHandler[types.length * types.length];
+        for (NumericType left : types) {
+            for (NumericType right : types) {
+                OperatorHandler handler;
+                switch (left.compareTo(right) >= 0 ? left : right) {
+                    case INTEGER:
+                        handler = (leftOperand, rightOperand) -> ints.applyAsInt((Integer) leftOperand, (Integer) rightOperand);
+                        break;
+                    case LONG:
+                        handler = (leftOperand, rightOperand) -> longs.applyAsLong(((Number) leftOperand).longValue(), ((Number) rightOperand).longValue());
+                        break;
+                    case FLOAT:
+                        handler = (leftOperand, rightOperand) -> (float) decimals.applyAsDouble(((Number) leftOperand).doubleValue(), ((Number) rightOperand).doubleValue());
+                        break;
+                    default:
+                        handler = (leftOperand, rightOperand) -> decimals.applyAsDouble(((Number) leftOperand).doubleValue(), ((Number) rightOperand).doubleValue());
+                        break;
+                }
+                handlers[left.ordinal() * types.length + right.ordinal()] = handler;
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * @return implementations of a comparison for each pair of numeric operand types, integral pairs compare as longs
+     */
+    private static OperatorHandler[] comparison(LongComparison longs, DoubleComparison decimals) {
+        NumericType[] types = NumericType.values();
+        OperatorHandler[] handlers = new OperatorHandler[types.length * types.length];
+        for (NumericType left : types) {
+            for (NumericType right : types) {
+                handlers[left.ordinal() * types.length + right.ordinal()] = left.compareTo(NumericType.LONG) <= 0 && right.compareTo(NumericType.LONG) <= 0
+                        ? (leftOperand, rightOperand) -> longs.test(((Number) leftOperand).longValue(), ((Number) rightOperand).longValue())
+                        : (leftOperand, rightOperand) -> decimals.test(((Number) leftOperand).doubleValue(), ((Number) rightOperand).doubleValue());
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * @return the {@link NumericType} ordinal of {@code operand}, or {@link #OTHER}
+     */
+    private static int operandType(Object operand) {
+        Class<?> type = operand == null ? null : operand.getClass();
+        if (type == Integer.class) {
+            return 0;
+        } else if (type == Long.class) {
+            return 1;
+        } else if (type == Float.class) {
+            return 2;
+        } else if (type == Double.class) {
+            return 3;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Applies an arithmetic operator after promoting both operands to the wider type, int &lt; long &lt; float &lt; double.
+     * Float results are computed in double and rounded back, which is exact for the basic arithmetic operators.
+     */
+    private Object arithmetic(Object leftOperand, Object rightOperand, IntBinaryOperator ints, LongBinaryOperator longs, DoubleBinaryOperator decimals) {
+        switch (promote(leftOperand, rightOperand)) {
+            case INTEGER:
+                return ints.applyAsInt((Integer) leftOperand, (Integer) rightOperand);
+            case LONG:
+                return longs.applyAsLong(toLong(leftOperand), toLong(rightOperand));
+            case FLOAT:
+                return (float) decimals.applyAsDouble(toDouble(leftOperand), toDouble(rightOperand));
+            default:
+                return decimals.applyAsDouble(toDouble(leftOperand), toDouble(rightOperand));
+        }
+    }
+
+    private NumericType promote(Object leftOperand, Object rightOperand) {
+        NumericType left = numericType(leftOperand);
+        NumericType right = numericType(rightOperand);
+        return left.compareTo(right) >= 0 ? left : right;
+    }
+
+    private NumericType numericType(Object operand) {
         if (operand instanceof Integer) {
-            return (float) (Integer) operand; // Convert Integer to Float
+            return NumericType.INTEGER;
+        } else if (operand instanceof Long) {
+            return NumericType.LONG;
         } else if (operand instanceof Float) {
-            return (Float) operand; // No conversion needed if it's already a Float
+            return NumericType.FLOAT;
+        } else if (operand instanceof Double) {
+            return NumericType.DOUBLE;
         } else {
-            logger.error("Unsupported operand type: {}", operand.getClass());
-            throw new IllegalArgumentException("Unsupported operand type: " + operand.getClass());
+            logger.error("Unsupported operand type: {}", operand == null ? null : operand.getClass());
+            throw new IllegalArgumentException("Unsupported operand type: " + (operand == null ? null : operand.getClass()));
         }
     }
 
+    private boolean isIntegral(Object operand) {
+        return operand instanceof Integer || operand instanceof Long;
+    }
+
+    private long toLong(Object operand) {
+        numericType(operand);
+        return ((Number) operand).longValue();
+    }
+
+    private double toDouble(Object operand) {
+        logger.debug("Converting operand {} to double", operand);
+        numericType(operand);
+        return ((Number) operand).doubleValue();
+    }
+
+    private interface LongComparison {
+        boolean test(long left, long right);
+    }
+
+    private interface DoubleComparison {
+        boolean test(double left, double right);
+    }
+
+    // declaration order is the promotion order
+    private enum NumericType {
+        INTEGER,
+        LONG,
+        FLOAT,
+        DOUBLE
+    }
+
+    public enum Associativity {
+        LEFT,
+        RIGHT
+    }
+
+    /**
+     * @param code dense integer id, stable for the lifetime of this manager
+     */
+    public record Operator(String symbol, int code, int precedence, Associativity associativity, OperatorHandler handler) { }
+
     public interface OperatorHandler {
         Object parse(Object leftOperand, Object rightOperand);
     }
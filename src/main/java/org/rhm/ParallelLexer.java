@@ -0,0 +1,225 @@
+package org.rhm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Lexes large sources on a {@link ForkJoinPool}, producing the same tokens as {@link Lexer#tokenize}.
+ * <p>
+ * The source is cut into chunks at newlines. A chunk may still start inside a string literal or a {@code ~* *~}
+ * block comment, so every chunk is first scanned for each state it could start in. Chaining those results from
+ * the first chunk yields the real start state of each chunk, and chunks that do not start in normal code are cut
+ * where the string or comment ends instead. The resulting segments are lexed independently and stitched together,
+ * with symbols re-interned in source order.
+ */
+public class ParallelLexer {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelLexer.class);
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // states a chunk can start in, as far as token boundaries are concerned
+    private static final int NORMAL = 0;
+    private static final int IN_STRING = 1;
+    private static final int IN_BLOCK_COMMENT = 2;
+    private static final int STATE_COUNT = 3;
+    private static final int NO_RESYNC = -1;
+
+    private final Lexer lexer;
+    private final ForkJoinPool pool;
+
+    public ParallelLexer(Lexer lexer) {
+        this(lexer, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(Lexer lexer, ForkJoinPool pool) {
+        this.lexer = lexer;
+        this.pool = pool;
+    }
+
+    public List<Lexer.Token<?>> tokenize(CharSequence source) {
+        int[] chunks = chunkBoundaries(source);
+        if (chunks.length <= 2 || !operatorsAreSplittable()) {
+            return lexer.tokenize(source);
+        }
+
+        List<Callable<ChunkScan>> scans = new ArrayList<>();
+        for (int i = 0; i < chunks.length - 1; i++) {
+            int start = chunks[i];
+            int end = chunks[i + 1];
+            scans.add(() -> scan(source, start, end));
+        }
+        List<ChunkScan> scanned = invokeAll(scans);
+
+        List<Integer> segments = new ArrayList<>();
+        segments.add(0);
+        int state = NORMAL;
+        for (int i = 1; i < chunks.length - 1; i++) {
+            state = scanned.get(i - 1).exitStates()[state];
+            int split = state == NORMAL ? chunks[i] : scanned.get(i).resyncPositions()[state];
+            if (split != NO_RESYNC && split > segments.get(segments.size() - 1) && split < source.length()) {
+                segments.add(split);
+            }
+        }
+        segments.add(source.length());
+        logger.debug("Lexing {} characters in {} segments", source.length(), segments.size() - 1);
+
+        List<Callable<Segment>> lexing = new ArrayList<>();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            int start = segments.get(i);
+            int end = segments.get(i + 1);
+            lexing.add(() -> {
+                SymbolTable symbols = new SymbolTable();
+                List<Lexer.Token<?>> tokens = new ArrayList<>();
+                lexer.tokenizeRange(source, start, end, symbols, tokens);
+                return new Segment(tokens, symbols);
+            });
+        }
+        List<Segment> lexed = invokeAll(lexing);
+
+        return stitch(lexed);
+    }
+
+    private int[] chunkBoundaries(CharSequence source) {
+        int chunkCount = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, source.length() / MIN_CHUNK_SIZE);
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+
+        for (int i = 1; i < chunkCount; i++) {
+            int boundary = Math.max((int) ((long) source.length() * i / chunkCount), boundaries.get(boundaries.size() - 1));
+            while (boundary < source.length() && source.charAt(boundary) != '\n') {
+                boundary++;
+            }
+            boundary++;
+            if (boundary < source.length() && boundary > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(boundary);
+            }
+        }
+
+        boundaries.add(source.length());
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Chunks can only be scanned for strings and comments in isolation if no operator swallows a quote or tilde.
+     */
+    private boolean operatorsAreSplittable() {
+        for (String operator : lexer.getContext().getOperationManager().getOperators()) {
+            if (operator.indexOf('"') > 0 || operator.indexOf('~') > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ChunkScan scan(CharSequence source, int start, int end) {
+        int[] exitStates = new int[STATE_COUNT];
+        int[] resyncPositions = new int[STATE_COUNT];
+
+        for (int entryState = 0; entryState < STATE_COUNT; entryState++) {
+            int state = entryState;
+            int resync = entryState == NORMAL ? start : NO_RESYNC;
+            int i = start;
+
+            while (i < end) {
+                char c = source.charAt(i);
+                if (state == NORMAL) {
+                    if (c == '"') {
+                        state = IN_STRING;
+                        i++;
+                    } else if (c == '~' && i + 1 < source.length() && source.charAt(i + 1) == '*') {
+                        state = IN_BLOCK_COMMENT;
+                        i += 2;
+                    } else if (c == '~') {
+                        while (i < end && source.charAt(i) != '\n') {
+                            i++;
+                        }
+                    } else {
+                        i++;
+                    }
+                } else if (state == IN_STRING) {
+                    i++;
+                    if (c == '"') {
+                        state = NORMAL;
+                    }
+                } else if (c == '*' && i + 1 < source.length() && source.charAt(i + 1) == '~') {
+                    state = NORMAL;
+                    i += 2;
+                } else {
+                    i++;
+                }
+
+                if (state == NORMAL && resync == NO_RESYNC) {
+                    resync = i;
+                }
+            }
+
+            exitStates[entryState] = state;
+            resyncPositions[entryState] = resync;
+        }
+
+        return new ChunkScan(exitStates, resyncPositions);
+    }
+
+    private List<Lexer.Token<?>> stitch(List<Segment> segments) {
+        SymbolTable symbols = lexer.getSymbols();
+        List<Callable<List<Lexer.Token<?>>>> remapping = new ArrayList<>();
+        int tokenCount = 0;
+
+        for (Segment segment : segments) {
+            // interning segment by segment keeps the ids in first-occurrence order, like sequential lexing
+            int[] remap = new int[segment.symbols().size()];
+            for (int symbol = 0; symbol < remap.length; symbol++) {
+                remap[symbol] = symbols.intern(segment.symbols().name(symbol));
+            }
+            tokenCount += segment.tokens().size();
+
+            remapping.add(() -> {
+                List<Lexer.Token<?>> tokens = segment.tokens();
+                for (int i = 0; i < tokens.size(); i++) {
+                    Lexer.Token<?> token = tokens.get(i);
+                    if (token.symbol != SymbolTable.NO_SYMBOL) {
+                        int symbol = remap[token.symbol];
+                        tokens.set(i, new Lexer.Token<>(token.type, symbols.name(symbol), symbol));
+                    }
+                }
+                return tokens;
+            });
+        }
+
+        List<Lexer.Token<?>> tokens = new ArrayList<>(tokenCount + 1);
+        for (List<Lexer.Token<?>> segment : invokeAll(remapping)) {
+            tokens.addAll(segment);
+        }
+        tokens.add(Lexer.EOF_TOKEN);
+        return tokens;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Parallel lexing failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel lexing was interrupted", e);
+        }
+        return results;
+    }
+
+    private record ChunkScan(int[] exitStates, int[] resyncPositions) { }
+
+    private record Segment(List<Lexer.Token<?>> tokens, SymbolTable symbols) { }
+}
@@ -1,6 +1,8 @@
 package org.rhm;
 
+import org.rhm.ast.AstParser;
 import org.rhm.tokens.ParenthesisTokenHandler;
+import org.rhm.tokens.TokenBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,7 +11,10 @@ import java.util.*;
 public class Parser {
     private static final Logger logger = LoggerFactory.getLogger(Parser.class);
 
-    private List<Lexer.Token<?>> tokens;
+    private TokenSource tokens;
+    private final SymbolTable symbols;
+    private final RuntimeContext context;
+    private final AstParser astParser = new AstParser(this);
     public Interpreter interpreter;
     private int index = 0;
 
@@ -21,19 +26,69 @@ public class Parser {
         this.index = index;
     }
 
+    /**
+     * Creates a parser with its own {@link RuntimeContext}, which only knows the builtin operators and keywords.
+     */
     public Parser(List<Lexer.Token<?>> tokens) {
-        this.tokens = tokens;
+        this(tokens, new RuntimeContext());
+    }
+
+    /**
+     * @param context operators and keywords to parse with, normally the context the tokens were lexed with
+     */
+    public Parser(List<Lexer.Token<?>> tokens, RuntimeContext context) {
+        this.tokens = sourceOf(tokens);
+        this.symbols = tokens instanceof TokenBuffer buffer ? buffer.getSymbols() : new SymbolTable();
+        this.context = context;
 
         logger.info("Parser initialized with {} tokens.", tokens.size());
     }
 
+    /**
+     * Creates a parser that pulls tokens lazily, e.g. from a {@link StreamingLexer}, in the context of that lexer.
+     */
+    public Parser(Iterator<Lexer.Token<?>> tokens) {
+        this(tokens, tokens instanceof StreamingLexer lexer ? lexer.getContext() : new RuntimeContext());
+    }
+
+    public Parser(Iterator<Lexer.Token<?>> tokens, RuntimeContext context) {
+        this.tokens = new StreamingTokenSource(tokens);
+        this.symbols = tokens instanceof StreamingLexer lexer ? lexer.getSymbols() : new SymbolTable();
+        this.context = context;
+
+        logger.info("Parser initialized with a token stream.");
+    }
+
     public void setTokens(List<Lexer.Token<?>> newTokens) {
         this.index = 0;
-        this.tokens = newTokens;
+        this.tokens = sourceOf(newTokens);
+    }
+
+    private static TokenSource sourceOf(List<Lexer.Token<?>> tokens) {
+        return tokens instanceof TokenBuffer buffer ? new BufferTokenSource(buffer) : new ListTokenSource(tokens);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public RuntimeContext getContext() {
+        return context;
+    }
+
+    public AstParser getAstParser() {
+        return astParser;
+    }
+
+    /**
+     * @return line starts of the token source, or null if its tokens carry no positions
+     */
+    public SourceMap getSourceMap() {
+        return tokens.sourceMap();
     }
 
     public boolean hasMoreTokens() {
-        return index < tokens.size();
+        return tokens.has(index);
     }
 
     public Lexer.Token<?> getCurrentToken() {
@@ -42,13 +97,77 @@ public class Parser {
         }
         return Lexer.EOF_TOKEN;
     }
+
+    public Lexer.TokenType getCurrentType() {
+        return hasMoreTokens() ? tokens.type(index) : Lexer.TokenType.EOF;
+    }
+
+    public Object getCurrentValue() {
+        return hasMoreTokens() ? tokens.value(index) : null;
+    }
+
+    /**
+     * @return the current token value, or null if it is not an instance of {@code clazz}
+     */
+    public <S> S getCurrentValue(Class<S> clazz) {
+        Object value = getCurrentValue();
+        return clazz.isInstance(value) ? clazz.cast(value) : null;
+    }
+
+    /**
+     * @return symbol id of the current identifier or string, interned on the fly for tokens lexed without this table
+     */
+    public int getCurrentSymbol() {
+        if (!(getCurrentValue() instanceof String name)) {
+            return SymbolTable.NO_SYMBOL;
+        }
+        int symbol = tokens.symbol(index);
+        if (symbol >= 0 && symbol < symbols.size() && symbols.name(symbol) == name) {
+            return symbol;
+        }
+        return symbols.intern(name);
+    }
+
+    /**
+     * @return source offset of the current token, or {@link SourceMap#NO_POSITION} for tokens without one
+     */
+    public int getCurrentOffset() {
+        return tokens.has(index) ? tokens.start(index) : tokens.end();
+    }
+
+    /**
+     * @return an error located at the current token, for handlers to throw
+     */
+    public SourceException error(String message) {
+        return new SourceException(message, getCurrentOffset(), tokens.sourceMap());
+    }
+
+    /**
+     * @return index of the bracket matching the current token, or {@link TokenBuffer#NO_MATCH} if unknown
+     */
+    public int getMatchingBracket() {
+        return tokens.has(index) ? tokens.matching(index) : TokenBuffer.NO_MATCH;
+    }
+
+    public boolean isParenthesis(ParenthesisTokenHandler.ParenthesisType type) {
+        return getCurrentType() == Lexer.TokenType.PARENTHESIS && getCurrentValue() == type;
+    }
+
     public Lexer.Token<?> getNextToken() {
-        if (index + 1 < tokens.size()) {
+        if (tokens.has(index + 1)) {
             return tokens.get(index + 1);
         }
         return Lexer.EOF_TOKEN;
     }
 
+    /**
+     * Signals that tokens before the current index will not be revisited, so streamed tokens can be released.
+     * Only safe between top-level expressions, keyword handlers rewind within their own expression.
+     */
+    public void releaseConsumedTokens() {
+        tokens.release(index);
+    }
+
     public void advance() {
         if (hasMoreTokens()) {
             index++;
@@ -63,136 +182,191 @@ public class Parser {
         }
     }
 
+    /**
+     * Parses the next expression and evaluates it right away.
+     */
     public Object parseExpression() {
-        logger.debug("Parsing expression starting at token index {}", index);
-        Object leftOperand = parsePrimary();
-
-        for (Map.Entry<String, OperationManager.OperatorHandler> entry : Interpreter.operationManager.operatorHandlers.entrySet()) {
-            while (hasMoreTokens() && getCurrentToken().type != Lexer.TokenType.EOF) {
-                Object operator = getCurrentToken().getAs(Object.class);
-                if (operator.equals(entry.getKey())) {
-                    logger.debug("Found operator: {}. Parsing with handler.", operator);
-                    advance();
-                    leftOperand = entry.getValue().parse(leftOperand, parseExpression());
-                } else {
-                    break;
-                }
-            }
+        return interpreter.execute(astParser.parseExpression());
+    }
+
+    /**
+     * Parses the next primary expression and evaluates it right away.
+     */
+    public Object parsePrimary() {
+        return interpreter.execute(astParser.parsePrimary());
+    }
+
+    /**
+     * Value of an assignment expression.
+     */
+    public record Assignment(String variableName, Object value) { }
+
+    public interface TokenSource {
+        Lexer.Token<?> get(int index);
+        boolean has(int index);
+        default void release(int index) { }
+
+        default Lexer.TokenType type(int index) {
+            return get(index).type;
         }
 
-        logger.debug("Finished parsing expression, result: {}", leftOperand);
-        return leftOperand;
+        default Object value(int index) {
+            return get(index).getAs(Object.class);
+        }
+
+        default int symbol(int index) {
+            return get(index).symbol;
+        }
+
+        default int start(int index) {
+            return SourceMap.NO_POSITION;
+        }
+
+        /**
+         * @return offset just past the last token, where errors about missing tokens point
+         */
+        default int end() {
+            return SourceMap.NO_POSITION;
+        }
+
+        default SourceMap sourceMap() {
+            return null;
+        }
+
+        /**
+         * @return index of the bracket matching the one at {@code index}, or {@link TokenBuffer#NO_MATCH} if the
+         * brackets were not paired while lexing
+         */
+        default int matching(int index) {
+            return TokenBuffer.NO_MATCH;
+        }
     }
 
+    private record BufferTokenSource(TokenBuffer buffer) implements TokenSource {
+        @Override
+        public Lexer.Token<?> get(int index) {
+            return buffer.get(index);
+        }
 
-    public Object parsePrimary() {
-        logger.debug("Parsing primary expression at index {}", index);
-        if (ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.SQUARE_LEFT)) {
-            List<SafeObject> elements = new ArrayList<>();
-            Class<?> elementType = null;
-            advance();
-
-            while (hasMoreTokens() && !ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT)) {
-                Object element = parseExpression();
-
-                if (elementType == null) {
-                    elementType = element.getClass();
-                } else if (!elementType.equals(element.getClass())) {
-                    throw new IllegalArgumentException("List elements must all be of the same type.");
-                }
+        @Override
+        public boolean has(int index) {
+            return index < buffer.size();
+        }
 
-                elements.add(new SafeObject(element));
+        @Override
+        public Lexer.TokenType type(int index) {
+            return buffer.type(index);
+        }
 
-                if (getCurrentToken().type == Lexer.TokenType.COMMA) {
-                    advance();
-                } else if (!ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT)) {
-                    throw new IllegalArgumentException("Expected comma or closing bracket in list.");
-                }
-            }
+        @Override
+        public Object value(int index) {
+            return buffer.value(index);
+        }
 
-            if (!ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT)) {
-                throw new IllegalArgumentException("Expected closing bracket for list.");
-            }
-            advance();
-
-            logger.debug("Parsed list with elements: {}", elements);
-            return elements;
-        } else if (ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT)) {
-             logger.debug("Parsing grouped expression.");
-             advance();
-             Object result = parseExpression();
-             if (ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT)) {
-                 advance();
-             } else {
-                 logger.error("Expected closing parenthesis at index {}", index);
-                 throw new IllegalArgumentException("Expected closing parenthesis on index " + index + ".");
-             }
-             return result;
-         } else if (getCurrentToken().type == Lexer.TokenType.KEYWORD) {
-             Object value = Interpreter.keywordManager.keywordHandlers.get(getCurrentToken().getAs(String.class)).execute(this);
-             advance();
-             return value;
-         } else if (getCurrentToken().type == Lexer.TokenType.IDENTIFIER) {
-            String identifier = getCurrentToken().getAs(String.class);
-            advance();
-
-            if (getCurrentToken().type == Lexer.TokenType.OPERATOR && getCurrentToken().getAs(String.class).equals("=")) {
-                logger.debug("Assignment found for identifier: {}", identifier);
-                advance();
-                Object value = parseExpression();
-                interpreter.setVariableValue(identifier, value);
-                return new Assignment(identifier, value);
-            }
-            if (Interpreter.functionManager.functionHandlers.containsKey(identifier) && ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT)) {
-                logger.debug("Function call found for identifier: {}", identifier);
-                return Interpreter.functionManager.functionHandlers.get(identifier).execute(parseFunctionArguments());
-            }
+        @Override
+        public int symbol(int index) {
+            return buffer.symbol(index);
+        }
 
-            return interpreter.getVariableValue(identifier);
+        @Override
+        public int start(int index) {
+            return buffer.start(index);
+        }
+
+        @Override
+        public int end() {
+            return buffer.isEmpty() ? SourceMap.NO_POSITION : buffer.end(buffer.size() - 1);
+        }
+
+        @Override
+        public SourceMap sourceMap() {
+            return buffer.getSourceMap();
+        }
+
+        @Override
+        public int matching(int index) {
+            return buffer.matching(index);
         }
-        Object value = getCurrentToken().getAs(Object.class);
-        advance();
-        return value;
     }
 
+    private record ListTokenSource(List<Lexer.Token<?>> tokens) implements TokenSource {
+        @Override
+        public Lexer.Token<?> get(int index) {
+            return tokens.get(index);
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < tokens.size();
+        }
+    }
 
-    private SafeObject[] parseFunctionArguments() {
-        logger.debug("Parsing function arguments.");
-        advance();
-        List<SafeObject> args = new ArrayList<>();
-        int parenCount = 0;
-        boolean initial = true;
+    /**
+     * Buffers tokens pulled from an iterator until they are released, so memory use follows the longest
+     * top-level expression instead of the script size.
+     */
+    private static final class StreamingTokenSource implements TokenSource {
+        private final Iterator<Lexer.Token<?>> iterator;
+        private final StreamingLexer lexer;
+        private final List<Lexer.Token<?>> buffer = new ArrayList<>();
+        // source offsets of the buffered tokens, only tracked for a StreamingLexer
+        private int[] starts = new int[64];
+        // index of the first buffered token
+        private int base = 0;
+
+        private StreamingTokenSource(Iterator<Lexer.Token<?>> iterator) {
+            this.iterator = iterator;
+            this.lexer = iterator instanceof StreamingLexer streamingLexer ? streamingLexer : null;
+        }
 
-        while (initial || (parenCount > 0 && hasMoreTokens())) {
-            initial = false;
-            if (getCurrentToken().type == Lexer.TokenType.PARENTHESIS) {
-                if (getCurrentToken().getAs(ParenthesisTokenHandler.ParenthesisType.class) == ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT) {
-                    parenCount++;
-                } else if (getCurrentToken().getAs(ParenthesisTokenHandler.ParenthesisType.class) == ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT) {
-                    parenCount--;
-                } else {
-                    logger.error("Unexpected parenthesis type at index {}: {}", index, getCurrentToken().getAs(ParenthesisTokenHandler.ParenthesisType.class));
-                    throw new IllegalArgumentException("Unexpected parenthesis at index " + index);
-                }
-            } else if (getCurrentToken().type == Lexer.TokenType.COMMA && parenCount == 1) {
-                advance();
-                continue;
+        @Override
+        public Lexer.Token<?> get(int index) {
+            if (index < base) {
+                throw new IllegalStateException("Token " + index + " was already released.");
             }
+            has(index);
+            return buffer.get(index - base);
+        }
 
-            args.add(new SafeObject(parseExpression()));
+        @Override
+        public boolean has(int index) {
+            while (index - base >= buffer.size() && iterator.hasNext()) {
+                buffer.add(iterator.next());
+                if (lexer != null) {
+                    if (buffer.size() > starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                    }
+                    starts[buffer.size() - 1] = lexer.getTokenStart();
+                }
+            }
+            return index - base < buffer.size();
         }
 
-        if (parenCount == 0) {
-            advance();
-        } else {
-            logger.error("Expected closing parenthesis for function arguments.");
-            throw new IllegalArgumentException("Expected closing parenthesis.");
+        @Override
+        public void release(int index) {
+            int count = Math.min(index - base, buffer.size());
+            if (count > 0) {
+                buffer.subList(0, count).clear();
+                if (lexer != null) {
+                    System.arraycopy(starts, count, starts, 0, buffer.size());
+                }
+                base += count;
+            }
         }
 
-        logger.debug("Finished parsing function arguments: {}.", args);
-        return args.toArray(new SafeObject[0]);
-    }
+        @Override
+        public int start(int index) {
+            return lexer != null && has(index) && index >= base ? starts[index - base] : SourceMap.NO_POSITION;
+        }
 
+        @Override
+        public int end() {
+            return lexer != null && !buffer.isEmpty() ? starts[buffer.size() - 1] : SourceMap.NO_POSITION;
+        }
 
-    public record Assignment(String variableName, Object value) { }
+        @Override
+        public SourceMap sourceMap() {
+            return lexer != null ? lexer.getSourceMap() : null;
+        }
+    }
 }
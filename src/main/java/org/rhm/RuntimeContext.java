@@ -0,0 +1,36 @@
+package org.rhm;
+
+import org.rhm.keywords.KeywordManager;
+import org.rhm.tokens.TokenManager;
+
+/**
+ * The operators, functions, keywords and token handlers scripts are lexed, parsed and run with. Each context owns its
+ * registries, so operators registered in one context are unknown to the others, and interpreters of different contexts
+ * share no mutable state. Lexers, parsers and interpreters of one context may run on different threads, the registries
+ * are safe to read while they are extended through their {@code register} methods. Writing to their public handler maps
+ * directly is only safe before scripts run.
+ * <p>
+ * Variables belong to an {@link Interpreter}, one per run of a script.
+ */
+public class RuntimeContext {
+    private final OperationManager operationManager = new OperationManager();
+    private final FunctionManager functionManager = new FunctionManager();
+    private final KeywordManager keywordManager = new KeywordManager();
+    private final TokenManager tokenManager = new TokenManager(operationManager, keywordManager);
+
+    public OperationManager getOperationManager() {
+        return operationManager;
+    }
+
+    public FunctionManager getFunctionManager() {
+        return functionManager;
+    }
+
+    public KeywordManager getKeywordManager() {
+        return keywordManager;
+    }
+
+    public TokenManager getTokenManager() {
+        return tokenManager;
+    }
+}
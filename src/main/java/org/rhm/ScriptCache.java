@@ -0,0 +1,169 @@
+package org.rhm;
+
+import org.rhm.ast.AstReader;
+import org.rhm.ast.AstWriter;
+import org.rhm.ast.Block;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Keeps parsed scripts in a cache directory, so running an unchanged script again skips the lexer and parser.
+ * Entries are named by a hash of the source and {@link Interpreter#VERSION}, editing the script or upgrading the
+ * interpreter simply misses the old entry. Entries are read through a memory-mapped buffer and written to a
+ * temporary file first, concurrent runs of the same script never see a partial entry.
+ */
+public class ScriptCache {
+    private static final Logger logger = LoggerFactory.getLogger(ScriptCache.class);
+    private static final int MAGIC = 0x52484C43;
+    private static final int FORMAT_VERSION = 2;
+    public static final String EXTENSION = ".rhc";
+
+    private final Path directory;
+    private final RuntimeContext context;
+    private int hits;
+    private int misses;
+
+    public ScriptCache(Path directory) {
+        this(directory, new RuntimeContext());
+    }
+
+    /**
+     * @param context operators and keywords scripts are parsed with, an entry only stores the symbols of its operators
+     */
+    public ScriptCache(Path directory, RuntimeContext context) {
+        this.directory = directory;
+        this.context = context;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Parses {@code content} unless an entry for it is cached, storing the result on a miss.
+     *
+     * @throws SourceException if the script does not lex or parse, nothing is cached then
+     */
+    public CompiledScript load(String content) {
+        byte[] hash = hash(content);
+        Path entry = directory.resolve(HexFormat.of().formatHex(hash) + EXTENSION);
+
+        if (Files.isRegularFile(entry)) {
+            try {
+                CompiledScript script = read(entry, hash);
+                hits++;
+                logger.debug("Loaded {} from the script cache.", entry);
+                return script;
+            } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+                logger.warn("Ignoring unreadable script cache entry {}: {}", entry, e.toString());
+            }
+        }
+
+        misses++;
+        CompiledScript script = CompiledScript.compile(content, context);
+        try {
+            write(entry, hash, script);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Could not write script cache entry {}: {}", entry, e.toString());
+        }
+        return script;
+    }
+
+    private CompiledScript read(Path entry, byte[] hash) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || !AstReader.readString(buffer).equals(Interpreter.VERSION)) {
+            throw new IllegalArgumentException("Entry was written by another interpreter version.");
+        }
+        byte[] stored = new byte[hash.length];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, hash)) {
+            throw new IllegalArgumentException("Entry was written for another source.");
+        }
+
+        SymbolTable symbols = new SymbolTable();
+        int symbolCount = buffer.getInt();
+        for (int i = 0; i < symbolCount; i++) {
+            symbols.intern(AstReader.readString(buffer));
+        }
+
+        SourceMap sourceMap = new SourceMap();
+        int lineCount = buffer.getInt();
+        for (int line = 1; line <= lineCount; line++) {
+            sourceMap.addLineStart(buffer.getInt());
+        }
+
+        Block program = new AstReader(buffer, symbols, context.getOperationManager()).readBlock();
+        return new CompiledScript(program, symbols, sourceMap, context);
+    }
+
+    private void write(Path entry, byte[] hash, CompiledScript script) throws IOException {
+        AstWriter writer = new AstWriter();
+        script.getProgram().accept(writer);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        AstWriter.writeString(out, Interpreter.VERSION);
+        out.write(hash);
+
+        out.writeInt(script.getSymbols().size());
+        for (int symbol = 0; symbol < script.getSymbols().size(); symbol++) {
+            AstWriter.writeString(out, script.getSymbols().name(symbol));
+        }
+
+        out.writeInt(script.getSourceMap().lineCount());
+        for (int line = 1; line <= script.getSourceMap().lineCount(); line++) {
+            out.writeInt(script.getSourceMap().lineStart(line));
+        }
+        writer.writeTo(out);
+
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        logger.debug("Stored {} in the script cache.", entry);
+    }
+
+    private static byte[] hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((Interpreter.VERSION + '\0' + FORMAT_VERSION + '\0').getBytes(StandardCharsets.UTF_8));
+            return digest.digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
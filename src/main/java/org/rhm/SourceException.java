@@ -0,0 +1,31 @@
+package org.rhm;
+
+/**
+ * Lexer or parser error located in the script source.
+ * <p>
+ * These errors describe the script, not the interpreter, so no stack trace is captured. That keeps throwing them
+ * cheap when many scripts are validated in bulk.
+ */
+public class SourceException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final Diagnostics.Diagnostic diagnostic;
+
+    public SourceException(String message, int offset, SourceMap sourceMap) {
+        this(Diagnostics.Diagnostic.at(message, offset, sourceMap));
+    }
+
+    public SourceException(Diagnostics.Diagnostic diagnostic) {
+        super(diagnostic.toString());
+        this.diagnostic = diagnostic;
+    }
+
+    public Diagnostics.Diagnostic getDiagnostic() {
+        return diagnostic;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
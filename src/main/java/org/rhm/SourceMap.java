@@ -0,0 +1,77 @@
+package org.rhm;
+
+import java.util.Arrays;
+
+/**
+ * Offsets of every line start in a source, recorded while lexing. Resolving an offset to its line and column
+ * is a binary search over the table, so tokens only need to remember their offset.
+ */
+public class SourceMap {
+    public static final int NO_POSITION = -1;
+
+    private int[] lineStarts = new int[64];
+    private int lineCount = 1;
+
+    public static SourceMap of(CharSequence source) {
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.scan(source, 0, source.length());
+        return sourceMap;
+    }
+
+    /**
+     * Records the lines starting after any line break in {@code [start, end)}. Ranges must be scanned in order.
+     */
+    public void scan(CharSequence source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == '\n') {
+                addLineStart(i + 1);
+            }
+        }
+    }
+
+    public void addLineStart(int offset) {
+        if (offset <= lineStarts[lineCount - 1]) {
+            return;
+        }
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineStarts[lineCount++] = offset;
+    }
+
+    /**
+     * @return 1-based line containing {@code offset}
+     */
+    public int line(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * @return 1-based column of {@code offset} within its line
+     */
+    public int column(int offset) {
+        return offset - lineStarts[line(offset) - 1] + 1;
+    }
+
+    /**
+     * @return offset the 1-based {@code line} starts at
+     */
+    public int lineStart(int line) {
+        return lineStarts[line - 1];
+    }
+
+    public int lineCount() {
+        return lineCount;
+    }
+}
@@ -0,0 +1,260 @@
+package org.rhm;
+
+import org.rhm.util.MappedFileReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pull-based lexer producing the same tokens as {@link Lexer#tokenize}, one at a time. Reader input is lexed
+ * through a sliding character window that only grows to fit the longest single token.
+ */
+public class StreamingLexer implements Iterator<Lexer.Token<?>>, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingLexer.class);
+    private static final int INITIAL_WINDOW_SIZE = 1 << 16;
+    // characters kept buffered past a token start, so handlers can look ahead without hitting the window end
+    private static final int LOOKAHEAD = 256;
+
+    private final Reader reader;
+    private final SymbolTable symbols;
+    private final RuntimeContext context;
+    private final SourceMap sourceMap = new SourceMap();
+    private final CharSequence text;
+    private final CharWindow window;
+    private final AtomicInteger index = new AtomicInteger(0);
+    // absolute offset of the first character in the window
+    private long windowOffset = 0;
+    // window index up to which line starts were recorded
+    private int linesScanned = 0;
+    private int tokenStart = SourceMap.NO_POSITION;
+    private boolean endOfInput;
+    private boolean finished = false;
+
+    public StreamingLexer(Reader reader) {
+        this(reader, new SymbolTable());
+    }
+
+    public StreamingLexer(Reader reader, SymbolTable symbols) {
+        this(reader, symbols, new RuntimeContext());
+    }
+
+    /**
+     * @param context operators and keywords to recognize
+     */
+    public StreamingLexer(Reader reader, SymbolTable symbols, RuntimeContext context) {
+        this.reader = reader;
+        this.symbols = symbols;
+        this.context = context;
+        this.window = new CharWindow(INITIAL_WINDOW_SIZE);
+        this.text = window;
+        this.endOfInput = false;
+    }
+
+    /**
+     * Lexes an in-memory source, e.g. a {@link java.nio.CharBuffer}, without copying it.
+     */
+    public StreamingLexer(CharSequence source) {
+        this(source, new SymbolTable());
+    }
+
+    public StreamingLexer(CharSequence source, SymbolTable symbols) {
+        this(source, symbols, new RuntimeContext());
+    }
+
+    public StreamingLexer(CharSequence source, SymbolTable symbols, RuntimeContext context) {
+        this.reader = null;
+        this.symbols = symbols;
+        this.context = context;
+        this.window = null;
+        this.text = source;
+        this.endOfInput = true;
+    }
+
+    public static StreamingLexer open(Path path) throws IOException {
+        return open(path, new RuntimeContext());
+    }
+
+    public static StreamingLexer open(Path path, RuntimeContext context) throws IOException {
+        return new StreamingLexer(new MappedFileReader(path), new SymbolTable(), context);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public RuntimeContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return line starts of the source lexed so far
+     */
+    public SourceMap getSourceMap() {
+        return sourceMap;
+    }
+
+    /**
+     * @return source offset of the token last returned by {@link #next()}
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !finished;
+    }
+
+    @Override
+    public Lexer.Token<?> next() {
+        if (finished) {
+            throw new NoSuchElementException();
+        }
+
+        skipWhitespace();
+        if (index.get() >= text.length()) {
+            finished = true;
+            tokenStart = (int) (windowOffset + index.get());
+            return Lexer.EOF_TOKEN;
+        }
+        ensureAvailable(LOOKAHEAD);
+
+        while (true) {
+            int start = index.get();
+            markLines(start);
+            Lexer.Token<?> token;
+            try {
+                token = context.getTokenManager().handleToken(text, index, symbols);
+            } catch (SourceException e) {
+                throw e;
+            } catch (IllegalArgumentException e) {
+                throw new SourceException(e.getMessage(), (int) (windowOffset + start), sourceMap);
+            }
+            if (token == null) {
+                char currentChar = text.charAt(start);
+                SourceException error = new SourceException("Invalid character: " + currentChar, (int) (windowOffset + start), sourceMap);
+                logger.error("{}", error.getMessage());
+                throw error;
+            }
+
+            if (index.get() < text.length() || endOfInput) {
+                logger.debug("Parsed token: {}", token);
+                tokenStart = (int) (windowOffset + start);
+                markLines(index.get());
+                return token;
+            }
+
+            // the token ran into the end of the window and might continue after it
+            index.set(start);
+            fill();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (true) {
+            if (index.get() >= text.length()) {
+                if (endOfInput) {
+                    return;
+                }
+                fill();
+            } else if (Character.isWhitespace(text.charAt(index.get()))) {
+                index.incrementAndGet();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void markLines(int end) {
+        for (; linesScanned < end; linesScanned++) {
+            if (text.charAt(linesScanned) == '\n') {
+                sourceMap.addLineStart((int) (windowOffset + linesScanned + 1));
+            }
+        }
+    }
+
+    private void ensureAvailable(int count) {
+        while (!endOfInput && text.length() - index.get() < count) {
+            fill();
+        }
+    }
+
+    /**
+     * Drops everything before the current index and reads more input, growing the window if it is still full.
+     */
+    private void fill() {
+        int start = index.get();
+        markLines(start);
+        linesScanned -= start;
+        int remaining = window.length - start;
+        System.arraycopy(window.chars, start, window.chars, 0, remaining);
+        window.length = remaining;
+        windowOffset += start;
+        index.set(0);
+
+        if (window.length == window.chars.length) {
+            window.grow();
+        }
+
+        try {
+            int read = reader.read(window.chars, window.length, window.chars.length - window.length);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                window.length += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read script source", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private static final class CharWindow implements CharSequence {
+        private char[] chars;
+        private int length = 0;
+
+        private CharWindow(int capacity) {
+            this.chars = new char[capacity];
+        }
+
+        private void grow() {
+            char[] grown = new char[chars.length * 2];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.rhm;
+
+import java.util.Arrays;
+
+/**
+ * Per-compilation intern table mapping identifier and string literal text to dense integer symbol ids.
+ * Text is hashed straight from the source range, so only the first occurrence of a symbol allocates a String.
+ */
+public class SymbolTable {
+    public static final int NO_SYMBOL = -1;
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    // open addressing table holding symbol id + 1, 0 marks an empty slot
+    private int[] slots = new int[128];
+    private int size = 0;
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    public int intern(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return add(source.subSequence(start, end).toString(), hash, slot);
+            }
+
+            int symbol = entry - 1;
+            if (hashes[symbol] == hash && matches(names[symbol], source, start, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * @return the id of {@code name}, or {@link #NO_SYMBOL} if it was never interned
+     */
+    public int lookup(String name) {
+        int hash = hash(name, 0, name.length());
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int symbol = slots[slot] - 1;
+            if (hashes[symbol] == hash && names[symbol].equals(name)) {
+                return symbol;
+            }
+        }
+        return NO_SYMBOL;
+    }
+
+    public String name(int symbol) {
+        if (symbol < 0 || symbol >= size) {
+            throw new IllegalArgumentException("Unknown symbol id: " + symbol);
+        }
+        return names[symbol];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        int symbol = size++;
+        names[symbol] = name;
+        hashes[symbol] = hash;
+        slots[slot] = symbol + 1;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return symbol;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int symbol = 0; symbol < size; symbol++) {
+            int slot = hashes[symbol] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = symbol + 1;
+        }
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence source, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,8 @@
+package org.rhm.ast;
+
+public record Assign(String name, int symbol, Node value, int offset) implements Node {
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitAssign(this);
+    }
+}
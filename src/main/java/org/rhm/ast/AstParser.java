@@ -0,0 +1,291 @@
+package org.rhm.ast;
+
+import org.rhm.Lexer;
+import org.rhm.OperationManager;
+import org.rhm.Parser;
+import org.rhm.SourceException;
+import org.rhm.keywords.KeywordManager;
+import org.rhm.tokens.ParenthesisTokenHandler;
+import org.rhm.tokens.TokenBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the syntax tree from the token stream of a {@link Parser}, which keeps track of the current token.
+ * Nothing is evaluated while parsing.
+ */
+public class AstParser {
+    private static final Logger logger = LoggerFactory.getLogger(AstParser.class);
+    // operators that store their result back into a variable operand
+    static final Set<String> COMPOUND_ASSIGNMENTS = Set.of("+=", "-=", "^=", "%=");
+
+    private final Parser parser;
+    // blocks being parsed around the current token
+    private int depth = 0;
+    private boolean inFunction = false;
+
+    public AstParser(Parser parser) {
+        this.parser = parser;
+    }
+
+    public Parser getParser() {
+        return parser;
+    }
+
+    /**
+     * Parses all remaining statements.
+     */
+    public Block parseProgram() {
+        int offset = parser.getCurrentOffset();
+        List<Node> statements = new ArrayList<>();
+        for (Node statement = parseStatement(); statement != null; statement = parseStatement()) {
+            statements.add(statement);
+        }
+        return new Block(statements, offset);
+    }
+
+    /**
+     * @return the next top-level statement, or null once the input is exhausted
+     */
+    public Node parseStatement() {
+        skipSeparators();
+        if (!parser.hasMoreTokens() || parser.getCurrentType() == Lexer.TokenType.EOF) {
+            parser.advance();
+            return null;
+        }
+        if (parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.CURLY_RIGHT)) {
+            logger.error("Unexpected closing curly brace outside of a block.");
+            throw parser.error("Unexpected closing curly brace.");
+        }
+        return parseExpression();
+    }
+
+    public Node parseExpression() {
+        return parseExpression(0);
+    }
+
+    /**
+     * Precedence climbing: only operators binding at least as tight as {@code minPrecedence} are consumed here,
+     * looser ones are left to the caller. Every token is visited once.
+     */
+    private Node parseExpression(int minPrecedence) {
+        Node left = parsePrimary();
+
+        while (skipComments() == Lexer.TokenType.OPERATOR) {
+            String symbol = parser.getCurrentValue(String.class);
+            OperationManager.Operator operator = parser.getContext().getOperationManager().getOperator(symbol);
+            if (operator == null) {
+                logger.error("No handler registered for operator {}", symbol);
+                throw parser.error("Unknown operator: " + symbol);
+            }
+            if (operator.precedence() < minPrecedence) {
+                break;
+            }
+            int offset = parser.getCurrentOffset();
+            parser.advance();
+
+            int rightPrecedence = operator.associativity() == OperationManager.Associativity.LEFT ? operator.precedence() + 1 : operator.precedence();
+            Node right = parseExpression(rightPrecedence);
+            left = combine(operator, left, right, offset);
+        }
+
+        return left;
+    }
+
+    private Node combine(OperationManager.Operator operator, Node left, Node right, int offset) {
+        if (left instanceof Variable variable) {
+            if (operator.symbol().equals("=")) {
+                return new Assign(variable.name(), variable.symbol(), right, variable.offset());
+            } else if (COMPOUND_ASSIGNMENTS.contains(operator.symbol())) {
+                return new Assign(variable.name(), variable.symbol(), new BinaryOperation(operator, left, right, offset), variable.offset());
+            }
+        }
+        return new BinaryOperation(operator, left, right, offset);
+    }
+
+    public Node parsePrimary() {
+        Lexer.TokenType type = skipComments();
+        int offset = parser.getCurrentOffset();
+
+        switch (type) {
+            case PARENTHESIS:
+                if (parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.SQUARE_LEFT)) {
+                    return parseList();
+                } else if (parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT)) {
+                    parser.advance();
+                    Node expression = parseExpression();
+                    expect(ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT, "Expected closing parenthesis.");
+                    return expression;
+                }
+                throw unexpected();
+            case KEYWORD:
+                KeywordManager.KeywordHandler handler = parser.getContext().getKeywordManager().keywordHandlers.get(parser.getCurrentValue(String.class));
+                return handler.parse(this);
+            case IDENTIFIER:
+                String name = parser.getCurrentValue(String.class);
+                int symbol = parser.getCurrentSymbol();
+                parser.advance();
+
+                if (parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT)) {
+                    return new Call(name, symbol, parseArguments(), offset);
+                }
+                return new Variable(name, symbol, offset);
+            case OPERATOR:
+            case COMMA:
+            case SEMICOLON:
+            case EOF:
+                throw unexpected();
+            default:
+                Object value = parser.getCurrentValue();
+                parser.advance();
+                return new Literal(value, offset);
+        }
+    }
+
+    /**
+     * @return whether the current token is inside a block
+     */
+    public boolean isNested() {
+        return depth > 0;
+    }
+
+    public boolean isInFunction() {
+        return inFunction;
+    }
+
+    /**
+     * Parses the body of a function, in which {@code return} is allowed.
+     */
+    public Block parseFunctionBody() {
+        inFunction = true;
+        try {
+            return parseBlock();
+        } finally {
+            inFunction = false;
+        }
+    }
+
+    /**
+     * Parses {@code { statements }} including both braces.
+     */
+    public Block parseBlock() {
+        depth++;
+        try {
+            return parseBracedStatements();
+        } finally {
+            depth--;
+        }
+    }
+
+    private Block parseBracedStatements() {
+        skipComments();
+        int offset = parser.getCurrentOffset();
+        int end = parser.getMatchingBracket();
+        expect(ParenthesisTokenHandler.ParenthesisType.CURLY_LEFT, "Expected opening curly brace for block.");
+
+        List<Node> statements = new ArrayList<>();
+        if (end != TokenBuffer.NO_MATCH) {
+            // brackets were paired while lexing, the block ends at a known token
+            for (skipSeparators(); parser.getIndex() < end; skipSeparators()) {
+                statements.add(parseExpression());
+            }
+            expect(ParenthesisTokenHandler.ParenthesisType.CURLY_RIGHT, "Expected closing curly brace for block.");
+            return new Block(statements, offset);
+        }
+
+        while (true) {
+            skipSeparators();
+            if (parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.CURLY_RIGHT)) {
+                parser.advance();
+                return new Block(statements, offset);
+            }
+            if (!parser.hasMoreTokens() || parser.getCurrentType() == Lexer.TokenType.EOF) {
+                logger.error("Unbalanced curly braces in block.");
+                throw new SourceException("Unbalanced curly braces, block is never closed.", offset, parser.getSourceMap());
+            }
+            statements.add(parseExpression());
+        }
+    }
+
+    /**
+     * Parses a parenthesized condition, as used by {@code if} and {@code while}.
+     */
+    public Node parseCondition() {
+        expect(ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT, "Expected opening round parenthesis for condition.");
+        Node condition = parseExpression();
+        expect(ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT, "Expected closing round parenthesis for condition.");
+        return condition;
+    }
+
+    public void expect(ParenthesisTokenHandler.ParenthesisType type, String message) {
+        skipComments();
+        if (!parser.isParenthesis(type)) {
+            logger.error("{} Found {}", message, parser.getCurrentToken());
+            throw parser.error(message);
+        }
+        parser.advance();
+    }
+
+    private Node parseList() {
+        int offset = parser.getCurrentOffset();
+        parser.advance();
+        List<Node> elements = new ArrayList<>();
+
+        while (skipComments() != Lexer.TokenType.EOF && !parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT)) {
+            elements.add(parseExpression());
+
+            if (skipComments() == Lexer.TokenType.COMMA) {
+                parser.advance();
+            } else if (!parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT)) {
+                throw parser.error("Expected comma or closing bracket in list.");
+            }
+        }
+
+        expect(ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT, "Expected closing bracket for list.");
+        return new ListLiteral(elements, offset);
+    }
+
+    private List<Node> parseArguments() {
+        parser.advance();
+        List<Node> arguments = new ArrayList<>();
+
+        if (skipComments() != Lexer.TokenType.EOF && !parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT)) {
+            arguments.add(parseExpression());
+            while (skipComments() == Lexer.TokenType.COMMA) {
+                parser.advance();
+                arguments.add(parseExpression());
+            }
+        }
+
+        expect(ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT, "Expected closing parenthesis for function arguments.");
+        return arguments;
+    }
+
+    private SourceException unexpected() {
+        if (parser.getCurrentType() == Lexer.TokenType.EOF) {
+            return parser.error("Unexpected end of input.");
+        }
+        logger.error("Unexpected token {}", parser.getCurrentToken());
+        return parser.error("Unexpected " + parser.getCurrentValue() + ".");
+    }
+
+    /**
+     * @return type of the first token that is not a comment
+     */
+    private Lexer.TokenType skipComments() {
+        while (parser.getCurrentType() == Lexer.TokenType.COMMENT) {
+            parser.advance();
+        }
+        return parser.getCurrentType();
+    }
+
+    private void skipSeparators() {
+        while (skipComments() == Lexer.TokenType.SEMICOLON) {
+            parser.advance();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.rhm.ast;
+
+import java.util.stream.Collectors;
+
+/**
+ * Prints syntax trees as script source, for debug dumps of what the optimizers produced. Binary operations are
+ * parenthesized so the printed grouping is the parsed one.
+ */
+public class AstPrinter implements NodeVisitor<String> {
+    public static String print(Node node) {
+        return node.accept(new AstPrinter());
+    }
+
+    @Override
+    public String visitLiteral(Literal literal) {
+        return literal.value() instanceof String string ? '"' + string + '"' : String.valueOf(literal.value());
+    }
+
+    @Override
+    public String visitList(ListLiteral list) {
+        return list.elements().stream().map(element -> element.accept(this)).collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    @Override
+    public String visitVariable(Variable variable) {
+        return variable.name();
+    }
+
+    @Override
+    public String visitAssign(Assign assign) {
+        if (assign.value() instanceof BinaryOperation operation && operation.left() instanceof Variable target
+                && target.symbol() == assign.symbol() && AstParser.COMPOUND_ASSIGNMENTS.contains(operation.operator().symbol())) {
+            return assign.name() + " " + operation.operator().symbol() + " " + operation.right().accept(this);
+        }
+        return assign.name() + " = " + assign.value().accept(this);
+    }
+
+    @Override
+    public String visitBinary(BinaryOperation operation) {
+        return "(" + operation.left().accept(this) + " " + operation.operator().symbol() + " " + operation.right().accept(this) + ")";
+    }
+
+    @Override
+    public String visitCall(Call call) {
+        return call.arguments().stream().map(argument -> argument.accept(this)).collect(Collectors.joining(", ", call.name() + "(", ")"));
+    }
+
+    @Override
+    public String visitBlock(Block block) {
+        if (block.statements().isEmpty()) {
+            return "{ }";
+        }
+        return block.statements().stream().map(statement -> statement.accept(this) + ";").collect(Collectors.joining(" ", "{ ", " }"));
+    }
+
+    @Override
+    public String visitIf(IfStatement statement) {
+        return "if (" + statement.condition().accept(this) + ") " + statement.body().accept(this);
+    }
+
+    @Override
+    public String visitWhile(WhileLoop loop) {
+        return "while (" + loop.condition().accept(this) + ") " + loop.body().accept(this);
+    }
+
+    @Override
+    public String visitFor(ForLoop loop) {
+        return "for (" + loop.variable() + " in " + loop.iterable().accept(this) + ") " + loop.body().accept(this);
+    }
+
+    @Override
+    public String visitFunction(FunctionDefinition function) {
+        return function.parameters().stream().map(Variable::name).collect(Collectors.joining(", ", "fn " + function.name() + "(", ") "))
+                + function.body().accept(this);
+    }
+
+    @Override
+    public String visitReturn(Return statement) {
+        return "return " + statement.value().accept(this);
+    }
+}
@@ -0,0 +1,146 @@
+package org.rhm.ast;
+
+import org.rhm.OperationManager;
+import org.rhm.SymbolTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes syntax trees written by {@link AstWriter} straight from a buffer, typically a memory-mapped file.
+ * Names resolve through the symbol table the tree was written with, which has to be restored first.
+ */
+public class AstReader {
+    private static final Logger logger = LoggerFactory.getLogger(AstReader.class);
+
+    private final ByteBuffer buffer;
+    private final SymbolTable symbols;
+    private final OperationManager operations;
+    private final Object[] constants;
+
+    /**
+     * Reads the constant pool, leaving the buffer positioned at the first node.
+     *
+     * @param operations operators the symbols of encoded operations are resolved with
+     */
+    public AstReader(ByteBuffer buffer, SymbolTable symbols, OperationManager operations) {
+        this.buffer = buffer;
+        this.symbols = symbols;
+        this.operations = operations;
+        this.constants = new Object[buffer.getInt()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = readConstant();
+        }
+    }
+
+    public Node readNode() {
+        byte tag = buffer.get();
+        int offset = buffer.getInt();
+
+        switch (tag) {
+            case AstWriter.LITERAL:
+                return new Literal(constant(), offset);
+            case AstWriter.LIST:
+                return new ListLiteral(readAll(), offset);
+            case AstWriter.VARIABLE: {
+                int symbol = buffer.getInt();
+                return new Variable(symbols.name(symbol), symbol, offset);
+            }
+            case AstWriter.ASSIGN: {
+                int symbol = buffer.getInt();
+                return new Assign(symbols.name(symbol), symbol, readNode(), offset);
+            }
+            case AstWriter.BINARY: {
+                String symbol = (String) constant();
+                OperationManager.Operator operator = operations.getOperator(symbol);
+                if (operator == null) {
+                    logger.error("No handler registered for operator {}", symbol);
+                    throw new IllegalArgumentException("Unknown operator: " + symbol);
+                }
+                return new BinaryOperation(operator, readNode(), readNode(), offset);
+            }
+            case AstWriter.CALL: {
+                int symbol = buffer.getInt();
+                return new Call(symbols.name(symbol), symbol, readAll(), offset);
+            }
+            case AstWriter.BLOCK:
+                return new Block(readAll(), offset);
+            case AstWriter.IF:
+                return new IfStatement(readNode(), readBlock(), offset);
+            case AstWriter.WHILE:
+                return new WhileLoop(readNode(), readBlock(), offset);
+            case AstWriter.FOR: {
+                int symbol = buffer.getInt();
+                return new ForLoop(symbols.name(symbol), symbol, readNode(), readBlock(), offset);
+            }
+            case AstWriter.FUNCTION: {
+                int symbol = buffer.getInt();
+                List<Variable> parameters = new ArrayList<>();
+                for (Node parameter : readAll()) {
+                    if (!(parameter instanceof Variable variable)) {
+                        logger.error("Expected an encoded parameter at byte {}", buffer.position());
+                        throw new IllegalArgumentException("Expected an encoded parameter.");
+                    }
+                    parameters.add(variable);
+                }
+                return new FunctionDefinition(symbols.name(symbol), symbol, parameters, readBlock(), offset);
+            }
+            case AstWriter.RETURN:
+                return new Return(readNode(), offset);
+            default:
+                logger.error("Unknown node tag {} at byte {}", tag, buffer.position() - 5);
+                throw new IllegalArgumentException("Unknown node tag: " + tag);
+        }
+    }
+
+    public Block readBlock() {
+        if (!(readNode() instanceof Block block)) {
+            logger.error("Expected an encoded block at byte {}", buffer.position());
+            throw new IllegalArgumentException("Expected an encoded block.");
+        }
+        return block;
+    }
+
+    private List<Node> readAll() {
+        int size = buffer.getInt();
+        List<Node> nodes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            nodes.add(readNode());
+        }
+        return nodes;
+    }
+
+    private Object constant() {
+        return constants[buffer.getInt()];
+    }
+
+    private Object readConstant() {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case AstWriter.NULL -> null;
+            case AstWriter.INTEGER -> buffer.getInt();
+            case AstWriter.LONG -> buffer.getLong();
+            case AstWriter.FLOAT -> buffer.getFloat();
+            case AstWriter.DOUBLE -> buffer.getDouble();
+            case AstWriter.STRING -> readString(buffer);
+            case AstWriter.BOOLEAN -> buffer.get() != 0;
+            default -> {
+                logger.error("Unknown constant tag {}", tag);
+                throw new IllegalArgumentException("Unknown constant tag: " + tag);
+            }
+        };
+    }
+
+    /**
+     * Reads a string written by {@link AstWriter#writeString}.
+     */
+    public static String readString(ByteBuffer buffer) {
+        byte[] utf8 = new byte[buffer.getInt()];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,220 @@
+package org.rhm.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Encodes syntax trees in the compact binary form read back by {@link AstReader}. Literal values go to a constant
+ * pool written ahead of the nodes, names are stored as symbol ids of the script's symbol table and operators by
+ * their symbol, so the encoding does not depend on the operator registry of the writing process.
+ */
+public class AstWriter implements NodeVisitor<Void> {
+    static final byte LITERAL = 0;
+    static final byte LIST = 1;
+    static final byte VARIABLE = 2;
+    static final byte ASSIGN = 3;
+    static final byte BINARY = 4;
+    static final byte CALL = 5;
+    static final byte BLOCK = 6;
+    static final byte IF = 7;
+    static final byte WHILE = 8;
+    static final byte FOR = 9;
+    static final byte FUNCTION = 10;
+    static final byte RETURN = 11;
+
+    static final byte NULL = 0;
+    static final byte INTEGER = 1;
+    static final byte LONG = 2;
+    static final byte FLOAT = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte BOOLEAN = 6;
+    // pool key of null literals, the pool map does not take null
+    private static final Object NULL_VALUE = new Object();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream nodes = new DataOutputStream(bytes);
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    /**
+     * Writes the constant pool followed by the nodes visited so far.
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(constants.size());
+        for (Object constant : constants) {
+            writeConstant(out, constant);
+        }
+        nodes.flush();
+        bytes.writeTo(out);
+        out.flush();
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        header(LITERAL, literal);
+        writeInt(constantIndices.computeIfAbsent(Objects.requireNonNullElse(literal.value(), NULL_VALUE), this::pool));
+        return null;
+    }
+
+    @Override
+    public Void visitList(ListLiteral list) {
+        header(LIST, list);
+        writeAll(list.elements());
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        header(VARIABLE, variable);
+        writeInt(variable.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign assign) {
+        header(ASSIGN, assign);
+        writeInt(assign.symbol());
+        assign.value().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(BinaryOperation operation) {
+        header(BINARY, operation);
+        writeInt(constantIndices.computeIfAbsent(operation.operator().symbol(), this::pool));
+        operation.left().accept(this);
+        operation.right().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        header(CALL, call);
+        writeInt(call.symbol());
+        writeAll(call.arguments());
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        header(BLOCK, block);
+        writeAll(block.statements());
+        return null;
+    }
+
+    @Override
+    public Void visitIf(IfStatement statement) {
+        header(IF, statement);
+        statement.condition().accept(this);
+        statement.body().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(WhileLoop loop) {
+        header(WHILE, loop);
+        loop.condition().accept(this);
+        loop.body().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFor(ForLoop loop) {
+        header(FOR, loop);
+        writeInt(loop.symbol());
+        loop.iterable().accept(this);
+        loop.body().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFunction(FunctionDefinition function) {
+        header(FUNCTION, function);
+        writeInt(function.symbol());
+        writeAll(List.copyOf(function.parameters()));
+        function.body().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Return statement) {
+        header(RETURN, statement);
+        statement.value().accept(this);
+        return null;
+    }
+
+    private int pool(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void header(byte tag, Node node) {
+        try {
+            nodes.writeByte(tag);
+            nodes.writeInt(node.offset());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeAll(List<Node> children) {
+        writeInt(children.size());
+        for (Node child : children) {
+            child.accept(this);
+        }
+    }
+
+    private void writeInt(int value) {
+        try {
+            nodes.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeConstant(DataOutputStream out, Object value) throws IOException {
+        if (value == NULL_VALUE) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(integer);
+        } else if (value instanceof Long number) {
+            out.writeByte(LONG);
+            out.writeLong(number);
+        } else if (value instanceof Float number) {
+            out.writeByte(FLOAT);
+            out.writeFloat(number);
+        } else if (value instanceof Double number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof String string) {
+            out.writeByte(STRING);
+            writeString(out, string);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(bool);
+        } else {
+            throw new IllegalArgumentException("Literal of type " + value.getClass().getName() + " cannot be encoded.");
+        }
+    }
+
+    /**
+     * Writes the UTF-8 length and bytes of {@code string}, the form {@link AstReader#readString} reads back.
+     */
+    public static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+}
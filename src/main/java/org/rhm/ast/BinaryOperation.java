@@ -0,0 +1,19 @@
+package org.rhm.ast;
+
+import org.rhm.OperationManager;
+
+/**
+ * Operator application. The operator is resolved while parsing, so evaluation does not look it up again.
+ *
+ * @param specialization type feedback, used when the evaluator specializes operators
+ */
+public record BinaryOperation(OperationManager.Operator operator, Node left, Node right, int offset, Specialization specialization) implements Node {
+    public BinaryOperation(OperationManager.Operator operator, Node left, Node right, int offset) {
+        this(operator, left, right, offset, new Specialization(operator));
+    }
+
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitBinary(this);
+    }
+}
@@ -0,0 +1,14 @@
+package org.rhm.ast;
+
+import java.util.List;
+
+public record Block(List<Node> statements, int offset) implements Node {
+    public Block {
+        statements = List.copyOf(statements);
+    }
+
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitBlock(this);
+    }
+}
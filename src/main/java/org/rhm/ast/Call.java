@@ -0,0 +1,14 @@
+package org.rhm.ast;
+
+import java.util.List;
+
+public record Call(String name, int symbol, List<Node> arguments, int offset) implements Node {
+    public Call {
+        arguments = List.copyOf(arguments);
+    }
+
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitCall(this);
+    }
+}
@@ -0,0 +1,483 @@
+package org.rhm.ast;
+
+import org.rhm.FunctionManager;
+import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+import org.rhm.Parser;
+import org.rhm.SafeObject;
+import org.rhm.SourceException;
+import org.rhm.jit.JvmCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tree-walking evaluator. Top-level variables and functions are stored in the {@link Interpreter}, locals of script
+ * functions in frames on a stack owned by the evaluator, which is reused by every call.
+ */
+public class Evaluator implements NodeVisitor<Object> {
+    private static final Logger logger = LoggerFactory.getLogger(Evaluator.class);
+    // loop iterations between tier-up checks
+    private static final int TIER_UP_INTERVAL = 256;
+    // nested script calls before a call fails, tail calls reuse their frame and do not count
+    private static final int MAX_CALL_DEPTH = 10_000;
+
+    private final Interpreter interpreter;
+    private final OperationManager operations;
+    private boolean specializing = false;
+
+    private Object[] stack = new Object[256];
+    private int stackPointer = 0;
+    private int framePointer = 0;
+    private int depth = 0;
+    // function whose frame starts at framePointer, null at the top level
+    private ScriptFunction current;
+    private boolean returning;
+    private Object returnValue;
+    // set by a tail call, its arguments are above the returning function's frame
+    private ScriptFunction tailCallee;
+    private int tailArguments;
+    // value of the last unboxed() evaluation, in the field its type selects
+    private long integral;
+    private double decimal;
+    private Object boxed;
+
+    public Evaluator(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.operations = interpreter.getContext().getOperationManager();
+    }
+
+    /**
+     * @param specializing whether operators specialize to the operand types they see, see {@link Specialization}
+     */
+    public void setSpecializing(boolean specializing) {
+        this.specializing = specializing;
+    }
+
+    public Object evaluate(Node node) {
+        return node.accept(this);
+    }
+
+    /**
+     * Evaluates a node whose value is used, an assignment used as a value yields the assigned value.
+     */
+    private Object operand(Node node) {
+        Object value = node.accept(this);
+        return value instanceof Parser.Assignment assignment ? assignment.value() : value;
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return literal.value();
+    }
+
+    @Override
+    public Object visitList(ListLiteral list) {
+        List<SafeObject> elements = new ArrayList<>(list.elements().size());
+        Class<?> elementType = null;
+
+        for (Node node : list.elements()) {
+            Object element = operand(node);
+            Class<?> type = element == null ? null : element.getClass();
+            if (elements.isEmpty()) {
+                elementType = type;
+            } else if (elementType != type) {
+                logger.error("List element of type {} does not match {}", type, elementType);
+                throw error(node, "List elements must all be of the same type.");
+            }
+            elements.add(new SafeObject(element));
+        }
+
+        logger.debug("Evaluated list with elements: {}", elements);
+        return elements;
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        if (current != null) {
+            int slot = current.slot(variable.symbol());
+            if (slot != ScriptFunction.GLOBAL) {
+                Object value = stack[framePointer + slot];
+                if (value == null) {
+                    logger.error("Attempted to access an undefined local variable: {}", variable.name());
+                    throw error(variable, "Variable not defined: " + variable.name());
+                }
+                return value;
+            }
+        }
+        try {
+            return interpreter.getVariableValue(variable.symbol());
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(variable, e.getMessage());
+        }
+    }
+
+    @Override
+    public Object visitAssign(Assign assign) {
+        Object value = operand(assign.value());
+        store(assign.symbol(), value);
+        return new Parser.Assignment(assign.name(), value);
+    }
+
+    private void store(int symbol, Object value) {
+        int slot = current == null ? ScriptFunction.GLOBAL : current.slot(symbol);
+        if (slot == ScriptFunction.GLOBAL) {
+            interpreter.setVariableValue(symbol, value);
+        } else {
+            stack[framePointer + slot] = value;
+        }
+    }
+
+    @Override
+    public Object visitBinary(BinaryOperation operation) {
+        if (specializing && operation.specialization().isSpecialized()) {
+            return box(unboxed(operation));
+        }
+        return binary(operation, operand(operation.left()), operand(operation.right()));
+    }
+
+    private Object binary(BinaryOperation operation, Object left, Object right) {
+        try {
+            return specializing ? operation.specialization().execute(operations, left, right) : operations.apply(operation.operator(), left, right);
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(operation, e.getMessage());
+        } catch (ClassCastException | NullPointerException e) {
+            throw error(operation, OperationManager.unsupportedOperands(operation.operator(), left, right));
+        }
+    }
+
+    /**
+     * Evaluates {@code node} without boxing the results of specialized operations inside it, a numeric expression
+     * only boxes its final value. The value is left in {@link #integral} for ints, longs and booleans, in
+     * {@link #decimal} for floats and doubles and in {@link #boxed} for anything else.
+     *
+     * @return the {@link Specialization} type of the value, -1 if it is boxed
+     */
+    private int unboxed(Node node) {
+        if (!specializing || !(node instanceof BinaryOperation operation) || !operation.specialization().isSpecialized()) {
+            return unbox(operand(node));
+        }
+
+        int leftType = unboxed(operation.left());
+        long leftIntegral = integral;
+        double leftDecimal = decimal;
+        Object leftBoxed = boxed;
+        int rightType = unboxed(operation.right());
+
+        Specialization specialization = operation.specialization();
+        int type = specialization.type(leftType, rightType);
+        if (type < 0) {
+            // the operand types changed, the boxed call deoptimizes the operation
+            return unbox(binary(operation, box(leftType, leftIntegral, leftDecimal, leftBoxed), box(rightType)));
+        }
+
+        if (type <= Specialization.LONG) {
+            if (specialization.isComparison()) {
+                integral = specialization.compare(leftIntegral, integral) ? 1 : 0;
+                return Specialization.BOOLEAN;
+            }
+            integral = specialization.integral(type, leftIntegral, integral);
+            return type;
+        }
+        double left = leftType <= Specialization.LONG ? leftIntegral : leftDecimal;
+        double right = rightType <= Specialization.LONG ? integral : decimal;
+        if (specialization.isComparison()) {
+            integral = specialization.compare(left, right) ? 1 : 0;
+            return Specialization.BOOLEAN;
+        }
+        decimal = specialization.decimal(type, left, right);
+        return type;
+    }
+
+    private int unbox(Object value) {
+        if (value instanceof Integer i) {
+            integral = i;
+            return Specialization.INTEGER;
+        } else if (value instanceof Long l) {
+            integral = l;
+            return Specialization.LONG;
+        } else if (value instanceof Float f) {
+            decimal = f;
+            return Specialization.FLOAT;
+        } else if (value instanceof Double d) {
+            decimal = d;
+            return Specialization.DOUBLE;
+        } else if (value instanceof Boolean b) {
+            integral = b ? 1 : 0;
+            return Specialization.BOOLEAN;
+        }
+        boxed = value;
+        return -1;
+    }
+
+    private Object box(int type) {
+        return box(type, integral, decimal, boxed);
+    }
+
+    private static Object box(int type, long integral, double decimal, Object boxed) {
+        switch (type) {
+            case Specialization.INTEGER:
+                return (int) integral;
+            case Specialization.LONG:
+                return integral;
+            case Specialization.FLOAT:
+                return (float) decimal;
+            case Specialization.DOUBLE:
+                return decimal;
+            case Specialization.BOOLEAN:
+                return integral != 0;
+            default:
+                return boxed;
+        }
+    }
+
+    @Override
+    public Object visitCall(Call call) {
+        FunctionManager.FunctionHandler function = interpreter.getFunction(call.symbol());
+        if (function == null) {
+            logger.error("Call to unknown function {}", call.name());
+            throw error(call, "Unknown function: " + call.name());
+        }
+        if (function instanceof ScriptFunction script) {
+            int base = enter(script, call);
+            try {
+                for (int i = 0; i < call.arguments().size(); i++) {
+                    // a deep call in the argument may replace the stack array
+                    Object argument = operand(call.arguments().get(i));
+                    stack[base + i] = argument;
+                }
+                return run(script, base);
+            } catch (StackOverflowError e) {
+                // the Java stack ran out before MAX_CALL_DEPTH, too little of it is left to log here
+                throw error(call, "Recursion too deep");
+            } finally {
+                stackPointer = base;
+            }
+        }
+
+        SafeObject[] arguments = new SafeObject[call.arguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = new SafeObject(operand(call.arguments().get(i)));
+        }
+
+        try {
+            return function.execute(arguments);
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(call, e.getMessage());
+        }
+    }
+
+    @Override
+    public Object visitBlock(Block block) {
+        for (Node statement : block.statements()) {
+            if (statement instanceof Assign assign) {
+                // the value of an assignment statement is unused, only its store remains
+                store(assign.symbol(), operand(assign.value()));
+            } else {
+                evaluate(statement);
+            }
+            if (returning) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitIf(IfStatement statement) {
+        if (condition(statement.condition())) {
+            evaluate(statement.body());
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitWhile(WhileLoop loop) {
+        // compiled code only knows top-level variables, loops in functions stay in the evaluator
+        JvmCode compiled = current == null ? interpreter.tierUp(loop, 1) : null;
+        if (compiled != null) {
+            return compiled.run(interpreter);
+        }
+
+        int iterations = 0;
+        while (condition(loop.condition())) {
+            evaluate(loop.body());
+            if (returning) {
+                return null;
+            }
+            if (current == null && ++iterations == TIER_UP_INTERVAL) {
+                iterations = 0;
+                // all loop state lives in variables, so the compiled loop can take over mid-way
+                compiled = interpreter.tierUp(loop, TIER_UP_INTERVAL);
+                if (compiled != null) {
+                    return compiled.run(interpreter);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitFor(ForLoop loop) {
+        JvmCode compiled = current == null ? interpreter.tierUp(loop, 1) : null;
+        if (compiled != null) {
+            return compiled.run(interpreter);
+        }
+
+        Object iterable = operand(loop.iterable());
+        if (!(iterable instanceof List<?> elements)) {
+            logger.error("Expected a list for 'for' loop, but found {}", OperationManager.typeName(iterable));
+            throw error(loop.iterable(), "Expected a list for 'for' loop.");
+        }
+
+        for (Object element : elements) {
+            store(loop.symbol(), element instanceof SafeObject safe ? safe.getAs(Object.class) : element);
+            evaluate(loop.body());
+            if (returning) {
+                return null;
+            }
+        }
+        // the iterator cannot be handed over, so a hot for loop is compiled on its next run
+        if (current == null) {
+            interpreter.tierUp(loop, elements.size());
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitFunction(FunctionDefinition function) {
+        try {
+            interpreter.defineFunction(new ScriptFunction(function, this));
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(function, e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitReturn(Return statement) {
+        if (statement.value() instanceof Call call && interpreter.getFunction(call.symbol()) instanceof ScriptFunction callee) {
+            // evaluate the arguments above the frame, run() moves them into it once this function has returned
+            int arguments = enter(callee, call);
+            for (int i = 0; i < call.arguments().size(); i++) {
+                Object argument = operand(call.arguments().get(i));
+                stack[arguments + i] = argument;
+            }
+            stackPointer = arguments;
+            tailArguments = arguments;
+            tailCallee = callee;
+        } else {
+            returnValue = operand(statement.value());
+        }
+        returning = true;
+        return null;
+    }
+
+    /**
+     * Calls {@code function} with already evaluated arguments, for callers outside the evaluator.
+     */
+    Object call(ScriptFunction function, Object[] arguments) {
+        if (arguments.length != function.getArity()) {
+            logger.error("Function {} called with {} arguments", function.getName(), arguments.length);
+            throw new IllegalArgumentException("Function " + function.getName() + " expects " + function.getArity()
+                    + " arguments but got " + arguments.length + ".");
+        }
+        if (depth >= MAX_CALL_DEPTH) {
+            logger.error("Recursion too deep in {}", function.getName());
+            throw new IllegalArgumentException("Recursion too deep");
+        }
+        int base = stackPointer;
+        reserve(base + function.getFrameSize());
+        System.arraycopy(arguments, 0, stack, base, arguments.length);
+        return run(function, base);
+    }
+
+    /**
+     * Reserves the frame of a call to {@code function} on top of the stack, its arguments go to the first slots.
+     *
+     * @return index of the frame
+     */
+    private int enter(ScriptFunction function, Call call) {
+        if (call.arguments().size() != function.getArity()) {
+            logger.error("Function {} called with {} arguments", function.getName(), call.arguments().size());
+            throw error(call, "Function " + function.getName() + " expects " + function.getArity()
+                    + " arguments but got " + call.arguments().size() + ".");
+        }
+        if (depth >= MAX_CALL_DEPTH) {
+            logger.error("Recursion too deep in {}", function.getName());
+            throw error(call, "Recursion too deep");
+        }
+        int base = stackPointer;
+        reserve(base + function.getFrameSize());
+        return base;
+    }
+
+    private void reserve(int top) {
+        if (top > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(top, stack.length * 2));
+        }
+        stackPointer = top;
+    }
+
+    /**
+     * Runs the body of {@code function} in the frame at {@code base}, whose arguments are in place. Tail calls
+     * replace the function and its arguments in the same frame, so they do not grow the Java stack.
+     */
+    private Object run(ScriptFunction function, int base) {
+        ScriptFunction caller = current;
+        int callerFrame = framePointer;
+        current = function;
+        framePointer = base;
+        depth++;
+        try {
+            Arrays.fill(stack, base + function.getArity(), base + function.getFrameSize(), null);
+            while (true) {
+                evaluate(current.getDefinition().body());
+                if (tailCallee == null) {
+                    return returnValue;
+                }
+
+                int arity = tailCallee.getArity();
+                System.arraycopy(stack, tailArguments, stack, base, arity);
+                current = tailCallee;
+                tailCallee = null;
+                returning = false;
+                reserve(base + current.getFrameSize());
+                Arrays.fill(stack, base + arity, base + current.getFrameSize(), null);
+            }
+        } finally {
+            returning = false;
+            returnValue = null;
+            tailCallee = null;
+            current = caller;
+            framePointer = callerFrame;
+            stackPointer = base;
+            depth--;
+        }
+    }
+
+    private boolean condition(Node node) {
+        int type = unboxed(node);
+        if (type == Specialization.BOOLEAN) {
+            return integral != 0;
+        }
+        Object condition = box(type);
+        logger.error("Condition must evaluate to a boolean value, but got {}", OperationManager.typeName(condition));
+        throw error(node, "Condition must evaluate to a boolean value.");
+    }
+
+    private SourceException error(Node node, String message) {
+        return new SourceException(message, node.offset(), interpreter.getParser().getSourceMap());
+    }
+}
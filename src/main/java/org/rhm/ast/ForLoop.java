@@ -0,0 +1,11 @@
+package org.rhm.ast;
+
+/**
+ * Loop over the elements of a list, binding each to the variable {@code symbol}.
+ */
+public record ForLoop(String variable, int symbol, Node iterable, Block body, int offset) implements Node {
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitFor(this);
+    }
+}
@@ -0,0 +1,18 @@
+package org.rhm.ast;
+
+import java.util.List;
+
+/**
+ * Definition of a script function. Its parameters and the variables its body assigns are local to each call, any
+ * other variable it reads is a top-level one.
+ */
+public record FunctionDefinition(String name, int symbol, List<Variable> parameters, Block body, int offset) implements Node {
+    public FunctionDefinition {
+        parameters = List.copyOf(parameters);
+    }
+
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitFunction(this);
+    }
+}
@@ -0,0 +1,14 @@
+package org.rhm.ast;
+
+import java.util.List;
+
+public record ListLiteral(List<Node> elements, int offset) implements Node {
+    public ListLiteral {
+        elements = List.copyOf(elements);
+    }
+
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitList(this);
+    }
+}
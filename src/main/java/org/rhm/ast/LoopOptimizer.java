@@ -0,0 +1,647 @@
+package org.rhm.ast;
+
+import org.rhm.Diagnostics;
+import org.rhm.FunctionManager;
+import org.rhm.OperationManager;
+import org.rhm.Parser;
+import org.rhm.RuntimeContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Optimizes {@code while} and {@code for} loops, inner loops first.
+ * <ul>
+ *     <li>Expressions that only read variables the loop never assigns are computed once before the loop.</li>
+ *     <li>{@code i * k} for an induction variable {@code i}, changed once per iteration by a constant step, is kept
+ *     in a temporary that grows by {@code step * k} instead.</li>
+ * </ul>
+ * Temporaries are variables named {@code $...}, which scripts cannot refer to. Work that would otherwise only
+ * happen inside the loop is guarded by the loop running at least once, and the strength reduced loop by the
+ * induction variables being integral, the original loop still handles floating point ones. Hoisted expressions may
+ * throw, so they only come from the part of the loop that runs before its first side effect or exit, an error then
+ * still happens before anything the script can observe.
+ */
+public class LoopOptimizer implements NodeVisitor<Node> {
+    private static final Logger logger = LoggerFactory.getLogger(LoopOptimizer.class);
+
+    private final Parser parser;
+    private final RuntimeContext context;
+    private final List<String> report = new ArrayList<>();
+    private int temporaries = 0;
+
+    public LoopOptimizer(Parser parser) {
+        this.parser = parser;
+        this.context = parser.getContext();
+    }
+
+    public Node optimize(Node node) {
+        return node.accept(this);
+    }
+
+    /**
+     * @return the transformations applied so far, one per line with their source position
+     */
+    public List<String> getReport() {
+        return Collections.unmodifiableList(report);
+    }
+
+    @Override
+    public Node visitLiteral(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Node visitList(ListLiteral list) {
+        return list;
+    }
+
+    @Override
+    public Node visitVariable(Variable variable) {
+        return variable;
+    }
+
+    @Override
+    public Node visitAssign(Assign assign) {
+        return assign;
+    }
+
+    @Override
+    public Node visitBinary(BinaryOperation operation) {
+        return operation;
+    }
+
+    @Override
+    public Node visitCall(Call call) {
+        return call;
+    }
+
+    @Override
+    public Node visitBlock(Block block) {
+        List<Node> statements = new ArrayList<>(block.statements().size());
+        boolean changed = false;
+
+        for (Node statement : block.statements()) {
+            Node optimized = optimize(statement);
+            changed |= optimized != statement;
+            if (optimized instanceof Block nested && !(statement instanceof Block)) {
+                statements.addAll(nested.statements());
+            } else {
+                statements.add(optimized);
+            }
+        }
+        return changed ? new Block(statements, block.offset()) : block;
+    }
+
+    @Override
+    public Node visitIf(IfStatement statement) {
+        Block body = (Block) optimize(statement.body());
+        return body == statement.body() ? statement : new IfStatement(statement.condition(), body, statement.offset());
+    }
+
+    @Override
+    public Node visitWhile(WhileLoop loop) {
+        Block body = (Block) optimize(loop.body());
+        Loop analysis = new Loop(loop.condition(), body);
+
+        // the condition runs whenever the loop is reached, so its invariants need no guard
+        Map<String, Node> conditionInvariants = new LinkedHashMap<>();
+        Map<String, Node> bodyInvariants = new LinkedHashMap<>();
+        List<Induction> inductions = List.of();
+        if (analysis.isPure(loop.condition())) {
+            analysis.collectInvariants(loop.condition(), conditionInvariants);
+            analysis.collectBodyInvariants(bodyInvariants);
+            bodyInvariants.keySet().removeAll(conditionInvariants.keySet());
+            inductions = analysis.findInductions();
+        }
+
+        if (conditionInvariants.isEmpty() && bodyInvariants.isEmpty() && inductions.isEmpty()) {
+            return body == loop.body() ? loop : new WhileLoop(loop.condition(), body, loop.offset());
+        }
+
+        Map<String, Variable> hoisted = new HashMap<>();
+        List<Node> statements = new ArrayList<>();
+        hoist(conditionInvariants, hoisted, statements, loop, "while");
+        List<Node> guarded = new ArrayList<>();
+        hoist(bodyInvariants, hoisted, guarded, loop, "while");
+
+        Node condition = replace(loop.condition(), hoisted);
+        Block hoistedBody = (Block) replace(body, hoisted);
+        if (guarded.isEmpty() && inductions.isEmpty()) {
+            statements.add(new WhileLoop(condition, hoistedBody, loop.offset()));
+        } else {
+            guarded.addAll(version(inductions, hoistedBody, condition, loop, "while",
+                    (reducedCondition, reducedBody) -> new WhileLoop(reducedCondition, reducedBody, loop.offset())));
+            statements.add(new IfStatement(condition, new Block(guarded, loop.offset()), loop.offset()));
+        }
+        return dump(new Block(statements, loop.offset()));
+    }
+
+    @Override
+    public Node visitFor(ForLoop loop) {
+        Block body = (Block) optimize(loop.body());
+        Loop analysis = new Loop(null, body);
+        analysis.assign(loop.symbol());
+
+        Map<String, Node> bodyInvariants = new LinkedHashMap<>();
+        analysis.collectBodyInvariants(bodyInvariants);
+        List<Induction> inductions = analysis.findInductions();
+
+        if (bodyInvariants.isEmpty() && inductions.isEmpty()) {
+            return body == loop.body() ? loop : new ForLoop(loop.variable(), loop.symbol(), loop.iterable(), body, loop.offset());
+        }
+
+        // evaluate the list once, the guard and the loop both need it
+        Variable list = temporary("$list", loop.iterable().offset());
+        List<Node> statements = new ArrayList<>();
+        statements.add(new Assign(list.name(), list.symbol(), loop.iterable(), loop.offset()));
+
+        Map<String, Variable> hoisted = new HashMap<>();
+        List<Node> guarded = new ArrayList<>();
+        hoist(bodyInvariants, hoisted, guarded, loop, "for");
+        Block hoistedBody = (Block) replace(body, hoisted);
+        guarded.addAll(version(inductions, hoistedBody, null, loop, "for",
+                (condition, reducedBody) -> new ForLoop(loop.variable(), loop.symbol(), list, reducedBody, loop.offset())));
+
+        Call nonEmpty = call(FunctionManager.NON_EMPTY, List.of(list), loop.iterable().offset());
+        statements.add(new IfStatement(nonEmpty, new Block(guarded, loop.offset()), loop.offset()));
+        return dump(new Block(statements, loop.offset()));
+    }
+
+    @Override
+    public Node visitFunction(FunctionDefinition function) {
+        Block body = (Block) optimize(function.body());
+        if (body == function.body()) {
+            return function;
+        }
+        return new FunctionDefinition(function.name(), function.symbol(), function.parameters(), body, function.offset());
+    }
+
+    @Override
+    public Node visitReturn(Return statement) {
+        return statement;
+    }
+
+    private void hoist(Map<String, Node> invariants, Map<String, Variable> hoisted, List<Node> statements, Node loop, String kind) {
+        for (Map.Entry<String, Node> invariant : invariants.entrySet()) {
+            Variable temporary = temporary("$inv", invariant.getValue().offset());
+            hoisted.put(invariant.getKey(), temporary);
+            statements.add(new Assign(temporary.name(), temporary.symbol(), invariant.getValue(), invariant.getValue().offset()));
+            report(loop, "hoisted " + AstPrinter.print(invariant.getValue()) + " out of " + kind + " loop into " + temporary.name());
+        }
+    }
+
+    /**
+     * @return statements running the loop built by {@code rebuild}, strength reduced when the induction variables
+     * turn out to be integral
+     */
+    private List<Node> version(List<Induction> inductions, Block body, Node condition, Node loop, String kind, LoopBuilder rebuild) {
+        Node original = rebuild.build(condition, body);
+        if (inductions.isEmpty()) {
+            return List.of(original);
+        }
+
+        List<Node> initializers = new ArrayList<>();
+        Map<String, Variable> reduced = new HashMap<>();
+        Map<Node, List<Node>> updates = new IdentityHashMap<>();
+        List<Node> variables = new ArrayList<>();
+
+        for (Induction induction : inductions) {
+            for (BinaryOperation product : induction.products) {
+                String key = key(product);
+                if (reduced.containsKey(key)) {
+                    continue;
+                }
+                Variable temporary = temporary("$ind", product.offset());
+                reduced.put(key, temporary);
+                initializers.add(new Assign(temporary.name(), temporary.symbol(), product, product.offset()));
+
+                int factor = (Integer) ((Literal) (product.left() instanceof Literal ? product.left() : product.right())).value();
+                int increment = Math.multiplyExact(induction.step, factor);
+                Node update = new Assign(temporary.name(), temporary.symbol(), new BinaryOperation(operator("+="),
+                        temporary, new Literal(increment, product.offset()), product.offset()), product.offset());
+                updates.computeIfAbsent(induction.increment, statement -> new ArrayList<>()).add(update);
+                report(loop, "reduced " + AstPrinter.print(product) + " in " + kind + " loop to " + temporary.name() + " += " + increment);
+            }
+            variables.add(new Variable(induction.name, induction.symbol, loop.offset()));
+        }
+
+        List<Node> reducedStatements = new ArrayList<>();
+        for (Node statement : body.statements()) {
+            reducedStatements.add(replace(statement, reduced));
+            reducedStatements.addAll(updates.getOrDefault(statement, List.of()));
+        }
+        Node reducedCondition = condition == null ? null : replace(condition, reduced);
+        initializers.add(rebuild.build(reducedCondition, new Block(reducedStatements, body.offset())));
+
+        Variable integral = temporary("$integral", loop.offset());
+        List<Node> statements = new ArrayList<>();
+        statements.add(new Assign(integral.name(), integral.symbol(), call(FunctionManager.INTEGRAL, variables, loop.offset()), loop.offset()));
+        statements.add(new IfStatement(integral, new Block(initializers, loop.offset()), loop.offset()));
+        BinaryOperation fractional = new BinaryOperation(operator("=="), integral, new Literal(Boolean.FALSE, loop.offset()), loop.offset());
+        statements.add(new IfStatement(fractional, new Block(List.of(original), loop.offset()), loop.offset()));
+        return statements;
+    }
+
+    private Node dump(Block optimized) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Optimized loop: {}", AstPrinter.print(optimized));
+        }
+        return optimized;
+    }
+
+    private void report(Node loop, String transformation) {
+        String entry = Diagnostics.Diagnostic.at(transformation, loop.offset(), parser.getSourceMap()).toString();
+        report.add(entry);
+        logger.debug("Loop optimizer {}", entry);
+    }
+
+    private Variable temporary(String prefix, int offset) {
+        String name = prefix + temporaries++;
+        return new Variable(name, parser.getSymbols().intern(name), offset);
+    }
+
+    private Call call(String function, List<Node> arguments, int offset) {
+        return new Call(function, parser.getSymbols().intern(function), arguments, offset);
+    }
+
+    private OperationManager.Operator operator(String symbol) {
+        return context.getOperationManager().getOperator(symbol);
+    }
+
+    /**
+     * Replaces every expression whose {@link #key(Node)} is mapped, nodes without replacements are kept.
+     */
+    private static Node replace(Node node, Map<String, Variable> replacements) {
+        if (replacements.isEmpty()) {
+            return node;
+        }
+        return new Rewriter(expression -> replacements.get(key(expression))).rewrite(node);
+    }
+
+    /**
+     * @return text identifying an expression regardless of where it appears in the source
+     */
+    static String key(Node node) {
+        if (node instanceof Literal literal) {
+            return literal.value() == null ? "null" : literal.value().getClass().getSimpleName() + ":" + literal.value();
+        }
+        if (node instanceof BinaryOperation operation) {
+            return "(" + key(operation.left()) + " " + operation.operator().symbol() + " " + key(operation.right()) + ")";
+        }
+        if (node instanceof Call call) {
+            StringBuilder builder = new StringBuilder(call.name()).append('(');
+            call.arguments().forEach(argument -> builder.append(key(argument)).append(','));
+            return builder.append(')').toString();
+        }
+        return AstPrinter.print(node);
+    }
+
+    private interface LoopBuilder {
+        Node build(Node condition, Block body);
+    }
+
+    /**
+     * Induction variable changed by {@code step} in the top-level statement {@code increment}.
+     */
+    private record Induction(String name, int symbol, int step, Node increment, List<BinaryOperation> products) { }
+
+    /**
+     * Variables assigned in one loop and the expressions derived from them.
+     */
+    private final class Loop {
+        private final Node condition;
+        private final Block body;
+        private final Map<Integer, Integer> assignments = new HashMap<>();
+
+        Loop(Node condition, Block body) {
+            this.condition = condition;
+            this.body = body;
+            Rewriter counter = new Rewriter(this::countAssignment);
+            if (condition != null) {
+                counter.rewrite(condition);
+            }
+            counter.rewrite(body);
+        }
+
+        void assign(int symbol) {
+            assignments.merge(symbol, 1, Integer::sum);
+        }
+
+        private Node countAssignment(Node node) {
+            if (node instanceof Assign assign) {
+                assign(assign.symbol());
+            } else if (node instanceof ForLoop loop) {
+                assign(loop.symbol());
+            }
+            return null;
+        }
+
+        /**
+         * @return whether evaluating {@code node} has no effect besides its value, so it may run more often
+         */
+        boolean isPure(Node node) {
+            if (node instanceof Literal || node instanceof Variable) {
+                return true;
+            }
+            if (node instanceof BinaryOperation operation) {
+                return context.getOperationManager().isBuiltin(operation.operator())
+                        && !AstParser.COMPOUND_ASSIGNMENTS.contains(operation.operator().symbol())
+                        && !operation.operator().symbol().equals("=")
+                        && isPure(operation.left()) && isPure(operation.right());
+            }
+            if (node instanceof Call call) {
+                return context.getFunctionManager().isPure(call.name()) && call.arguments().stream().allMatch(this::isPure);
+            }
+            if (node instanceof ListLiteral list) {
+                return list.elements().stream().allMatch(this::isPure);
+            }
+            return false;
+        }
+
+        /**
+         * @return whether running {@code statement} has no effect besides assigning variables and always completes,
+         * so expressions after it may be evaluated before it
+         */
+        boolean isQuiet(Node statement) {
+            if (statement instanceof Assign assign) {
+                // compound assignments keep their operator in the assigned value
+                if (assign.value() instanceof BinaryOperation operation
+                        && AstParser.COMPOUND_ASSIGNMENTS.contains(operation.operator().symbol())) {
+                    return context.getOperationManager().isBuiltin(operation.operator())
+                            && isPure(operation.left()) && isPure(operation.right());
+                }
+                return isPure(assign.value());
+            }
+            if (statement instanceof IfStatement nested) {
+                return isPure(nested.condition()) && isQuiet(nested.body());
+            }
+            if (statement instanceof Block block) {
+                return block.statements().stream().allMatch(this::isQuiet);
+            }
+            // loops may not terminate, returns leave the loop
+            if (statement instanceof WhileLoop || statement instanceof ForLoop || statement instanceof Return
+                    || statement instanceof FunctionDefinition) {
+                return false;
+            }
+            return isPure(statement);
+        }
+
+        /**
+         * Lists are never invariant, every evaluation creates a new one.
+         */
+        boolean isInvariant(Node node) {
+            if (node instanceof Variable variable) {
+                return !assignments.containsKey(variable.symbol());
+            }
+            if (node instanceof ListLiteral || !isPure(node)) {
+                return false;
+            }
+            if (node instanceof BinaryOperation operation) {
+                return isInvariant(operation.left()) && isInvariant(operation.right());
+            }
+            if (node instanceof Call call) {
+                return call.arguments().stream().allMatch(this::isInvariant);
+            }
+            return node instanceof Literal;
+        }
+
+        /**
+         * Collects the largest invariant expressions in {@code node} worth computing once.
+         */
+        void collectInvariants(Node node, Map<String, Node> invariants) {
+            if (node instanceof Literal || node instanceof Variable) {
+                return;
+            }
+            if (isInvariant(node)) {
+                invariants.putIfAbsent(key(node), node);
+            } else if (node instanceof BinaryOperation operation) {
+                collectInvariants(operation.left(), invariants);
+                collectInvariants(operation.right(), invariants);
+            } else if (node instanceof Call call) {
+                call.arguments().forEach(argument -> collectInvariants(argument, invariants));
+            } else if (node instanceof ListLiteral list) {
+                list.elements().forEach(element -> collectInvariants(element, invariants));
+            } else if (node instanceof Assign assign) {
+                collectInvariants(assign.value(), invariants);
+            }
+        }
+
+        /**
+         * Collects invariants evaluated by every iteration before its first side effect or exit: expressions of
+         * top-level statements, but not the bodies of nested statements.
+         */
+        void collectBodyInvariants(Map<String, Node> invariants) {
+            for (Node statement : body.statements()) {
+                // the header of a nested statement runs before its body, if it has no effect itself
+                if (statement instanceof IfStatement nested && isPure(nested.condition())) {
+                    collectInvariants(nested.condition(), invariants);
+                } else if (statement instanceof WhileLoop nested && isPure(nested.condition())) {
+                    collectInvariants(nested.condition(), invariants);
+                } else if (statement instanceof ForLoop nested && isPure(nested.iterable())) {
+                    collectInvariants(nested.iterable(), invariants);
+                } else if (!(statement instanceof Block) && isQuiet(statement)) {
+                    collectInvariants(statement, invariants);
+                }
+                if (!isQuiet(statement)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Finds variables assigned once per iteration by a top-level {@code i += c} style statement, together with
+         * their products with integer constants.
+         */
+        List<Induction> findInductions() {
+            List<Induction> inductions = new ArrayList<>();
+            for (Node statement : body.statements()) {
+                if (!(statement instanceof Assign assign) || assignments.get(assign.symbol()) != 1
+                        || !(assign.value() instanceof BinaryOperation step)
+                        || !context.getOperationManager().isBuiltin(step.operator())
+                        || !(step.left() instanceof Variable variable) || variable.symbol() != assign.symbol()
+                        || !(step.right() instanceof Literal literal) || !(literal.value() instanceof Integer constant)) {
+                    continue;
+                }
+
+                int direction;
+                switch (step.operator().symbol()) {
+                    case "+", "+=" -> direction = 1;
+                    case "-", "-=" -> direction = -1;
+                    default -> direction = 0;
+                }
+                if (direction == 0 || constant == Integer.MIN_VALUE) {
+                    continue;
+                }
+
+                List<BinaryOperation> products = new ArrayList<>();
+                Rewriter finder = new Rewriter(node -> {
+                    if (isProduct(node, assign.symbol(), direction * constant)) {
+                        products.add((BinaryOperation) node);
+                    }
+                    return null;
+                });
+                if (condition != null) {
+                    finder.rewrite(condition);
+                }
+                finder.rewrite(body);
+
+                if (!products.isEmpty()) {
+                    inductions.add(new Induction(assign.name(), assign.symbol(), direction * constant, statement, products));
+                }
+            }
+            return inductions;
+        }
+
+        private boolean isProduct(Node node, int symbol, int step) {
+            if (!(node instanceof BinaryOperation operation) || !operation.operator().symbol().equals("*")
+                    || !context.getOperationManager().isBuiltin(operation.operator())) {
+                return false;
+            }
+
+            Node factor;
+            if (operation.left() instanceof Variable variable && variable.symbol() == symbol) {
+                factor = operation.right();
+            } else if (operation.right() instanceof Variable variable && variable.symbol() == symbol) {
+                factor = operation.left();
+            } else {
+                return false;
+            }
+            if (!(factor instanceof Literal literal) || !(literal.value() instanceof Integer constant)) {
+                return false;
+            }
+
+            try {
+                Math.multiplyExact(step, constant);
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a tree top-down. Nodes the replacement maps to non-null values are replaced without visiting
+     * their children, it also serves to walk every node of a tree.
+     */
+    private static final class Rewriter implements NodeVisitor<Node> {
+        private final Function<Node, Node> replacement;
+
+        Rewriter(Function<Node, Node> replacement) {
+            this.replacement = replacement;
+        }
+
+        private Node rewrite(Node node) {
+            Node replaced = replacement.apply(node);
+            return replaced != null ? replaced : node.accept(this);
+        }
+
+        private List<Node> rewriteAll(List<Node> nodes) {
+            List<Node> rewritten = new ArrayList<>(nodes.size());
+            boolean changed = false;
+            for (Node node : nodes) {
+                Node result = rewrite(node);
+                changed |= result != node;
+                rewritten.add(result);
+            }
+            return changed ? rewritten : nodes;
+        }
+
+        @Override
+        public Node visitLiteral(Literal literal) {
+            return literal;
+        }
+
+        @Override
+        public Node visitList(ListLiteral list) {
+            List<Node> elements = rewriteAll(list.elements());
+            return elements == list.elements() ? list : new ListLiteral(elements, list.offset());
+        }
+
+        @Override
+        public Node visitVariable(Variable variable) {
+            return variable;
+        }
+
+        @Override
+        public Node visitAssign(Assign assign) {
+            Node value = rewrite(assign.value());
+            return value == assign.value() ? assign : new Assign(assign.name(), assign.symbol(), value, assign.offset());
+        }
+
+        @Override
+        public Node visitBinary(BinaryOperation operation) {
+            Node left = rewrite(operation.left());
+            Node right = rewrite(operation.right());
+            if (left == operation.left() && right == operation.right()) {
+                return operation;
+            }
+            return new BinaryOperation(operation.operator(), left, right, operation.offset());
+        }
+
+        @Override
+        public Node visitCall(Call call) {
+            List<Node> arguments = rewriteAll(call.arguments());
+            return arguments == call.arguments() ? call : new Call(call.name(), call.symbol(), arguments, call.offset());
+        }
+
+        @Override
+        public Node visitBlock(Block block) {
+            List<Node> statements = rewriteAll(block.statements());
+            return statements == block.statements() ? block : new Block(statements, block.offset());
+        }
+
+        @Override
+        public Node visitIf(IfStatement statement) {
+            Node condition = rewrite(statement.condition());
+            Block body = (Block) rewrite(statement.body());
+            if (condition == statement.condition() && body == statement.body()) {
+                return statement;
+            }
+            return new IfStatement(condition, body, statement.offset());
+        }
+
+        @Override
+        public Node visitWhile(WhileLoop loop) {
+            Node condition = rewrite(loop.condition());
+            Block body = (Block) rewrite(loop.body());
+            if (condition == loop.condition() && body == loop.body()) {
+                return loop;
+            }
+            return new WhileLoop(condition, body, loop.offset());
+        }
+
+        @Override
+        public Node visitFor(ForLoop loop) {
+            Node iterable = rewrite(loop.iterable());
+            Block body = (Block) rewrite(loop.body());
+            if (iterable == loop.iterable() && body == loop.body()) {
+                return loop;
+            }
+            return new ForLoop(loop.variable(), loop.symbol(), iterable, body, loop.offset());
+        }
+
+        @Override
+        public Node visitFunction(FunctionDefinition function) {
+            Block body = (Block) rewrite(function.body());
+            if (body == function.body()) {
+                return function;
+            }
+            return new FunctionDefinition(function.name(), function.symbol(), function.parameters(), body, function.offset());
+        }
+
+        @Override
+        public Node visitReturn(Return statement) {
+            Node value = rewrite(statement.value());
+            return value == statement.value() ? statement : new Return(value, statement.offset());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.rhm.ast;
+
+/**
+ * Syntax tree node. Nodes are immutable apart from the type feedback they collect, a parsed script can be
+ * evaluated any number of times.
+ */
+public interface Node {
+    /**
+     * @return source offset the node starts at, or {@link org.rhm.SourceMap#NO_POSITION}
+     */
+    int offset();
+
+    <R> R accept(NodeVisitor<R> visitor);
+}
@@ -0,0 +1,16 @@
+package org.rhm.ast;
+
+public interface NodeVisitor<R> {
+    R visitLiteral(Literal literal);
+    R visitList(ListLiteral list);
+    R visitVariable(Variable variable);
+    R visitAssign(Assign assign);
+    R visitBinary(BinaryOperation operation);
+    R visitCall(Call call);
+    R visitBlock(Block block);
+    R visitIf(IfStatement statement);
+    R visitWhile(WhileLoop loop);
+    R visitFor(ForLoop loop);
+    R visitFunction(FunctionDefinition function);
+    R visitReturn(Return statement);
+}
@@ -0,0 +1,216 @@
+package org.rhm.ast;
+
+import org.rhm.FunctionManager;
+import org.rhm.RuntimeContext;
+import org.rhm.SafeObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites syntax trees before they run: operators and pure builtin calls on constants are evaluated once, and
+ * branches that can never run are dropped. Anything that fails while folding is left for the evaluator, so errors
+ * are still reported when and where the script reaches them.
+ */
+public class Optimizer implements NodeVisitor<Node> {
+    private static final Logger logger = LoggerFactory.getLogger(Optimizer.class);
+
+    private final RuntimeContext context;
+    private int folded = 0;
+    private int removed = 0;
+
+    /**
+     * @param context operators and functions whose builtins may be folded
+     */
+    public Optimizer(RuntimeContext context) {
+        this.context = context;
+    }
+
+    public Node optimize(Node node) {
+        return node.accept(this);
+    }
+
+    /**
+     * @return number of operator applications and calls replaced by their value so far
+     */
+    public int getFolded() {
+        return folded;
+    }
+
+    /**
+     * @return number of unreachable statements dropped so far
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public Node visitLiteral(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Node visitList(ListLiteral list) {
+        // lists are not folded, every evaluation must create a new one
+        List<Node> elements = optimizeAll(list.elements());
+        return elements == list.elements() ? list : new ListLiteral(elements, list.offset());
+    }
+
+    @Override
+    public Node visitVariable(Variable variable) {
+        return variable;
+    }
+
+    @Override
+    public Node visitAssign(Assign assign) {
+        Node value = optimize(assign.value());
+        return value == assign.value() ? assign : new Assign(assign.name(), assign.symbol(), value, assign.offset());
+    }
+
+    @Override
+    public Node visitBinary(BinaryOperation operation) {
+        Node left = optimize(operation.left());
+        Node right = optimize(operation.right());
+
+        if (left instanceof Literal constantLeft && right instanceof Literal constantRight
+                && context.getOperationManager().isBuiltin(operation.operator())) {
+            try {
+                Object value = context.getOperationManager().apply(operation.operator(), constantLeft.value(), constantRight.value());
+                folded++;
+                logger.debug("Folded {} {} {} to {}", constantLeft.value(), operation.operator().symbol(), constantRight.value(), value);
+                return new Literal(value, operation.offset());
+            } catch (RuntimeException e) {
+                logger.debug("Not folding '{}': {}", operation.operator().symbol(), e.toString());
+            }
+        }
+
+        if (left == operation.left() && right == operation.right()) {
+            return operation;
+        }
+        return new BinaryOperation(operation.operator(), left, right, operation.offset());
+    }
+
+    @Override
+    public Node visitCall(Call call) {
+        List<Node> arguments = optimizeAll(call.arguments());
+
+        if (context.getFunctionManager().isPure(call.name()) && arguments.stream().allMatch(Literal.class::isInstance)) {
+            SafeObject[] values = new SafeObject[arguments.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new SafeObject(((Literal) arguments.get(i)).value());
+            }
+
+            FunctionManager.FunctionHandler function = context.getFunctionManager().functionHandlers.get(call.name());
+            try {
+                Object value = function.execute(values);
+                folded++;
+                logger.debug("Folded call to {} to {}", call.name(), value);
+                return new Literal(value, call.offset());
+            } catch (RuntimeException e) {
+                logger.debug("Not folding call to {}: {}", call.name(), e.toString());
+            }
+        }
+
+        return arguments == call.arguments() ? call : new Call(call.name(), call.symbol(), arguments, call.offset());
+    }
+
+    @Override
+    public Node visitBlock(Block block) {
+        List<Node> statements = new ArrayList<>(block.statements().size());
+        boolean changed = false;
+
+        for (Node statement : block.statements()) {
+            Node optimized = optimize(statement);
+            changed |= optimized != statement;
+            if (optimized instanceof Block nested && !(statement instanceof Block)) {
+                // body of an if that always runs, there is no block scope to preserve
+                statements.addAll(nested.statements());
+            } else {
+                statements.add(optimized);
+            }
+        }
+        return changed ? new Block(statements, block.offset()) : block;
+    }
+
+    @Override
+    public Node visitIf(IfStatement statement) {
+        Node condition = optimize(statement.condition());
+        Block body = (Block) optimize(statement.body());
+
+        if (condition instanceof Literal literal && literal.value() instanceof Boolean always) {
+            if (always) {
+                return body;
+            }
+            removed += body.statements().size();
+            logger.debug("Removed if statement at {} whose condition is always false", statement.offset());
+            return new Block(List.of(), statement.offset());
+        }
+
+        if (condition == statement.condition() && body == statement.body()) {
+            return statement;
+        }
+        return new IfStatement(condition, body, statement.offset());
+    }
+
+    @Override
+    public Node visitWhile(WhileLoop loop) {
+        Node condition = optimize(loop.condition());
+        Block body = (Block) optimize(loop.body());
+
+        if (condition instanceof Literal literal && Boolean.FALSE.equals(literal.value())) {
+            removed += body.statements().size();
+            logger.debug("Removed while loop at {} whose condition is always false", loop.offset());
+            return new Block(List.of(), loop.offset());
+        }
+
+        if (condition == loop.condition() && body == loop.body()) {
+            return loop;
+        }
+        return new WhileLoop(condition, body, loop.offset());
+    }
+
+    @Override
+    public Node visitFor(ForLoop loop) {
+        Node iterable = optimize(loop.iterable());
+        Block body = (Block) optimize(loop.body());
+
+        if (iterable == loop.iterable() && body == loop.body()) {
+            return loop;
+        }
+        return new ForLoop(loop.variable(), loop.symbol(), iterable, body, loop.offset());
+    }
+
+    @Override
+    public Node visitFunction(FunctionDefinition function) {
+        Block body = (Block) optimize(function.body());
+        if (body == function.body()) {
+            return function;
+        }
+        return new FunctionDefinition(function.name(), function.symbol(), function.parameters(), body, function.offset());
+    }
+
+    @Override
+    public Node visitReturn(Return statement) {
+        Node value = optimize(statement.value());
+        return value == statement.value() ? statement : new Return(value, statement.offset());
+    }
+
+    /**
+     * @return {@code nodes} itself if no node changed
+     */
+    private List<Node> optimizeAll(List<Node> nodes) {
+        List<Node> optimized = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = optimize(nodes.get(i));
+            if (node != nodes.get(i) && optimized == null) {
+                optimized = new ArrayList<>(nodes.subList(0, i));
+            }
+            if (optimized != null) {
+                optimized.add(node);
+            }
+        }
+        return optimized == null ? nodes : optimized;
+    }
+}
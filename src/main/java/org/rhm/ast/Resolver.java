@@ -0,0 +1,158 @@
+package org.rhm.ast;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the variables a statement reads on every run before it may have assigned them itself. Variables are stored
+ * in slots indexed by symbol id, so checking these slots before the statement runs reports an undefined variable
+ * up front instead of midway through the statement. Reads in bodies of ifs and loops are left to the evaluator,
+ * a body that never runs must not fail.
+ * <p>
+ * Scripts parsed ahead of time are checked as a whole: a read fails for sure if neither the bindings nor an earlier
+ * statement may assign the variable, see {@link #assigned(Node)}. Functions only assign their own locals.
+ */
+public class Resolver implements NodeVisitor<Void> {
+    private static final Variable[] NO_READS = new Variable[0];
+
+    // statements resolved before, null if each statement is only resolved once
+    private final Map<Node, Resolution> resolved;
+    private final BitSet assigned = new BitSet();
+    private final BitSet read = new BitSet();
+    private final List<Variable> reads = new ArrayList<>();
+    // number of enclosing bodies that may not run
+    private int conditional;
+
+    public Resolver() {
+        this(false);
+    }
+
+    /**
+     * @param caching whether to remember resolved statements, for scripts that run many times
+     */
+    public Resolver(boolean caching) {
+        this.resolved = caching ? new IdentityHashMap<>() : null;
+    }
+
+    /**
+     * @return the first read of every variable {@code statement} reads unconditionally before it may have assigned
+     * it, in evaluation order
+     */
+    public Variable[] resolve(Node statement) {
+        return resolution(statement).reads();
+    }
+
+    /**
+     * @return the symbols of the top-level variables {@code statement} may assign, also in bodies that may not run
+     */
+    public BitSet assigned(Node statement) {
+        return (BitSet) resolution(statement).assigned().clone();
+    }
+
+    private Resolution resolution(Node statement) {
+        Resolution resolution = resolved == null ? null : resolved.get(statement);
+        if (resolution == null) {
+            statement.accept(this);
+            resolution = new Resolution(reads.isEmpty() ? NO_READS : reads.toArray(NO_READS), (BitSet) assigned.clone());
+            assigned.clear();
+            read.clear();
+            reads.clear();
+            if (resolved != null) {
+                resolved.put(statement, resolution);
+            }
+        }
+        return resolution;
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        return null;
+    }
+
+    @Override
+    public Void visitList(ListLiteral list) {
+        list.elements().forEach(element -> element.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        if (conditional == 0 && !assigned.get(variable.symbol()) && !read.get(variable.symbol())) {
+            read.set(variable.symbol());
+            reads.add(variable);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign assign) {
+        assign.value().accept(this);
+        assigned.set(assign.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(BinaryOperation operation) {
+        operation.left().accept(this);
+        operation.right().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        call.arguments().forEach(argument -> argument.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        block.statements().forEach(statement -> statement.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitIf(IfStatement statement) {
+        statement.condition().accept(this);
+        visitBody(statement.body());
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(WhileLoop loop) {
+        // the condition is evaluated at least once, later evaluations follow the body
+        loop.condition().accept(this);
+        visitBody(loop.body());
+        return null;
+    }
+
+    @Override
+    public Void visitFor(ForLoop loop) {
+        loop.iterable().accept(this);
+        visitBody(loop.body());
+        assigned.set(loop.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visitFunction(FunctionDefinition function) {
+        // the body runs when the function is called, in its own frame
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Return statement) {
+        statement.value().accept(this);
+        return null;
+    }
+
+    private record Resolution(Variable[] reads, BitSet assigned) { }
+
+    private void visitBody(Block body) {
+        conditional++;
+        body.accept(this);
+        conditional--;
+    }
+}
@@ -0,0 +1,12 @@
+package org.rhm.ast;
+
+/**
+ * Leaves the enclosing function with {@code value}. Returning a call to a script function is a tail call, which
+ * reuses the frame of the returning function.
+ */
+public record Return(Node value, int offset) implements Node {
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitReturn(this);
+    }
+}
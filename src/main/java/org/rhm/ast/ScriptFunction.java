@@ -0,0 +1,107 @@
+package org.rhm.ast;
+
+import org.rhm.FunctionManager;
+import org.rhm.SafeObject;
+
+import java.util.Arrays;
+
+/**
+ * A function defined by the script. Each call runs in a frame on the {@link Evaluator}'s frame stack, the slot of
+ * every local variable in that frame is fixed when the function is defined: parameters come first, followed by
+ * the variables the body assigns.
+ */
+public final class ScriptFunction implements FunctionManager.FunctionHandler {
+    public static final int GLOBAL = -1;
+
+    private final FunctionDefinition definition;
+    private final Evaluator evaluator;
+    // frame slot of each local variable indexed by symbol id, GLOBAL for top-level variables
+    private int[] slots = new int[0];
+    private int frameSize = 0;
+
+    ScriptFunction(FunctionDefinition definition, Evaluator evaluator) {
+        this.definition = definition;
+        this.evaluator = evaluator;
+        for (Variable parameter : definition.parameters()) {
+            local(parameter.symbol());
+        }
+        collectLocals(definition.body());
+    }
+
+    public FunctionDefinition getDefinition() {
+        return definition;
+    }
+
+    public String getName() {
+        return definition.name();
+    }
+
+    public int getArity() {
+        return definition.parameters().size();
+    }
+
+    /**
+     * @return number of slots a call needs on the frame stack
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return frame slot of the variable {@code symbol}, or {@link #GLOBAL} if it is a top-level variable
+     */
+    public int slot(int symbol) {
+        return symbol < slots.length ? slots[symbol] : GLOBAL;
+    }
+
+    /**
+     * Called from compiled code and the bytecode VM, the tree-walking evaluator calls without wrapping arguments.
+     */
+    @Override
+    public Object execute(SafeObject[] args) {
+        Object[] arguments = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            arguments[i] = args[i].getAs(Object.class);
+        }
+        return evaluator.call(this, arguments);
+    }
+
+    private void local(int symbol) {
+        if (symbol >= slots.length) {
+            int size = slots.length;
+            slots = Arrays.copyOf(slots, Math.max(symbol + 1, size * 2));
+            Arrays.fill(slots, size, slots.length, GLOBAL);
+        }
+        if (slots[symbol] == GLOBAL) {
+            slots[symbol] = frameSize++;
+        }
+    }
+
+    private void collectLocals(Node node) {
+        if (node instanceof Assign assign) {
+            local(assign.symbol());
+            collectLocals(assign.value());
+        } else if (node instanceof BinaryOperation operation) {
+            collectLocals(operation.left());
+            collectLocals(operation.right());
+        } else if (node instanceof Call call) {
+            call.arguments().forEach(this::collectLocals);
+        } else if (node instanceof ListLiteral list) {
+            list.elements().forEach(this::collectLocals);
+        } else if (node instanceof Block block) {
+            block.statements().forEach(this::collectLocals);
+        } else if (node instanceof IfStatement statement) {
+            collectLocals(statement.condition());
+            collectLocals(statement.body());
+        } else if (node instanceof WhileLoop loop) {
+            collectLocals(loop.condition());
+            collectLocals(loop.body());
+        } else if (node instanceof ForLoop loop) {
+            local(loop.symbol());
+            collectLocals(loop.iterable());
+            collectLocals(loop.body());
+        } else if (node instanceof Return statement) {
+            collectLocals(statement.value());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.rhm.ast;
+
+import org.rhm.OperationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Type feedback of one {@link BinaryOperation}. The first execution specializes the operation to the operand types
+ * it sees, later executions with the same types skip the operator handler's type dispatch. Other operand types
+ * rewrite it to the generic form, which always calls the handler.
+ * <p>
+ * Only builtin arithmetic and comparison operators specialize, the fast paths reimplement their semantics.
+ */
+public final class Specialization {
+    private static final Logger logger = LoggerFactory.getLogger(Specialization.class);
+
+    private static final int NONE = 0;
+    private static final int ADD = 1;
+    private static final int SUBTRACT = 2;
+    private static final int MULTIPLY = 3;
+    private static final int DIVIDE = 4;
+    private static final int REMAINDER = 5;
+    private static final int LESS = 6;
+    private static final int LESS_EQUAL = 7;
+    private static final int GREATER = 8;
+    private static final int GREATER_EQUAL = 9;
+
+    // promoted operand types, in promotion order
+    public static final int INTEGER = 0;
+    public static final int LONG = 1;
+    public static final int FLOAT = 2;
+    public static final int DOUBLE = 3;
+    /** Type of comparison results, operations never specialize to boolean operands. */
+    public static final int BOOLEAN = 4;
+    private static final Class<?>[] TYPES = {Integer.class, Long.class, Float.class, Double.class};
+
+    private static final Shape GENERIC = new Shape(null, null, -1);
+
+    private final OperationManager.Operator operator;
+    private final int kind;
+    // null until the first execution, replaced as a whole so racing threads see a consistent shape
+    private Shape shape;
+
+    public Specialization(OperationManager.Operator operator) {
+        this.operator = operator;
+        this.kind = kind(operator.symbol());
+    }
+
+    private static int kind(String symbol) {
+        switch (symbol) {
+            case "+":
+            case "+=":
+                return ADD;
+            case "-":
+            case "-=":
+                return SUBTRACT;
+            case "*":
+                return MULTIPLY;
+            case "/":
+                return DIVIDE;
+            case "%":
+            case "%=":
+                return REMAINDER;
+            case "<":
+                return LESS;
+            case "<=":
+                return LESS_EQUAL;
+            case ">":
+                return GREATER;
+            case ">=":
+                return GREATER_EQUAL;
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * @param operations the manager {@link #operator} was registered with, runs the generic form
+     */
+    public Object execute(OperationManager operations, Object left, Object right) {
+        Shape current = shape;
+        if (current != null && left != null && right != null && left.getClass() == current.left && right.getClass() == current.right) {
+            return apply(current.type, left, right);
+        }
+        if (current == GENERIC) {
+            return operations.apply(operator, left, right);
+        }
+        return specialize(operations, current, left, right);
+    }
+
+    private Object specialize(OperationManager operations, Shape current, Object left, Object right) {
+        int leftType = type(left);
+        int rightType = type(right);
+
+        if (current != null || kind == NONE || leftType < 0 || rightType < 0 || !operations.isBuiltin(operator)) {
+            if (current != null) {
+                logger.debug("Deoptimizing '{}' from {} after operands {} and {}", operator.symbol(), current, left, right);
+            }
+            shape = GENERIC;
+            return operations.apply(operator, left, right);
+        }
+
+        Shape specialized = new Shape(left.getClass(), right.getClass(), Math.max(leftType, rightType));
+        logger.debug("Specialized '{}' to {}", operator.symbol(), specialized);
+        shape = specialized;
+        return apply(specialized.type, left, right);
+    }
+
+    private Object apply(int type, Object left, Object right) {
+        if (type <= LONG) {
+            long leftValue = ((Number) left).longValue();
+            long rightValue = ((Number) right).longValue();
+            if (isComparison()) {
+                return compare(leftValue, rightValue);
+            }
+            long result = integral(type, leftValue, rightValue);
+            return type == INTEGER ? (Object) (int) result : (Object) result;
+        }
+        double leftValue = ((Number) left).doubleValue();
+        double rightValue = ((Number) right).doubleValue();
+        if (isComparison()) {
+            return compare(leftValue, rightValue);
+        }
+        double result = decimal(type, leftValue, rightValue);
+        return type == FLOAT ? (Object) (float) result : (Object) result;
+    }
+
+    /**
+     * @return the type the operation is specialized to if it is specialized to operands of {@code leftType} and
+     * {@code rightType}, -1 otherwise
+     */
+    public int type(int leftType, int rightType) {
+        Shape current = shape;
+        if (current == null || current == GENERIC || leftType < 0 || leftType > DOUBLE || rightType < 0 || rightType > DOUBLE
+                || current.left != TYPES[leftType] || current.right != TYPES[rightType]) {
+            return -1;
+        }
+        return current.type;
+    }
+
+    public boolean isComparison() {
+        return kind >= LESS;
+    }
+
+    /**
+     * Arithmetic on {@link #INTEGER} or {@link #LONG} operands, int results wrap like int arithmetic does.
+     */
+    public long integral(int type, long left, long right) {
+        long result;
+        switch (kind) {
+            case ADD:
+                result = left + right;
+                break;
+            case SUBTRACT:
+                result = left - right;
+                break;
+            case MULTIPLY:
+                result = left * right;
+                break;
+            case DIVIDE:
+                result = left / right;
+                break;
+            default:
+                result = left % right;
+                break;
+        }
+        return type == INTEGER ? (int) result : result;
+    }
+
+    /**
+     * Arithmetic on {@link #FLOAT} or {@link #DOUBLE} operands. Float arithmetic is computed in double and rounded,
+     * like {@link OperationManager} does.
+     */
+    public double decimal(int type, double left, double right) {
+        double result;
+        switch (kind) {
+            case ADD:
+                result = left + right;
+                break;
+            case SUBTRACT:
+                result = left - right;
+                break;
+            case MULTIPLY:
+                result = left * right;
+                break;
+            case DIVIDE:
+                result = left / right;
+                break;
+            default:
+                result = left % right;
+                break;
+        }
+        return type == FLOAT ? (float) result : result;
+    }
+
+    public boolean compare(long left, long right) {
+        switch (kind) {
+            case LESS:
+                return left < right;
+            case LESS_EQUAL:
+                return left <= right;
+            case GREATER:
+                return left > right;
+            default:
+                return left >= right;
+        }
+    }
+
+    public boolean compare(double left, double right) {
+        switch (kind) {
+            case LESS:
+                return left < right;
+            case LESS_EQUAL:
+                return left <= right;
+            case GREATER:
+                return left > right;
+            default:
+                return left >= right;
+        }
+    }
+
+    private static int type(Object operand) {
+        if (operand instanceof Integer) {
+            return INTEGER;
+        } else if (operand instanceof Long) {
+            return LONG;
+        } else if (operand instanceof Float) {
+            return FLOAT;
+        } else if (operand instanceof Double) {
+            return DOUBLE;
+        }
+        return -1;
+    }
+
+    public boolean isSpecialized() {
+        Shape current = shape;
+        return current != null && current != GENERIC;
+    }
+
+    public boolean isGeneric() {
+        return shape == GENERIC;
+    }
+
+    @Override
+    public String toString() {
+        Shape current = shape;
+        return current == null ? "uninitialized" : current.toString();
+    }
+
+    /**
+     * Feedback is not part of a node's structure, equal trees stay equal however they were executed.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Specialization;
+    }
+
+    @Override
+    public int hashCode() {
+        return 0;
+    }
+
+    private record Shape(Class<?> left, Class<?> right, int type) {
+        @Override
+        public String toString() {
+            return left == null ? "generic" : left.getSimpleName() + ", " + right.getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.rhm.ast;
+
+/**
+ * Variable read. {@code symbol} is the id of {@code name} in the parser's symbol table.
+ */
+public record Variable(String name, int symbol, int offset) implements Node {
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitVariable(this);
+    }
+}
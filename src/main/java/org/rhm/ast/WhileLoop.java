@@ -0,0 +1,8 @@
+package org.rhm.ast;
+
+public record WhileLoop(Node condition, Block body, int offset) implements Node {
+    @Override
+    public <R> R accept(NodeVisitor<R> visitor) {
+        return visitor.visitWhile(this);
+    }
+}
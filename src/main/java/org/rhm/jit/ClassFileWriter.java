@@ -0,0 +1,369 @@
+package org.rhm.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer, covering just what {@link JvmCompiler} emits. Classes are written as version 49, so
+ * the JVM verifies them by type inference and no stack map frames are needed.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+    private final DataOutputStream body = new DataOutputStream(bodyBytes);
+    private int fieldCount = 0;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+
+    ClassFileWriter(String name, String superName, String... interfaces) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return entry("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        return entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ' ' + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + '.' + name + ' ' + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int entry(String key, PoolEntry writer) {
+        Integer index = poolIndices.get(key);
+        if (index == null) {
+            try {
+                writer.write(pool);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = poolCount++;
+            poolIndices.put(key, index);
+        }
+        return index;
+    }
+
+    void field(int access, String name, String descriptor) {
+        try {
+            body.writeShort(access);
+            body.writeShort(utf8(name));
+            body.writeShort(utf8(descriptor));
+            body.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fieldCount++;
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        byte[] instructions = code.toByteArray();
+        if (instructions.length > 0xFFFF) {
+            throw new IllegalStateException("Method " + name + " is too large: " + instructions.length + " bytes");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + instructions.length + code.handlers.size() * 8);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(instructions.length);
+            out.write(instructions);
+            out.writeShort(code.handlers.size());
+            for (int[] handler : code.handlers) {
+                for (int value : handler) {
+                    out.writeShort(value);
+                }
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndices = Arrays.stream(interfaces).mapToInt(this::classRef).toArray();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndices.length);
+            for (int index : interfaceIndices) {
+                out.writeShort(index);
+            }
+            out.writeShort(fieldCount);
+            bodyBytes.writeTo(out);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Jump target, branches to it are patched once it is placed.
+     */
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    /**
+     * Instructions of one method. Callers pass the stack effect of each instruction, the maximum is tracked here.
+     */
+    static final class Code {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private final List<int[]> handlers = new ArrayList<>();
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+
+        Code(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        int newLocal() {
+            return maxLocals++;
+        }
+
+        int position() {
+            return length;
+        }
+
+        int stack() {
+            return stack;
+        }
+
+        /**
+         * Resets the tracked stack depth, for code only reached by a branch.
+         */
+        void stack(int depth) {
+            stack = depth;
+        }
+
+        void op(int opcode, int stackEffect) {
+            u1(opcode);
+            adjust(stackEffect);
+        }
+
+        void op1(int opcode, int operand, int stackEffect) {
+            u1(opcode);
+            u1(operand);
+            adjust(stackEffect);
+        }
+
+        void op2(int opcode, int operand, int stackEffect) {
+            u1(opcode);
+            u2(operand);
+            adjust(stackEffect);
+        }
+
+        void local(int opcode, int local, int stackEffect) {
+            if (local > 0xFF) {
+                u1(Bytecodes.WIDE);
+                op2(opcode, local, stackEffect);
+            } else {
+                op1(opcode, local, stackEffect);
+            }
+        }
+
+        void pushInt(ClassFileWriter owner, int value) {
+            if (value >= -1 && value <= 5) {
+                op(Bytecodes.ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op1(Bytecodes.BIPUSH, value & 0xFF, 1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op2(Bytecodes.SIPUSH, value & 0xFFFF, 1);
+            } else {
+                int index = owner.integer(value);
+                if (index <= 0xFF) {
+                    op1(Bytecodes.LDC, index, 1);
+                } else {
+                    op2(Bytecodes.LDC_W, index, 1);
+                }
+            }
+        }
+
+        void invokeInterface(int index, int argumentSlots, int stackEffect) {
+            u1(Bytecodes.INVOKEINTERFACE);
+            u2(index);
+            u1(argumentSlots + 1);
+            u1(0);
+            adjust(stackEffect);
+        }
+
+        void jump(int opcode, Label target, int stackEffect) {
+            int position = length;
+            u1(opcode);
+            if (target.position >= 0) {
+                u2(target.position - position);
+            } else {
+                target.branches.add(position);
+                u2(0);
+            }
+            adjust(stackEffect);
+        }
+
+        void place(Label label) {
+            label.position = length;
+            for (int branch : label.branches) {
+                int offset = length - branch;
+                bytes[branch + 1] = (byte) (offset >> 8);
+                bytes[branch + 2] = (byte) offset;
+            }
+            label.branches.clear();
+        }
+
+        void handler(int start, int end, int handler, int catchType) {
+            handlers.add(new int[]{start, end, handler, catchType});
+        }
+
+        private void adjust(int stackEffect) {
+            stack += stackEffect;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * JVM opcodes used by the compiler.
+     */
+    static final class Bytecodes {
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC = 0x12;
+        static final int LDC_W = 0x13;
+        static final int ILOAD = 0x15;
+        static final int ALOAD = 0x19;
+        static final int AALOAD = 0x32;
+        static final int ISTORE = 0x36;
+        static final int ASTORE = 0x3A;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int DUP_X2 = 0x5B;
+        static final int IFEQ = 0x99;
+        static final int GOTO = 0xA7;
+        static final int ARETURN = 0xB0;
+        static final int RETURN = 0xB1;
+        static final int GETFIELD = 0xB4;
+        static final int PUTFIELD = 0xB5;
+        static final int INVOKEVIRTUAL = 0xB6;
+        static final int INVOKESPECIAL = 0xB7;
+        static final int INVOKESTATIC = 0xB8;
+        static final int INVOKEINTERFACE = 0xB9;
+        static final int NEW = 0xBB;
+        static final int ANEWARRAY = 0xBD;
+        static final int ATHROW = 0xBF;
+        static final int WIDE = 0xC4;
+        static final int IFNONNULL = 0xC7;
+
+        private Bytecodes() {
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.rhm.jit;
+
+/**
+ * Implemented by the hidden classes {@link JvmCompiler} generates. Instances hold no state of a run, so one class
+ * serves every interpreter running the same script.
+ */
+interface GeneratedCode {
+    /**
+     * @param slots   variable values indexed by symbol id
+     * @param runtime slow paths bound to the interpreter running the code
+     */
+    Object run(Object[] slots, JitRuntime runtime);
+}
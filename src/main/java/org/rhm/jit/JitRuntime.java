@@ -0,0 +1,114 @@
+package org.rhm.jit;
+
+import org.rhm.FunctionManager;
+import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+import org.rhm.SafeObject;
+import org.rhm.SourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Slow paths called from generated code: function calls, list construction and everything that reports an error.
+ * Operators are called directly from the generated code so the JIT can inline them per call site.
+ * <p>
+ * There is one runtime per interpreter, passed to every run of generated code.
+ */
+final class JitRuntime {
+    private static final Logger logger = LoggerFactory.getLogger(JitRuntime.class);
+
+    private final Interpreter interpreter;
+
+    /**
+     * Source offset and operator of every operator call site of one generated class, indexed by site.
+     */
+    record Sites(int[] positions, OperationManager.Operator[] operators) { }
+
+    JitRuntime(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    RuntimeException undefined(int symbol, int offset) {
+        String name = interpreter.getSymbols().name(symbol);
+        logger.error("Attempted to access an undefined variable: {}", name);
+        return error(offset, "Variable not defined: " + name);
+    }
+
+    Object call(int symbol, int offset, SafeObject[] arguments) {
+        FunctionManager.FunctionHandler function = interpreter.getFunction(symbol);
+        if (function == null) {
+            String name = interpreter.getSymbols().name(symbol);
+            logger.error("Call to unknown function {}", name);
+            throw error(offset, "Unknown function: " + name);
+        }
+
+        try {
+            return function.execute(arguments);
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(offset, e.getMessage());
+        }
+    }
+
+    Object list(Object[] values, int offset) {
+        List<SafeObject> elements = new ArrayList<>(values.length);
+        Class<?> elementType = null;
+
+        for (int i = 0; i < values.length; i++) {
+            Class<?> type = values[i] == null ? null : values[i].getClass();
+            if (i == 0) {
+                elementType = type;
+            } else if (elementType != type) {
+                logger.error("List element of type {} does not match {}", type, elementType);
+                throw error(offset, "List elements must all be of the same type.");
+            }
+            elements.add(new SafeObject(values[i]));
+        }
+        return elements;
+    }
+
+    boolean condition(Object condition, int offset) {
+        if (condition instanceof Boolean b) {
+            return b;
+        }
+        logger.error("Condition must evaluate to a boolean value, but got {}", OperationManager.typeName(condition));
+        throw error(offset, "Condition must evaluate to a boolean value.");
+    }
+
+    Iterator<?> iterate(Object iterable, int offset) {
+        if (iterable instanceof List<?> elements) {
+            return elements.iterator();
+        }
+        logger.error("Expected a list for 'for' loop, but found {}", OperationManager.typeName(iterable));
+        throw error(offset, "Expected a list for 'for' loop.");
+    }
+
+    static Object element(Object element) {
+        return element instanceof SafeObject safe ? safe.getAs(Object.class) : element;
+    }
+
+    /**
+     * Translates an exception thrown by the operator at {@code site} into a located error.
+     */
+    RuntimeException rethrow(RuntimeException exception, int site, Object left, Object right, Sites sites) {
+        if (exception instanceof SourceException || site < 0) {
+            return exception;
+        }
+        if (exception instanceof IllegalArgumentException) {
+            return error(sites.positions()[site], exception.getMessage());
+        }
+        if (exception instanceof ClassCastException || exception instanceof NullPointerException) {
+            return error(sites.positions()[site], OperationManager.unsupportedOperands(sites.operators()[site], left, right));
+        }
+        return exception;
+    }
+
+    private SourceException error(int offset, String message) {
+        return new SourceException(message, offset, interpreter.getParser().getSourceMap());
+    }
+}
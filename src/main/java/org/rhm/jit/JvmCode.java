@@ -0,0 +1,36 @@
+package org.rhm.jit;
+
+import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+
+/**
+ * A syntax tree compiled to a JVM class by {@link JvmCompiler}. The code may run on any interpreter of the script
+ * it was compiled from, also concurrently.
+ */
+public final class JvmCode {
+    private final GeneratedCode code;
+    private final OperationManager operations;
+    private final int slotCount;
+    private final int operatorVersion;
+
+    JvmCode(GeneratedCode code, OperationManager operations, int slotCount, int operatorVersion) {
+        this.code = code;
+        this.operations = operations;
+        this.slotCount = slotCount;
+        this.operatorVersion = operatorVersion;
+    }
+
+    /**
+     * @return the value of the compiled expression, null for statements
+     */
+    public Object run(Interpreter interpreter) {
+        return code.run(interpreter.getVariableSlots(slotCount), interpreter.getTierUp().getRuntime());
+    }
+
+    /**
+     * Operators are bound when compiling, so the code is stale once an operator is registered or replaced.
+     */
+    public boolean isCurrent() {
+        return operatorVersion == operations.getVersion();
+    }
+}
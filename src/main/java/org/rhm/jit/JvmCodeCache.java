@@ -0,0 +1,82 @@
+package org.rhm.jit;
+
+import org.rhm.OperationManager;
+import org.rhm.ast.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled code by syntax tree node, so every node is compiled once however often it runs. A {@link org.rhm.CompiledScript}
+ * shares one cache between all its runs, code compiled before an operator was registered is compiled again.
+ */
+public final class JvmCodeCache {
+    private static final Logger logger = LoggerFactory.getLogger(JvmCodeCache.class);
+
+    private final OperationManager operations;
+    private final Map<Node, JvmCode> compiled = new IdentityHashMap<>();
+    // nodes the compiler rejected, they are interpreted
+    private final Set<Node> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int compilations = 0;
+
+    /**
+     * @param operations the operators of the script whose nodes are compiled
+     */
+    public JvmCodeCache(OperationManager operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * @return the current compiled code of {@code node}, or null if it has not been compiled yet
+     */
+    public synchronized JvmCode get(Node node) {
+        JvmCode code = compiled.get(node);
+        return code != null && code.isCurrent() ? code : null;
+    }
+
+    /**
+     * Compiles {@code node} unless current code for it is cached already.
+     *
+     * @return the compiled node, or null if it cannot be compiled and must be interpreted
+     */
+    public JvmCode compile(Node node) {
+        synchronized (this) {
+            JvmCode code = get(node);
+            if (code != null || failed.contains(node)) {
+                return code;
+            }
+        }
+
+        // compiled outside the lock, a node compiled twice concurrently only costs time
+        JvmCode code;
+        try {
+            code = JvmCompiler.compile(node, operations);
+        } catch (IllegalStateException e) {
+            logger.warn("Could not compile to JVM bytecode, interpreting instead: {}", e.getMessage());
+            synchronized (this) {
+                failed.add(node);
+            }
+            return null;
+        }
+        synchronized (this) {
+            compiled.put(node, code);
+            compilations++;
+        }
+        return code;
+    }
+
+    public synchronized int size() {
+        return compiled.size();
+    }
+
+    /**
+     * @return how often a node was compiled, including recompilations after an operator was registered
+     */
+    public synchronized int getCompilations() {
+        return compilations;
+    }
+}
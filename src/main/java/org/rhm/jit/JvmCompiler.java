@@ -0,0 +1,403 @@
+package org.rhm.jit;
+
+import org.rhm.OperationManager;
+import org.rhm.ast.Assign;
+import org.rhm.ast.BinaryOperation;
+import org.rhm.ast.Block;
+import org.rhm.ast.Call;
+import org.rhm.ast.ForLoop;
+import org.rhm.ast.FunctionDefinition;
+import org.rhm.ast.IfStatement;
+import org.rhm.ast.ListLiteral;
+import org.rhm.ast.Literal;
+import org.rhm.ast.Node;
+import org.rhm.ast.NodeVisitor;
+import org.rhm.ast.Return;
+import org.rhm.ast.Variable;
+import org.rhm.ast.WhileLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.rhm.jit.ClassFileWriter.Bytecodes.*;
+
+/**
+ * Compiles a syntax tree into a hidden class, so HotSpot can optimize scripts like any other Java code. Every
+ * operator becomes its own call site in the generated method, which lets the JIT inline the handler it sees there.
+ * <p>
+ * Visiting a node emits code leaving exactly one value on the stack, like {@link org.rhm.vm.BytecodeCompiler}.
+ */
+public class JvmCompiler implements NodeVisitor<Void> {
+    private static final Logger logger = LoggerFactory.getLogger(JvmCompiler.class);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String CLASS_NAME = "org/rhm/jit/Script";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String RUNTIME = "org/rhm/jit/JitRuntime";
+    private static final String SITES = "org/rhm/jit/JitRuntime$Sites";
+    private static final String HANDLER = "org/rhm/OperationManager$OperatorHandler";
+    private static final String SAFE_OBJECT = "org/rhm/SafeObject";
+    private static final String ITERATOR = "java/util/Iterator";
+
+    // locals of the generated run method
+    private static final int THIS = 0;
+    private static final int SLOTS = 1;
+    private static final int RUNTIME_LOCAL = 2;
+    private static final int LEFT = 3;
+    private static final int RIGHT = 4;
+    private static final int SITE = 5;
+    private static final int EXCEPTION = 6;
+
+    private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, OBJECT, "org/rhm/jit/GeneratedCode");
+    private final ClassFileWriter.Code code = new ClassFileWriter.Code(EXCEPTION + 1);
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+    private final List<OperationManager.OperatorHandler> handlers = new ArrayList<>();
+    private final Map<Integer, Integer> handlerIndices = new HashMap<>();
+    private final List<Integer> sitePositions = new ArrayList<>();
+    private final List<OperationManager.Operator> siteOperators = new ArrayList<>();
+    private int slotCount = 0;
+
+    private JvmCompiler() {
+    }
+
+    /**
+     * Compiles an expression, running the code returns its value. Variables are bound by symbol id, so the code runs
+     * on every interpreter sharing the symbol table the tree was parsed with.
+     *
+     * @param operations the operators of the script, bound into the code
+     * @throws IllegalStateException if the tree is too large for a single JVM method
+     */
+    public static JvmCode compile(Node expression, OperationManager operations) {
+        int operatorVersion = operations.getVersion();
+        JvmCompiler compiler = new JvmCompiler();
+        long start = System.nanoTime();
+        JvmCode compiled = compiler.compile(expression, operations, operatorVersion);
+        logger.debug("Compiled {} to JVM bytecode in {} us", expression.getClass().getSimpleName(), (System.nanoTime() - start) / 1000);
+        return compiled;
+    }
+
+    private JvmCode compile(Node expression, OperationManager operations, int operatorVersion) {
+        writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "constants", "[Ljava/lang/Object;");
+        writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "operators", "[L" + HANDLER + ";");
+        writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "sites", "L" + SITES + ";");
+        writeConstructor();
+        writeRun(expression);
+
+        Object[] constantValues = constants.toArray();
+        OperationManager.OperatorHandler[] operatorHandlers = handlers.toArray(new OperationManager.OperatorHandler[0]);
+        JitRuntime.Sites sites = new JitRuntime.Sites(sitePositions.stream().mapToInt(Integer::intValue).toArray(),
+                siteOperators.toArray(new OperationManager.Operator[0]));
+
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(writer.toByteArray(), true);
+            MethodHandle constructor = hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class, Object[].class, OperationManager.OperatorHandler[].class, JitRuntime.Sites.class));
+            GeneratedCode generated = (GeneratedCode) constructor.invoke(constantValues, operatorHandlers, sites);
+            return new JvmCode(generated, operations, slotCount, operatorVersion);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not load compiled script", e);
+        }
+    }
+
+    private void writeConstructor() {
+        ClassFileWriter.Code constructor = new ClassFileWriter.Code(4);
+        constructor.local(ALOAD, THIS, 1);
+        constructor.op2(INVOKESPECIAL, writer.methodRef(OBJECT, "<init>", "()V"), -1);
+        String[][] fields = {
+                {"constants", "[Ljava/lang/Object;"},
+                {"operators", "[L" + HANDLER + ";"},
+                {"sites", "L" + SITES + ";"}
+        };
+        for (int i = 0; i < fields.length; i++) {
+            constructor.local(ALOAD, THIS, 1);
+            constructor.local(ALOAD, i + 1, 1);
+            constructor.op2(PUTFIELD, writer.fieldRef(CLASS_NAME, fields[i][0], fields[i][1]), -2);
+        }
+        constructor.op(RETURN, 0);
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>",
+                "([Ljava/lang/Object;[L" + HANDLER + ";L" + SITES + ";)V", constructor);
+    }
+
+    private void writeRun(Node expression) {
+        // the exception handler reads these, so they must be assigned on every path
+        code.op(ACONST_NULL, 1);
+        code.local(ASTORE, LEFT, -1);
+        code.op(ACONST_NULL, 1);
+        code.local(ASTORE, RIGHT, -1);
+        code.pushInt(writer, -1);
+        code.local(ISTORE, SITE, -1);
+
+        int start = code.position();
+        expression.accept(this);
+        code.op(ARETURN, -1);
+        int end = code.position();
+
+        code.stack(1);
+        code.local(ASTORE, EXCEPTION, -1);
+        loadRuntime();
+        code.local(ALOAD, EXCEPTION, 1);
+        code.local(ILOAD, SITE, 1);
+        code.local(ALOAD, LEFT, 1);
+        code.local(ALOAD, RIGHT, 1);
+        loadField("sites", "L" + SITES + ";");
+        code.op2(INVOKEVIRTUAL, writer.methodRef(RUNTIME, "rethrow",
+                "(Ljava/lang/RuntimeException;ILjava/lang/Object;Ljava/lang/Object;L" + SITES + ";)Ljava/lang/RuntimeException;"), -5);
+        code.op(ATHROW, -1);
+        code.handler(start, end, end, writer.classRef("java/lang/RuntimeException"));
+
+        writer.method(ClassFileWriter.ACC_PUBLIC, "run", "([Ljava/lang/Object;L" + RUNTIME + ";)Ljava/lang/Object;", code);
+    }
+
+    private void statement(Node node) {
+        if (node instanceof Assign assign) {
+            store(assign, false);
+        } else if (node instanceof Block block) {
+            block(block);
+        } else if (node instanceof IfStatement statement) {
+            ifStatement(statement);
+        } else if (node instanceof WhileLoop loop) {
+            whileLoop(loop);
+        } else if (node instanceof ForLoop loop) {
+            forLoop(loop);
+        } else {
+            node.accept(this);
+            code.op(POP, -1);
+        }
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        if (literal.value() == null) {
+            code.op(ACONST_NULL, 1);
+            return null;
+        }
+
+        int index = constantIndices.computeIfAbsent(literal.value(), value -> {
+            constants.add(value);
+            return constants.size() - 1;
+        });
+        loadField("constants", "[Ljava/lang/Object;");
+        code.pushInt(writer, index);
+        code.op(AALOAD, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitList(ListLiteral list) {
+        loadRuntime();
+        code.pushInt(writer, list.elements().size());
+        code.op2(ANEWARRAY, writer.classRef(OBJECT), 0);
+        for (int i = 0; i < list.elements().size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(writer, i);
+            list.elements().get(i).accept(this);
+            code.op(AASTORE, -3);
+        }
+        code.pushInt(writer, list.offset());
+        code.op2(INVOKEVIRTUAL, writer.methodRef(RUNTIME, "list", "([Ljava/lang/Object;I)Ljava/lang/Object;"), -2);
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        slotCount = Math.max(slotCount, variable.symbol() + 1);
+        code.local(ALOAD, SLOTS, 1);
+        code.pushInt(writer, variable.symbol());
+        code.op(AALOAD, -1);
+
+        int depth = code.stack();
+        ClassFileWriter.Label defined = new ClassFileWriter.Label();
+        code.op(DUP, 1);
+        code.jump(IFNONNULL, defined, -1);
+        code.op(POP, -1);
+        loadRuntime();
+        code.pushInt(writer, variable.symbol());
+        code.pushInt(writer, variable.offset());
+        code.op2(INVOKEVIRTUAL, writer.methodRef(RUNTIME, "undefined", "(II)Ljava/lang/RuntimeException;"), -2);
+        code.op(ATHROW, -1);
+        code.stack(depth);
+        code.place(defined);
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign assign) {
+        store(assign, true);
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(BinaryOperation operation) {
+        operation.left().accept(this);
+        operation.right().accept(this);
+        code.local(ASTORE, RIGHT, -1);
+        code.local(ASTORE, LEFT, -1);
+
+        code.pushInt(writer, sitePositions.size());
+        code.local(ISTORE, SITE, -1);
+        sitePositions.add(operation.offset());
+        siteOperators.add(operation.operator());
+
+        int handler = handlerIndices.computeIfAbsent(operation.operator().code(), key -> {
+            handlers.add(operation.operator().handler());
+            return handlers.size() - 1;
+        });
+        loadField("operators", "[L" + HANDLER + ";");
+        code.pushInt(writer, handler);
+        code.op(AALOAD, -1);
+        code.local(ALOAD, LEFT, 1);
+        code.local(ALOAD, RIGHT, 1);
+        code.invokeInterface(writer.interfaceMethodRef(HANDLER, "parse",
+                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;"), 2, -2);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        loadRuntime();
+        code.pushInt(writer, call.symbol());
+        code.pushInt(writer, call.offset());
+        code.pushInt(writer, call.arguments().size());
+        code.op2(ANEWARRAY, writer.classRef(SAFE_OBJECT), 0);
+        for (int i = 0; i < call.arguments().size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(writer, i);
+            code.op2(NEW, writer.classRef(SAFE_OBJECT), 1);
+            code.op(DUP, 1);
+            call.arguments().get(i).accept(this);
+            code.op2(INVOKESPECIAL, writer.methodRef(SAFE_OBJECT, "<init>", "(Ljava/lang/Object;)V"), -2);
+            code.op(AASTORE, -3);
+        }
+        code.op2(INVOKEVIRTUAL, writer.methodRef(RUNTIME, "call", "(II[L" + SAFE_OBJECT + ";)Ljava/lang/Object;"), -3);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        block(block);
+        code.op(ACONST_NULL, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitIf(IfStatement statement) {
+        ifStatement(statement);
+        code.op(ACONST_NULL, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(WhileLoop loop) {
+        whileLoop(loop);
+        code.op(ACONST_NULL, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitFor(ForLoop loop) {
+        forLoop(loop);
+        code.op(ACONST_NULL, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitFunction(FunctionDefinition function) {
+        // functions are defined by the tree-walking evaluator and run there
+        throw new IllegalStateException("Function definitions are not compiled.");
+    }
+
+    @Override
+    public Void visitReturn(Return statement) {
+        throw new IllegalStateException("Function bodies are not compiled.");
+    }
+
+    private void block(Block block) {
+        for (Node statement : block.statements()) {
+            statement(statement);
+        }
+    }
+
+    private void ifStatement(IfStatement statement) {
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+        condition(statement.condition(), end);
+        block(statement.body());
+        code.place(end);
+    }
+
+    private void whileLoop(WhileLoop loop) {
+        ClassFileWriter.Label start = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+        code.place(start);
+        condition(loop.condition(), end);
+        block(loop.body());
+        code.jump(GOTO, start, 0);
+        code.place(end);
+    }
+
+    private void forLoop(ForLoop loop) {
+        slotCount = Math.max(slotCount, loop.symbol() + 1);
+        int iterator = code.newLocal();
+        loadRuntime();
+        loop.iterable().accept(this);
+        code.pushInt(writer, loop.iterable().offset());
+        code.op2(INVOKEVIRTUAL, writer.methodRef(RUNTIME, "iterate", "(Ljava/lang/Object;I)L" + ITERATOR + ";"), -2);
+        code.local(ASTORE, iterator, -1);
+
+        ClassFileWriter.Label next = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+        code.place(next);
+        code.local(ALOAD, iterator, 1);
+        code.invokeInterface(writer.interfaceMethodRef(ITERATOR, "hasNext", "()Z"), 0, 0);
+        code.jump(IFEQ, end, -1);
+        code.local(ALOAD, SLOTS, 1);
+        code.pushInt(writer, loop.symbol());
+        code.local(ALOAD, iterator, 1);
+        code.invokeInterface(writer.interfaceMethodRef(ITERATOR, "next", "()Ljava/lang/Object;"), 0, 0);
+        code.op2(INVOKESTATIC, writer.methodRef(RUNTIME, "element", "(Ljava/lang/Object;)Ljava/lang/Object;"), 0);
+        code.op(AASTORE, -3);
+        block(loop.body());
+        code.jump(GOTO, next, 0);
+        code.place(end);
+    }
+
+    /**
+     * Emits a branch to {@code otherwise} taken when the condition is false.
+     */
+    private void condition(Node condition, ClassFileWriter.Label otherwise) {
+        loadRuntime();
+        condition.accept(this);
+        code.pushInt(writer, condition.offset());
+        code.op2(INVOKEVIRTUAL, writer.methodRef(RUNTIME, "condition", "(Ljava/lang/Object;I)Z"), -2);
+        code.jump(IFEQ, otherwise, -1);
+    }
+
+    private void store(Assign assign, boolean keepValue) {
+        slotCount = Math.max(slotCount, assign.symbol() + 1);
+        code.local(ALOAD, SLOTS, 1);
+        code.pushInt(writer, assign.symbol());
+        assign.value().accept(this);
+        if (keepValue) {
+            code.op(DUP_X2, 1);
+        }
+        code.op(AASTORE, -3);
+    }
+
+    private void loadRuntime() {
+        code.local(ALOAD, RUNTIME_LOCAL, 1);
+    }
+
+    private void loadField(String name, String descriptor) {
+        code.local(ALOAD, THIS, 1);
+        code.op2(GETFIELD, writer.fieldRef(CLASS_NAME, name, descriptor), 0);
+    }
+}
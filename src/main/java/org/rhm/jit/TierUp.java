@@ -0,0 +1,111 @@
+package org.rhm.jit;
+
+import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+import org.rhm.ast.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Counts how often loops run in the interpreter and compiles them with {@link JvmCompiler} once they get hot. Compiled
+ * code is kept in a {@link JvmCodeCache}, which interpreters running the same script may share.
+ */
+public class TierUp {
+    private static final Logger logger = LoggerFactory.getLogger(TierUp.class);
+    public static final int DEFAULT_THRESHOLD = 10_000;
+
+    private final JitRuntime runtime;
+    private final OperationManager operations;
+    private final Map<Node, Profile> profiles = new IdentityHashMap<>();
+    private JvmCodeCache cache;
+    private int threshold = DEFAULT_THRESHOLD;
+
+    public TierUp(Interpreter interpreter) {
+        this.runtime = new JitRuntime(interpreter);
+        this.operations = interpreter.getContext().getOperationManager();
+        this.cache = new JvmCodeCache(operations);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold executions (loop entries and iterations) before a node is compiled, 0 disables tier-up
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public JvmCodeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache compiled code to reuse and add to, shared with other interpreters of the same script
+     */
+    public void setCache(JvmCodeCache cache) {
+        this.cache = cache;
+    }
+
+    JitRuntime getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * Records {@code count} executions of {@code node}.
+     *
+     * @return the compiled node once it is hot, null while it should stay in the interpreter
+     */
+    public JvmCode count(Node node, int count) {
+        if (threshold <= 0) {
+            return null;
+        }
+
+        Profile profile = profiles.computeIfAbsent(node, key -> new Profile());
+        if (profile.code != null && profile.code.isCurrent()) {
+            return profile.code;
+        }
+        // hot in an earlier run of the same script
+        profile.code = cache.get(node);
+        if (profile.code != null) {
+            return profile.code;
+        }
+        profile.count += count;
+        if (profile.failed || profile.count < threshold) {
+            return null;
+        }
+
+        logger.debug("Tiering up {} after {} executions", node.getClass().getSimpleName(), profile.count);
+        profile.code = compile(node);
+        profile.failed = profile.code == null;
+        return profile.code;
+    }
+
+    /**
+     * Compiles {@code node} right away, regardless of how often it ran, or returns the code compiled for it before.
+     *
+     * @return the compiled node, or null if it cannot be compiled and must be interpreted
+     */
+    public JvmCode compile(Node node) {
+        return cache.compile(node);
+    }
+
+    /**
+     * Forgets all profiles and compiled code, once the nodes they describe will not run again. A shared cache is
+     * left to the other interpreters, this one continues with a cache of its own.
+     */
+    public void reset() {
+        profiles.clear();
+        cache = new JvmCodeCache(operations);
+    }
+
+    private static final class Profile {
+        private long count;
+        private JvmCode code;
+        private boolean failed;
+    }
+}
@@ -0,0 +1,66 @@
+package org.rhm.keywords;
+
+import org.rhm.Lexer;
+import org.rhm.Parser;
+import org.rhm.ast.AstParser;
+import org.rhm.ast.Block;
+import org.rhm.ast.FunctionDefinition;
+import org.rhm.ast.Node;
+import org.rhm.ast.Variable;
+import org.rhm.tokens.ParenthesisTokenHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses {@code fn name(a, b) { ... }}. Functions are defined at the top level only, so their bodies can only see
+ * their own locals and top-level variables.
+ */
+public class FnKeywordHandler extends KeywordManager.KeywordHandler {
+    @Override
+    public Node parse(AstParser astParser) {
+        Parser parser = astParser.getParser();
+        int offset = parser.getCurrentOffset();
+        if (astParser.isNested()) {
+            logger.error("Function definition inside a block at {}", offset);
+            throw parser.error("Functions can only be defined at the top level.");
+        }
+        parser.advance();
+
+        if (parser.getCurrentType() != Lexer.TokenType.IDENTIFIER) {
+            logger.error("Expected function name, but found {}", parser.getCurrentToken());
+            throw parser.error("Expected function name.");
+        }
+        String name = parser.getCurrentValue(String.class);
+        int symbol = parser.getCurrentSymbol();
+        parser.advance();
+
+        astParser.expect(ParenthesisTokenHandler.ParenthesisType.ROUND_LEFT, "Expected opening round parenthesis for parameters.");
+        List<Variable> parameters = new ArrayList<>();
+        if (!parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT)) {
+            parameters.add(parameter(parser, parameters));
+            while (parser.getCurrentType() == Lexer.TokenType.COMMA) {
+                parser.advance();
+                parameters.add(parameter(parser, parameters));
+            }
+        }
+        astParser.expect(ParenthesisTokenHandler.ParenthesisType.ROUND_RIGHT, "Expected closing round parenthesis for parameters.");
+
+        Block body = astParser.parseFunctionBody();
+        return new FunctionDefinition(name, symbol, parameters, body, offset);
+    }
+
+    private Variable parameter(Parser parser, List<Variable> parameters) {
+        if (parser.getCurrentType() != Lexer.TokenType.IDENTIFIER) {
+            logger.error("Expected parameter name, but found {}", parser.getCurrentToken());
+            throw parser.error("Expected parameter name.");
+        }
+        Variable parameter = new Variable(parser.getCurrentValue(String.class), parser.getCurrentSymbol(), parser.getCurrentOffset());
+        if (parameters.stream().anyMatch(other -> other.symbol() == parameter.symbol())) {
+            logger.error("Duplicate parameter {}", parameter.name());
+            throw parser.error("Duplicate parameter: " + parameter.name());
+        }
+        parser.advance();
+        return parameter;
+    }
+}
@@ -1,60 +1,58 @@
 package org.rhm.keywords;
 
-import org.rhm.Parser;
-import org.rhm.tokens.ParenthesisTokenHandler;
+import org.rhm.ast.AstParser;
+import org.rhm.ast.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class KeywordManager {
-    public final Map<String, KeywordHandler> keywordHandlers = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(KeywordManager.class);
+    // read by running parsers while keywords are registered
+    public final Map<String, KeywordHandler> keywordHandlers = new ConcurrentHashMap<>();
+    // bumped on every registration so the lexer knows when to regenerate its keyword table
+    private volatile int version = 0;
 
     public KeywordManager() {
         keywordHandlers.put("if", new IfKeywordHandler());
         keywordHandlers.put("while", new WhileKeywordHandler());
         keywordHandlers.put("for", new ForKeywordHandler());
+        keywordHandlers.put("fn", new FnKeywordHandler());
+        keywordHandlers.put("return", new ReturnKeywordHandler());
+    }
+
+    /**
+     * Registers (or replaces) a keyword at runtime. The lexer picks up the new keyword on its next token.
+     */
+    public synchronized void registerKeyword(String keyword, KeywordHandler handler) {
+        if (keyword.isEmpty()) {
+            throw new IllegalArgumentException("Keyword must not be empty.");
+        }
+        keywordHandlers.put(keyword, handler);
+        version++;
+        logger.debug("Registered keyword '{}'", keyword);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return snapshot of the registered keywords, safe to use while keywords are being registered
+     */
+    public synchronized List<String> getKeywords() {
+        return List.copyOf(keywordHandlers.keySet());
     }
 
     public abstract static class KeywordHandler {
         protected Logger logger = LoggerFactory.getLogger(getClass());
 
-        public abstract Object execute(Parser parser);
-        protected void validKeyword(Parser parser, Consumer<Integer> callback) {
-            if (!ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(parser.getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.CURLY_LEFT)) {
-                logger.error("Expected opening curly brace for while block, but found {}", parser.getCurrentToken());
-                throw new IllegalArgumentException("Expected opening curly brace for block.");
-            }
-
-            parser.advance();
-            int openingBraces = 1;
-            int openBraces = 1;
-            int position = parser.getIndex();
-
-            while (parser.hasMoreTokens()) {
-                if (ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(parser.getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.CURLY_LEFT)) {
-                    openBraces++;
-                    openingBraces++;
-                } else if (ParenthesisTokenHandler.ParenthesisType.isParenthesisOfType(parser.getCurrentToken(), ParenthesisTokenHandler.ParenthesisType.CURLY_RIGHT)) {
-                    openBraces--;
-                }
-
-                if (openBraces <= 0) {
-                    break;
-                }
-
-                parser.advance();
-            }
-
-            if (openBraces != 0) {
-                logger.error("Unbalanced curly braces in while block.");
-                throw new IllegalArgumentException("Unbalanced curly braces in while block.");
-            } else {
-                parser.setIndex(position);
-                callback.accept(openingBraces);
-            }
-        }
+        /**
+         * Parses the construct starting at the current keyword token, up to and including its last token.
+         */
+        public abstract Node parse(AstParser parser);
     }
 }
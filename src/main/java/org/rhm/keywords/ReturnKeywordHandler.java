@@ -0,0 +1,28 @@
+package org.rhm.keywords;
+
+import org.rhm.Lexer;
+import org.rhm.Parser;
+import org.rhm.ast.AstParser;
+import org.rhm.ast.Literal;
+import org.rhm.ast.Node;
+import org.rhm.ast.Return;
+import org.rhm.tokens.ParenthesisTokenHandler;
+
+public class ReturnKeywordHandler extends KeywordManager.KeywordHandler {
+    @Override
+    public Node parse(AstParser astParser) {
+        Parser parser = astParser.getParser();
+        int offset = parser.getCurrentOffset();
+        if (!astParser.isInFunction()) {
+            logger.error("'return' outside of a function at {}", offset);
+            throw parser.error("'return' outside of a function.");
+        }
+        parser.advance();
+
+        if (parser.getCurrentType() == Lexer.TokenType.SEMICOLON || parser.getCurrentType() == Lexer.TokenType.EOF
+                || parser.isParenthesis(ParenthesisTokenHandler.ParenthesisType.CURLY_RIGHT)) {
+            return new Return(new Literal(null, offset), offset);
+        }
+        return new Return(astParser.parseExpression(), offset);
+    }
+}
@@ -0,0 +1,70 @@
+package org.rhm.script;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.SourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A script compiled by {@link RhlScriptEngine}. Every evaluation starts from the bindings of its context, nothing
+ * is carried over from earlier evaluations.
+ */
+public class RhlCompiledScript extends javax.script.CompiledScript {
+    private static final Logger logger = LoggerFactory.getLogger(RhlCompiledScript.class);
+
+    private final RhlScriptEngine engine;
+    private final CompiledScript script;
+
+    RhlCompiledScript(RhlScriptEngine engine, CompiledScript script) {
+        this.engine = engine;
+        this.script = script;
+    }
+
+    public CompiledScript getScript() {
+        return script;
+    }
+
+    /**
+     * Runs the script and writes the variables it ends with to the engine bindings.
+     *
+     * @return value of the last top-level statement
+     */
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        Map<String, Object> inputs = new HashMap<>();
+        Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+        if (global != null) {
+            inputs.putAll(global);
+        }
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        inputs.putAll(bindings);
+
+        try {
+            Interpreter interpreter = script.newInterpreter(inputs);
+            Object value = script.execute(interpreter);
+            bindings.putAll(interpreter.getVariables());
+            return value;
+        } catch (SourceException e) {
+            logger.error("Script failed: {}", e.getMessage());
+            throw RhlScriptEngine.toScriptException(e, (String) context.getAttribute(ScriptEngine.FILENAME));
+        } catch (RuntimeException e) {
+            logger.error("Script failed: {}", e.getMessage());
+            ScriptException exception = new ScriptException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+}
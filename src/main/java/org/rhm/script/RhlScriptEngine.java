@@ -0,0 +1,102 @@
+package org.rhm.script;
+
+import org.rhm.CompiledScript;
+import org.rhm.RuntimeContext;
+import org.rhm.SourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+
+/**
+ * {@code javax.script} engine for rhlang. Scripts read their inputs from the engine and global bindings and leave
+ * the variables they end with in the engine bindings. Compile a script once with {@link #compile(String)} to run it
+ * with new bindings without lexing and parsing it again. {@code println} still writes to {@code System.out}, not
+ * to the context's writer. Each engine has its own {@link RuntimeContext}, operators and functions registered for one
+ * engine are unknown to the others.
+ */
+public class RhlScriptEngine extends AbstractScriptEngine implements Compilable {
+    private static final Logger logger = LoggerFactory.getLogger(RhlScriptEngine.class);
+
+    private final ScriptEngineFactory factory;
+    private final RuntimeContext runtimeContext = new RuntimeContext();
+
+    public RhlScriptEngine() {
+        this(new RhlScriptEngineFactory());
+    }
+
+    public RhlScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return the registries scripts of this engine are compiled and run with
+     */
+    public RuntimeContext getRuntimeContext() {
+        return runtimeContext;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public RhlCompiledScript compile(String script) throws ScriptException {
+        try {
+            return new RhlCompiledScript(this, CompiledScript.compile(script, runtimeContext));
+        } catch (SourceException e) {
+            logger.error("Failed to compile script: {}", e.getMessage());
+            throw toScriptException(e, (String) get(ScriptEngine.FILENAME));
+        }
+    }
+
+    @Override
+    public RhlCompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    static ScriptException toScriptException(SourceException e, String fileName) {
+        ScriptException exception = e.getDiagnostic().line() == 0
+                ? new ScriptException(e.getDiagnostic().message())
+                : new ScriptException(e.getDiagnostic().message(), fileName, e.getDiagnostic().line(), e.getDiagnostic().column());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            reader.transferTo(source);
+        } catch (IOException e) {
+            logger.error("Failed to read script", e);
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+}
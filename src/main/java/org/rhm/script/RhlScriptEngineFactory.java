@@ -0,0 +1,85 @@
+package org.rhm.script;
+
+import org.rhm.Interpreter;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Registers rhlang with {@code javax.script}, so {@code new ScriptEngineManager().getEngineByName("rhlang")}
+ * returns a {@link RhlScriptEngine}.
+ */
+public class RhlScriptEngineFactory implements ScriptEngineFactory {
+    private static final List<String> NAMES = List.of("rhlang", "rhl");
+
+    @Override
+    public String getEngineName() {
+        return "rhlang";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return Interpreter.VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("rhl");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("application/x-rhlang");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "rhlang";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return Interpreter.VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            case ScriptEngine.NAME -> NAMES.get(0);
+            // every evaluation runs on its own interpreter, the bindings it reads and fills belong to the caller
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... args) {
+        return method + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "println(\"" + toDisplay.replace("\"", "\\\"") + "\")";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return List.of(statements).stream().map(statement -> statement + ";").collect(Collectors.joining("\n"));
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new RhlScriptEngine(this);
+    }
+}
@@ -0,0 +1,93 @@
+package org.rhm.tokens;
+
+import org.rhm.Lexer;
+
+import java.util.Map;
+
+/**
+ * Immutable perfect hash over reserved words (keywords and boolean literals). A seed is searched at compile time
+ * so that every word lands in its own slot, lookups hash the scanned identifier in place and compare once.
+ */
+public final class KeywordTable {
+    private static final int MAX_SEED_ATTEMPTS = 1 << 12;
+
+    private final String[] words;
+    private final Lexer.Token<?>[] tokens;
+    private final int seed;
+    private final int mask;
+    private final int minLength;
+    private final int maxLength;
+
+    private KeywordTable(String[] words, Lexer.Token<?>[] tokens, int seed, int minLength, int maxLength) {
+        this.words = words;
+        this.tokens = tokens;
+        this.seed = seed;
+        this.mask = words.length - 1;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    public static KeywordTable compile(Map<String, Lexer.Token<?>> entries) {
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (String word : entries.keySet()) {
+            minLength = Math.min(minLength, word.length());
+            maxLength = Math.max(maxLength, word.length());
+        }
+
+        int size = Integer.highestOneBit(Math.max(1, entries.size() * 2 - 1)) << 1;
+        while (true) {
+            for (int seed = 1; seed <= MAX_SEED_ATTEMPTS; seed++) {
+                String[] words = new String[size];
+                Lexer.Token<?>[] tokens = new Lexer.Token<?>[size];
+                if (fill(entries, seed, words, tokens)) {
+                    return new KeywordTable(words, tokens, seed, minLength, maxLength);
+                }
+            }
+            size <<= 1;
+        }
+    }
+
+    private static boolean fill(Map<String, Lexer.Token<?>> entries, int seed, String[] words, Lexer.Token<?>[] tokens) {
+        for (Map.Entry<String, Lexer.Token<?>> entry : entries.entrySet()) {
+            String word = entry.getKey();
+            int slot = hash(word, 0, word.length(), seed) & (words.length - 1);
+            if (words[slot] != null) {
+                return false;
+            }
+            words[slot] = word;
+            tokens[slot] = entry.getValue();
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence source, int start, int end, int seed) {
+        int h = seed * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            h = (h ^ source.charAt(i)) * 0x01000193;
+        }
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * @return the token for the reserved word spanning {@code [start, end)}, or null if it is a plain identifier
+     */
+    public Lexer.Token<?> lookup(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length < minLength || length > maxLength) {
+            return null;
+        }
+
+        int slot = hash(source, start, end, seed) & mask;
+        String word = words[slot];
+        if (word == null || word.length() != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != source.charAt(start + i)) {
+                return null;
+            }
+        }
+        return tokens[slot];
+    }
+}
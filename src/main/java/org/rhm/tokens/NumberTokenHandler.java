@@ -0,0 +1,304 @@
+package org.rhm.tokens;
+
+import org.rhm.Lexer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans integer and floating point literals straight from the source, accumulating the value while scanning.
+ * <p>
+ * Supported forms are decimal, {@code 0x} hex and {@code 0b} binary integers, fractions and exponents, with
+ * {@code _} between digits. Suffixes select the type: {@code L} long, {@code f} float, {@code d} double.
+ * Unsuffixed integers are ints if they fit and longs otherwise, unsuffixed fractions stay floats.
+ */
+public final class NumberTokenHandler implements TokenManager.TokenHandler {
+    // 18 decimal digits always fit into a long
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+    private static final int MAX_EXACT_DOUBLE_EXPONENT = 22;
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+    private static final int MAX_EXACT_FLOAT_EXPONENT = 10;
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[MAX_EXACT_DOUBLE_EXPONENT + 1];
+    private static final float[] FLOAT_POWERS_OF_TEN = new float[MAX_EXACT_FLOAT_EXPONENT + 1];
+
+    static {
+        DOUBLE_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+        }
+        FLOAT_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < FLOAT_POWERS_OF_TEN.length; i++) {
+            FLOAT_POWERS_OF_TEN[i] = FLOAT_POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final TokenManager manager;
+
+    public NumberTokenHandler(TokenManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public Lexer.Token<?> parse(CharSequence source, AtomicInteger index) {
+        // repeated literals share one token
+        Lexer.Token<?> token = scan(source, index);
+        return manager.cachedLiteral(token.type, token.getAs(Object.class));
+    }
+
+    private Lexer.Token<?> scan(CharSequence source, AtomicInteger index) {
+        int start = index.get();
+        int i = start;
+        boolean negative = false;
+
+        if (source.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+
+        if (i + 1 < source.length() && source.charAt(i) == '0') {
+            char prefix = source.charAt(i + 1);
+            if (prefix == 'x' || prefix == 'X') {
+                return parseRadix(source, index, start, i + 2, 4, negative);
+            } else if (prefix == 'b' || prefix == 'B') {
+                return parseRadix(source, index, start, i + 2, 1, negative);
+            }
+        }
+
+        // integer part, accumulated negatively so Long.MIN_VALUE is representable
+        long integer = 0;
+        boolean integerOverflow = false;
+        // up to 18 significant digits for the floating point fast path, the 19th could overflow
+        long mantissa = 0;
+        int significantDigits = 0;
+        int decimalExponent = 0;
+        boolean truncated = false;
+
+        int digitsStart = i;
+        i = scanDigits(source, i, 10);
+        for (int j = digitsStart; j < i; j++) {
+            char c = source.charAt(j);
+            if (c == '_') {
+                continue;
+            }
+            int digit = c - '0';
+            if (integer < (Long.MIN_VALUE + digit) / 10) {
+                integerOverflow = true;
+            } else {
+                integer = integer * 10 - digit;
+            }
+            if (significantDigits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                decimalExponent++;
+                truncated = true;
+            }
+        }
+
+        boolean fractional = false;
+        if (i + 1 < source.length() && source.charAt(i) == '.' && isDigit(source.charAt(i + 1))) {
+            fractional = true;
+            int fractionStart = i + 1;
+            i = scanDigits(source, fractionStart, 10);
+            for (int j = fractionStart; j < i; j++) {
+                char c = source.charAt(j);
+                if (c == '_') {
+                    continue;
+                }
+                if (significantDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    decimalExponent--;
+                } else if (c != '0') {
+                    truncated = true;
+                }
+            }
+        }
+
+        int exponentEnd = scanExponent(source, i);
+        boolean hasExponent = exponentEnd > i;
+        if (hasExponent) {
+            int j = i + 1;
+            boolean negativeExponent = source.charAt(j) == '-';
+            if (source.charAt(j) == '-' || source.charAt(j) == '+') {
+                j++;
+            }
+            int exponent = 0;
+            for (; j < exponentEnd; j++) {
+                if (source.charAt(j) != '_' && exponent < 100_000) {
+                    exponent = exponent * 10 + (source.charAt(j) - '0');
+                }
+            }
+            decimalExponent += negativeExponent ? -exponent : exponent;
+            i = exponentEnd;
+        } else if (i < source.length() && (source.charAt(i) == 'e' || source.charAt(i) == 'E')) {
+            throw invalid(source, start, i + 1, "missing exponent digits");
+        }
+        checkNoTrailingUnderscore(source, start, i);
+
+        char suffix = i < source.length() ? source.charAt(i) : 0;
+        Lexer.Token<?> token;
+        if (suffix == 'f' || suffix == 'F' || ((fractional || hasExponent) && suffix != 'd' && suffix != 'D')) {
+            boolean suffixed = suffix == 'f' || suffix == 'F';
+            float value = toFloat(source, start, i, mantissa, decimalExponent, truncated);
+            token = new Lexer.Token<>(Lexer.TokenType.FLOAT, negative ? -value : value);
+            i += suffixed ? 1 : 0;
+        } else if (suffix == 'd' || suffix == 'D') {
+            double value = toDouble(source, start, i, mantissa, decimalExponent, truncated);
+            token = new Lexer.Token<>(Lexer.TokenType.DOUBLE, negative ? -value : value);
+            i++;
+        } else {
+            if (integerOverflow || (!negative && integer == Long.MIN_VALUE)) {
+                throw invalid(source, start, i, "integer literal does not fit into 64 bits");
+            }
+            long value = negative ? integer : -integer;
+            token = integerToken(value, suffix == 'l' || suffix == 'L', value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE);
+            i += suffix == 'l' || suffix == 'L' ? 1 : 0;
+        }
+
+        index.set(i);
+        return token;
+    }
+
+    private static Lexer.Token<?> parseRadix(CharSequence source, AtomicInteger index, int start, int digitsStart, int bitsPerDigit, boolean negative) {
+        int radix = 1 << bitsPerDigit;
+        int end = scanDigits(source, digitsStart, radix);
+        long value = 0;
+        int bits = 0;
+
+        for (int i = digitsStart; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '_') {
+                continue;
+            }
+            if (value != 0 || bits != 0) {
+                bits += bitsPerDigit;
+            } else if (Character.digit(c, radix) != 0) {
+                bits = 64 - Long.numberOfLeadingZeros(Character.digit(c, radix));
+            }
+            if (bits > 64) {
+                throw invalid(source, start, end, "integer literal does not fit into 64 bits");
+            }
+            value = (value << bitsPerDigit) | Character.digit(c, radix);
+        }
+
+        if (end == digitsStart) {
+            throw invalid(source, start, end, "missing digits");
+        }
+        checkNoTrailingUnderscore(source, start, end);
+
+        boolean isLong = end < source.length() && (source.charAt(end) == 'l' || source.charAt(end) == 'L');
+        index.set(isLong ? end + 1 : end);
+        if (!isLong && bits <= 32) {
+            // like Java, hex and binary int literals may use all 32 bits
+            return new Lexer.Token<>(Lexer.TokenType.INTEGER, negative ? -(int) value : (int) value);
+        }
+        return new Lexer.Token<>(Lexer.TokenType.LONG, negative ? -value : value);
+    }
+
+    private static Lexer.Token<?> integerToken(long value, boolean isLong, boolean fitsInt) {
+        if (isLong || !fitsInt) {
+            return new Lexer.Token<>(Lexer.TokenType.LONG, value);
+        }
+        return new Lexer.Token<>(Lexer.TokenType.INTEGER, (int) value);
+    }
+
+    /**
+     * Uses exact arithmetic where the mantissa and power of ten are both exactly representable,
+     * which covers ordinary literals. Anything else is handed to the JDK parser.
+     */
+    private static double toDouble(CharSequence source, int start, int end, long mantissa, int exponent, boolean truncated) {
+        if (!truncated && mantissa <= MAX_EXACT_DOUBLE_MANTISSA && Math.abs(exponent) <= MAX_EXACT_DOUBLE_EXPONENT) {
+            return exponent >= 0 ? mantissa * DOUBLE_POWERS_OF_TEN[exponent] : mantissa / DOUBLE_POWERS_OF_TEN[-exponent];
+        }
+        return Double.parseDouble(digits(source, start, end));
+    }
+
+    private static float toFloat(CharSequence source, int start, int end, long mantissa, int exponent, boolean truncated) {
+        if (!truncated && mantissa <= MAX_EXACT_FLOAT_MANTISSA && Math.abs(exponent) <= MAX_EXACT_FLOAT_EXPONENT) {
+            return exponent >= 0 ? mantissa * FLOAT_POWERS_OF_TEN[exponent] : mantissa / FLOAT_POWERS_OF_TEN[-exponent];
+        }
+        return Float.parseFloat(digits(source, start, end));
+    }
+
+    private static String digits(CharSequence source, int start, int end) {
+        // the sign is applied by the caller
+        int i = source.charAt(start) == '-' ? start + 1 : start;
+        StringBuilder digits = new StringBuilder(end - i);
+        for (; i < end; i++) {
+            if (source.charAt(i) != '_') {
+                digits.append(source.charAt(i));
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * @return end of the run of digits and separating underscores starting at {@code start}
+     */
+    private static int scanDigits(CharSequence source, int start, int radix) {
+        int i = start;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (Character.digit(c, radix) >= 0 && c < 128) {
+                i++;
+            } else if (c == '_' && i > start && i + 1 < source.length() && Character.digit(source.charAt(i + 1), radix) >= 0) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int scanExponent(CharSequence source, int start) {
+        if (start >= source.length() || (source.charAt(start) != 'e' && source.charAt(start) != 'E')) {
+            return start;
+        }
+        int i = start + 1;
+        if (i < source.length() && (source.charAt(i) == '+' || source.charAt(i) == '-')) {
+            i++;
+        }
+        if (i >= source.length() || !isDigit(source.charAt(i))) {
+            return start;
+        }
+        return scanDigits(source, i, 10);
+    }
+
+    /**
+     * Underscores only separate digits, one ending the digits would otherwise start an identifier.
+     */
+    private static void checkNoTrailingUnderscore(CharSequence source, int start, int end) {
+        if (end < source.length() && source.charAt(end) == '_') {
+            throw invalid(source, start, end + 1, "underscores must be followed by a digit");
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static IllegalArgumentException invalid(CharSequence source, int start, int end, String reason) {
+        return new IllegalArgumentException("Invalid number format: '" + source.subSequence(start, end) + "', " + reason);
+    }
+
+    @Override
+    public boolean canHandle(CharSequence source, AtomicInteger index) {
+        int startIndex = index.get();
+
+        if (source.charAt(startIndex) == '-') {
+            startIndex++;
+        }
+
+        return startIndex < source.length() && isDigit(source.charAt(startIndex));
+    }
+
+    @Override
+    public boolean canStartWith(char c) {
+        return c == '-' || isDigit(c);
+    }
+}
@@ -0,0 +1,116 @@
+package org.rhm.tokens;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable longest-match recognizer for the registered operators, compiled into a flat transition table.
+ * Matching walks the table once and does not allocate.
+ */
+public final class OperatorTrie {
+    private static final int NO_STATE = -1;
+
+    // maps a character to its column in the transition table, -1 for characters no operator uses
+    private final int[] charClasses;
+    private final int classCount;
+    private final int[] transitions;
+    // operator accepted in a state, null for non-accepting states
+    private final String[] accepting;
+
+    private OperatorTrie(int[] charClasses, int classCount, int[] transitions, String[] accepting) {
+        this.charClasses = charClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    public static OperatorTrie compile(Collection<String> operators) {
+        int maxChar = 0;
+        for (String operator : operators) {
+            for (int i = 0; i < operator.length(); i++) {
+                maxChar = Math.max(maxChar, operator.charAt(i));
+            }
+        }
+
+        int[] charClasses = new int[maxChar + 1];
+        Arrays.fill(charClasses, NO_STATE);
+        int classCount = 0;
+        for (String operator : operators) {
+            for (int i = 0; i < operator.length(); i++) {
+                char c = operator.charAt(i);
+                if (charClasses[c] == NO_STATE) {
+                    charClasses[c] = classCount++;
+                }
+            }
+        }
+
+        List<int[]> rows = new ArrayList<>();
+        List<String> accepting = new ArrayList<>();
+        rows.add(newRow(classCount));
+        accepting.add(null);
+
+        for (String operator : operators) {
+            if (operator.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < operator.length(); i++) {
+                int[] row = rows.get(state);
+                int charClass = charClasses[operator.charAt(i)];
+                if (row[charClass] == NO_STATE) {
+                    row[charClass] = rows.size();
+                    rows.add(newRow(classCount));
+                    accepting.add(null);
+                }
+                state = row[charClass];
+            }
+            accepting.set(state, operator);
+        }
+
+        int[] transitions = new int[rows.size() * classCount];
+        for (int state = 0; state < rows.size(); state++) {
+            System.arraycopy(rows.get(state), 0, transitions, state * classCount, classCount);
+        }
+
+        return new OperatorTrie(charClasses, classCount, transitions, accepting.toArray(new String[0]));
+    }
+
+    private static int[] newRow(int classCount) {
+        int[] row = new int[classCount];
+        Arrays.fill(row, NO_STATE);
+        return row;
+    }
+
+    /**
+     * @return the longest registered operator starting at {@code start}, or null if none matches
+     */
+    public String match(CharSequence source, int start) {
+        String longest = null;
+        int state = 0;
+
+        for (int i = start; i < source.length(); i++) {
+            state = next(state, source.charAt(i));
+            if (state == NO_STATE) {
+                break;
+            }
+            if (accepting[state] != null) {
+                longest = accepting[state];
+            }
+        }
+
+        return longest;
+    }
+
+    public boolean canStartWith(char c) {
+        return next(0, c) != NO_STATE;
+    }
+
+    private int next(int state, char c) {
+        if (c >= charClasses.length || charClasses[c] == NO_STATE) {
+            return NO_STATE;
+        }
+        return transitions[state * classCount + charClasses[c]];
+    }
+}
@@ -7,21 +7,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 public final class ParenthesisTokenHandler implements TokenManager.TokenHandler {
 
     @Override
-    public Lexer.Token<ParenthesisType> parse(String source, AtomicInteger index) {
+    public Lexer.Token<ParenthesisType> parse(CharSequence source, AtomicInteger index) {
         char currentChar = source.charAt(index.get());
         index.getAndIncrement();
         return new Lexer.Token<>(Lexer.TokenType.PARENTHESIS, ParenthesisType.fromChar(currentChar));
     }
 
     @Override
-    public boolean canHandle(String source, AtomicInteger index) {
-        char currentChar = source.charAt(index.get());
-        try {
-            ParenthesisType.fromChar(currentChar);
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+    public boolean canHandle(CharSequence source, AtomicInteger index) {
+        return canStartWith(source.charAt(index.get()));
+    }
+
+    @Override
+    public boolean canStartWith(char c) {
+        return ParenthesisType.lookup(c) != null;
     }
 
     public enum ParenthesisType {
@@ -32,8 +31,15 @@ public final class ParenthesisTokenHandler implements TokenManager.TokenHandler
         CURLY_RIGHT('}'),
         SQUARE_RIGHT(']');
 
+        private static final ParenthesisType[] BY_CHAR = new ParenthesisType[128];
         private final char symbol;
 
+        static {
+            for (ParenthesisType type : values()) {
+                BY_CHAR[type.symbol] = type;
+            }
+        }
+
         ParenthesisType(char symbol) {
             this.symbol = symbol;
         }
@@ -42,13 +48,30 @@ public final class ParenthesisTokenHandler implements TokenManager.TokenHandler
             return symbol;
         }
 
+        public boolean isOpening() {
+            return ordinal() < ROUND_RIGHT.ordinal();
+        }
+
+        /**
+         * @return the closing parenthesis matching this opening one
+         */
+        public ParenthesisType closing() {
+            return values()[ordinal() + ROUND_RIGHT.ordinal()];
+        }
+
         public static ParenthesisType fromChar(char c) {
-            for (ParenthesisType type : values()) {
-                if (type.getSymbol() == c) {
-                    return type;
-                }
+            ParenthesisType type = lookup(c);
+            if (type == null) {
+                throw new IllegalArgumentException("Invalid parenthesis character: " + c);
             }
-            throw new IllegalArgumentException("Invalid parenthesis character: " + c);
+            return type;
+        }
+
+        /**
+         * Same as {@link #fromChar(char)} but returns null instead of throwing for non-parenthesis characters.
+         */
+        public static ParenthesisType lookup(char c) {
+            return c < BY_CHAR.length ? BY_CHAR[c] : null;
         }
 
         public static boolean isParenthesisOfType(Lexer.Token<?> token, ParenthesisType type) {
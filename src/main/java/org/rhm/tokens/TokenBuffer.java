@@ -0,0 +1,156 @@
+package org.rhm.tokens;
+
+import org.rhm.Lexer;
+import org.rhm.SourceMap;
+import org.rhm.SymbolTable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact token stream storing type, source range, literal pool index and symbol id of every token in parallel
+ * primitive arrays. Equal literal values share one pool entry. {@link #get(int)} materializes a
+ * {@link Lexer.Token} view on demand, consumers that care about heap use should read through the indexed accessors.
+ * Token offsets resolve to lines and columns through the buffer's {@link SourceMap}.
+ */
+public class TokenBuffer extends AbstractList<Lexer.Token<?>> {
+    private static final Lexer.TokenType[] TYPES = Lexer.TokenType.values();
+    private static final int NO_LITERAL = -1;
+    public static final int NO_MATCH = -1;
+
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] literals;
+    private int[] symbols;
+    // index of the matching bracket of every bracket token, null until brackets are paired
+    private int[] matches;
+    private int size = 0;
+    private final SymbolTable symbolTable;
+    private final SourceMap sourceMap;
+
+    private final List<Object> literalPool = new ArrayList<>();
+    private final Map<Object, Integer> literalIndices = new HashMap<>();
+
+    public TokenBuffer(SymbolTable symbolTable) {
+        this(symbolTable, new SourceMap());
+    }
+
+    public TokenBuffer(SymbolTable symbolTable, SourceMap sourceMap) {
+        this(symbolTable, sourceMap, 64);
+    }
+
+    public TokenBuffer(SymbolTable symbolTable, SourceMap sourceMap, int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.symbolTable = symbolTable;
+        this.sourceMap = sourceMap;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.literals = new int[capacity];
+        this.symbols = new int[capacity];
+    }
+
+    public void add(Lexer.TokenType type, int start, int end, Object value, int symbol) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            literals = Arrays.copyOf(literals, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        literals[size] = value == null ? NO_LITERAL : literalIndices.computeIfAbsent(value, this::pool);
+        symbols[size] = symbol;
+        size++;
+    }
+
+    private int pool(Object value) {
+        literalPool.add(value);
+        return literalPool.size() - 1;
+    }
+
+    public Lexer.TokenType type(int index) {
+        checkIndex(index);
+        return TYPES[types[index]];
+    }
+
+    public Object value(int index) {
+        checkIndex(index);
+        return literals[index] == NO_LITERAL ? null : literalPool.get(literals[index]);
+    }
+
+    public int start(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    public int symbol(int index) {
+        checkIndex(index);
+        return symbols[index];
+    }
+
+    /**
+     * Records that the brackets at {@code open} and {@code close} belong together. Brackets are paired once all
+     * tokens have been added.
+     */
+    public void pair(int open, int close) {
+        checkIndex(open);
+        checkIndex(close);
+        if (matches == null) {
+            matches = new int[size];
+            Arrays.fill(matches, NO_MATCH);
+        }
+        matches[open] = close;
+        matches[close] = open;
+    }
+
+    /**
+     * @return index of the bracket matching the one at {@code index}, or {@link #NO_MATCH}
+     */
+    public int matching(int index) {
+        checkIndex(index);
+        return matches == null || index >= matches.length ? NO_MATCH : matches[index];
+    }
+
+    public SymbolTable getSymbols() {
+        return symbolTable;
+    }
+
+    public SourceMap getSourceMap() {
+        return sourceMap;
+    }
+
+    public int literalCount() {
+        return literalPool.size();
+    }
+
+    @Override
+    public Lexer.Token<?> get(int index) {
+        return new Lexer.Token<>(type(index), value(index), symbols[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index " + index + " out of bounds for " + size + " tokens.");
+        }
+    }
+}
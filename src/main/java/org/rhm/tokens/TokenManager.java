@@ -1,74 +1,222 @@
 package org.rhm.tokens;
 
-import org.rhm.Interpreter;
 import org.rhm.Lexer;
+import org.rhm.OperationManager;
+import org.rhm.SymbolTable;
+import org.rhm.keywords.KeywordManager;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 
 public class TokenManager {
     public final EnumMap<Lexer.TokenType, TokenHandler> tokenHandlers = new EnumMap<>(Lexer.TokenType.class);
-    private static final Map<Object, Lexer.Token<?>> tokenCache = new LinkedHashMap<>(16, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Object, Lexer.Token<?>> eldest) {
-            return size() > 100;
-        }
-    };
+    // candidate handlers per ASCII start character, in the same priority order as tokenHandlers
+    private static final int DISPATCH_TABLE_SIZE = 128;
+    private static final TokenHandler[] NO_HANDLERS = new TokenHandler[0];
+    private volatile DispatchTable dispatchTable;
+
+    private final OperationManager operationManager;
+    private final KeywordManager keywordManager;
+
+    // immutable table of tokens every script uses, swapped as a whole when operators or keywords are registered
+    private volatile InternedTokens internedTokens;
+    // bounded cache for numbers, and for names and strings lexed without a symbol table, keyed by LiteralKey. Evicts
+    // arbitrary entries once an insert overflows it
+    private static final int TOKEN_CACHE_SIZE = 1024;
+    private final ConcurrentHashMap<Object, Lexer.Token<?>> tokenCache = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * @param operationManager operators the lexer recognizes
+     * @param keywordManager   keywords the lexer recognizes
+     */
+    public TokenManager(OperationManager operationManager, KeywordManager keywordManager) {
+        this.operationManager = operationManager;
+        this.keywordManager = keywordManager;
+        // one scanner produces all numeric literal types
+        tokenHandlers.put(Lexer.TokenType.INTEGER, new NumberTokenHandler(this));
+        tokenHandlers.put(Lexer.TokenType.OPERATOR, new OperatorTokenHandler(this));
+        tokenHandlers.put(Lexer.TokenType.PARENTHESIS, new ParenthesisTokenHandler());
+        tokenHandlers.put(Lexer.TokenType.STRING, new StringTokenHandler(this));
+        tokenHandlers.put(Lexer.TokenType.IDENTIFIER, new IdentifierTokenHandler(this));
+        tokenHandlers.put(Lexer.TokenType.COMMA, new SingleTokenHandler(this, ',', Lexer.TokenType.COMMA));
+        tokenHandlers.put(Lexer.TokenType.SEMICOLON, new SingleTokenHandler(this, ';', Lexer.TokenType.SEMICOLON));
+        tokenHandlers.put(Lexer.TokenType.COMMENT, new CommentTokenHandler());
+        rebuildDispatchTable();
+    }
 
-    // pre-cache frequently used tokens
-    static {
-        for (String s : Interpreter.operationManager.operatorHandlers.keySet()) {
-            tokenCache.put(s, new Lexer.Token<>(Lexer.TokenType.OPERATOR, s));
-        }
-        tokenCache.put(true, new Lexer.Token<>(Lexer.TokenType.BOOLEAN, true));
-        tokenCache.put(false, new Lexer.Token<>(Lexer.TokenType.BOOLEAN, false));
-        for (ParenthesisTokenHandler.ParenthesisType value : ParenthesisTokenHandler.ParenthesisType.values()) {
-            tokenCache.put(value, new Lexer.Token<>(Lexer.TokenType.PARENTHESIS, value));
+    /**
+     * Recomputes the first-character dispatch table. Has to be called after {@link #tokenHandlers} is modified.
+     */
+    public synchronized void rebuildDispatchTable() {
+        int operatorVersion = operationManager.getVersion();
+        TokenHandler[] handlers = tokenHandlers.values().toArray(NO_HANDLERS);
+        TokenHandler[][] table = new TokenHandler[DISPATCH_TABLE_SIZE][];
+        List<TokenHandler> candidates = new ArrayList<>();
+
+        for (char c = 0; c < DISPATCH_TABLE_SIZE; c++) {
+            candidates.clear();
+            for (TokenHandler handler : handlers) {
+                if (handler.canStartWith(c)) {
+                    candidates.add(handler);
+                }
+            }
+            table[c] = candidates.isEmpty() ? NO_HANDLERS : candidates.toArray(NO_HANDLERS);
         }
+
+        this.dispatchTable = new DispatchTable(table, handlers, operatorVersion);
     }
 
-    public TokenManager() {
-        tokenHandlers.put(Lexer.TokenType.FLOAT, new FloatTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.INTEGER, new IntegerTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.OPERATOR, new OperatorTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.PARENTHESIS, new ParenthesisTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.STRING, new StringTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.BOOLEAN, new BooleanTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.IDENTIFIER, new IdentifierTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.COMMA, new SingleTokenHandler(',', Lexer.TokenType.COMMA));
-        tokenHandlers.put(Lexer.TokenType.SEMICOLON, new SingleTokenHandler(';', Lexer.TokenType.SEMICOLON));
-        tokenHandlers.put(Lexer.TokenType.COMMENT, new CommentTokenHandler());
-        tokenHandlers.put(Lexer.TokenType.KEYWORD, new KeywordTokenHandler());
+    public Lexer.Token<?> handleToken(CharSequence source, AtomicInteger index) {
+        return handleToken(source, index, null);
     }
 
-    public Lexer.Token<?> handleToken(String source, AtomicInteger index) {
-        for (TokenManager.TokenHandler handler : Interpreter.tokenManager.tokenHandlers.values()) {
+    /**
+     * @param symbols table identifiers and string literals are interned into, may be null
+     */
+    public Lexer.Token<?> handleToken(CharSequence source, AtomicInteger index, SymbolTable symbols) {
+        DispatchTable dispatch = dispatchTable;
+        if (dispatch.operatorVersion() != operationManager.getVersion()) {
+            rebuildDispatchTable();
+            dispatch = dispatchTable;
+        }
+
+        char currentChar = source.charAt(index.get());
+        TokenHandler[] candidates = currentChar < DISPATCH_TABLE_SIZE ? dispatch.table()[currentChar] : dispatch.all();
+
+        for (TokenHandler handler : candidates) {
             if (handler.canHandle(source, index)) {
-                return handler.parse(source, index);
+                return handler.parse(source, index, symbols);
             }
         }
         return null;
     }
 
+    /**
+     * Returns a shared token for {@code key}, safe to call from concurrently running lexers.
+     */
     @SuppressWarnings("unchecked")
-    public static <T> Lexer.Token<T> newOrCached(Lexer.TokenType type, Object key, T value) {
-        if (tokenCache.containsKey(key)) {
-            return (Lexer.Token<T>) tokenCache.get(key);
-        } else {
-            Lexer.Token<T> token = new Lexer.Token<>(type, value);
-            tokenCache.put(key, token);
+    public <T> Lexer.Token<T> newOrCached(Lexer.TokenType type, Object key, T value) {
+        Lexer.Token<?> token = getInternedTokens().tokens().get(key);
+        if (token != null) {
+            cacheHits.increment();
+            return (Lexer.Token<T>) token;
+        }
+        return (Lexer.Token<T>) cached(key, type, value);
+    }
+
+    /**
+     * Returns a shared token for a literal or a name that is not interned, from the bounded cache.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Lexer.Token<T> cachedLiteral(Lexer.TokenType type, T value) {
+        return (Lexer.Token<T>) cached(new LiteralKey(type, value), type, value);
+    }
+
+    private Lexer.Token<?> cached(Object key, Lexer.TokenType type, Object value) {
+        Lexer.Token<?> token = tokenCache.get(key);
+        if (token != null) {
+            cacheHits.increment();
             return token;
         }
+
+        cacheMisses.increment();
+        Lexer.Token<?> created = new Lexer.Token<>(type, value);
+        Lexer.Token<?> existing = tokenCache.putIfAbsent(key, created);
+        // evicting after the insert keeps the bound once concurrent lexers are done, checking before would not
+        Iterator<Object> keys = tokenCache.keySet().iterator();
+        while (tokenCache.size() > TOKEN_CACHE_SIZE && keys.hasNext()) {
+            tokenCache.remove(keys.next());
+        }
+        return existing != null ? existing : created;
+    }
+
+    public CacheStats getCacheStats() {
+        return new CacheStats(cacheHits.sum(), cacheMisses.sum(), getInternedTokens().tokens().size(), tokenCache.size());
+    }
+
+    private InternedTokens getInternedTokens() {
+        InternedTokens interned = internedTokens;
+        int operatorVersion = operationManager.getVersion();
+        int keywordVersion = keywordManager.getVersion();
+
+        if (interned == null || interned.operatorVersion() != operatorVersion || interned.keywordVersion() != keywordVersion) {
+            Map<Object, Lexer.Token<?>> tokens = new HashMap<>();
+            for (String operator : operationManager.getOperators()) {
+                tokens.put(operator, new Lexer.Token<>(Lexer.TokenType.OPERATOR, operator));
+            }
+            for (String keyword : keywordManager.getKeywords()) {
+                tokens.put(keyword, new Lexer.Token<>(Lexer.TokenType.KEYWORD, keyword));
+            }
+            tokens.put(true, new Lexer.Token<>(Lexer.TokenType.BOOLEAN, true));
+            tokens.put(false, new Lexer.Token<>(Lexer.TokenType.BOOLEAN, false));
+            for (ParenthesisTokenHandler.ParenthesisType value : ParenthesisTokenHandler.ParenthesisType.values()) {
+                tokens.put(value, new Lexer.Token<>(Lexer.TokenType.PARENTHESIS, value));
+            }
+            tokens.put(',', new Lexer.Token<>(Lexer.TokenType.COMMA, ','));
+            tokens.put(';', new Lexer.Token<>(Lexer.TokenType.SEMICOLON, ';'));
+
+            interned = new InternedTokens(Map.copyOf(tokens), operatorVersion, keywordVersion);
+            internedTokens = interned;
+        }
+        return interned;
+    }
+
+    private Lexer.Token<String> namedToken(Lexer.TokenType type, CharSequence source, int start, int end, SymbolTable symbols) {
+        if (symbols == null) {
+            return cachedLiteral(type, source.subSequence(start, end).toString());
+        }
+        int symbol = symbols.intern(source, start, end);
+        return new Lexer.Token<>(type, symbols.name(symbol), symbol);
+    }
+
+    public record CacheStats(long hits, long misses, int internedSize, int cacheSize) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
     }
 
+    // the type is part of the key, the same text is an identifier or a string
+    private record LiteralKey(Lexer.TokenType type, Object value) { }
+
+    private record DispatchTable(TokenHandler[][] table, TokenHandler[] all, int operatorVersion) { }
+
+    // compiled lookup structure tagged with the registry version it was built from
+    private record Versioned<T>(T value, int version) { }
+
+    private record InternedTokens(Map<Object, Lexer.Token<?>> tokens, int operatorVersion, int keywordVersion) { }
+
     public interface TokenHandler {
-        Lexer.Token<?> parse(String source, AtomicInteger index);
-        boolean canHandle(String source, AtomicInteger index);
+        Lexer.Token<?> parse(CharSequence source, AtomicInteger index);
+        boolean canHandle(CharSequence source, AtomicInteger index);
+
+        /**
+         * Variant of {@link #parse(CharSequence, AtomicInteger)} for handlers producing named tokens,
+         * which intern their text into {@code symbols} when it is present.
+         */
+        default Lexer.Token<?> parse(CharSequence source, AtomicInteger index, SymbolTable symbols) {
+            return parse(source, index);
+        }
+
+        /**
+         * Cheap pre-filter used to build the dispatch table, must return true for every character
+         * {@link #canHandle} could accept as the first character of a token.
+         */
+        default boolean canStartWith(char c) {
+            return true;
+        }
 
-        default String getString(String source, AtomicInteger index, BiFunction<String, AtomicInteger, Boolean> condition) {
+        default String getString(CharSequence source, AtomicInteger index, BiFunction<CharSequence, AtomicInteger, Boolean> condition) {
             StringBuilder string = new StringBuilder();
             while (index.get() < source.length() && condition.apply(source, index)) {
                 string.append(source.charAt(index.get()));
@@ -79,79 +227,37 @@ public class TokenManager {
     }
 
     public static class SingleTokenHandler implements TokenHandler {
+        private final TokenManager manager;
         final char token;
         final Lexer.TokenType type;
 
-        public SingleTokenHandler(char token, Lexer.TokenType type) {
+        public SingleTokenHandler(TokenManager manager, char token, Lexer.TokenType type) {
+            this.manager = manager;
             this.token = token;
             this.type = type;
         }
 
         @Override
-        public Lexer.Token<Character> parse(String source, AtomicInteger index) {
+        public Lexer.Token<Character> parse(CharSequence source, AtomicInteger index) {
             Character srcToken = source.charAt(index.get());
             index.getAndIncrement();
-            return newOrCached(type, srcToken, srcToken);
+            return manager.newOrCached(type, srcToken, srcToken);
         }
 
         @Override
-        public boolean canHandle(String source, AtomicInteger index) {
+        public boolean canHandle(CharSequence source, AtomicInteger index) {
             return source.charAt(index.get()) == token;
         }
-    }
-
-    public static class KeywordTokenHandler implements TokenHandler {
-        @Override
-        public Lexer.Token<String> parse(String source, AtomicInteger index) {
-            for (String keyword : Interpreter.keywordManager.keywordHandlers.keySet()) {
-                if (index.get() + keyword.length() <= source.length()) {
-                    String subSequence = source.substring(index.get(), index.get() + keyword.length());
-                    if (subSequence.equals(keyword)) {
-                        index.getAndAdd(subSequence.length());
-                        return newOrCached(Lexer.TokenType.KEYWORD, keyword, keyword);
-                    }
-                }
-            }
-            return null;
-        }
-
-        @Override
-        public boolean canHandle(String source, AtomicInteger index) {
-            for (String keyword : Interpreter.keywordManager.keywordHandlers.keySet()) {
-                if (index.get() + keyword.length() <= source.length()) {
-                    String subSequence = source.substring(index.get(), index.get() + keyword.length());
-                    if (subSequence.equals(keyword)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
-        }
-    }
-
-    public static class BooleanTokenHandler implements TokenHandler {
-        @Override
-        public Lexer.Token<Boolean> parse(String source, AtomicInteger index) {
-            boolean bool = false;
-            if (source.startsWith("true", index.get())) {
-                bool = true;
-                index.addAndGet(4);
-            } else if (source.startsWith("false", index.get())) {
-                index.addAndGet(5);
-            }
-
-            return newOrCached(Lexer.TokenType.BOOLEAN, bool, bool);
-        }
 
         @Override
-        public boolean canHandle(String source, AtomicInteger index) {
-            return source.startsWith("true", index.get()) || source.startsWith("false", index.get());
+        public boolean canStartWith(char c) {
+            return c == token;
         }
     }
 
     public static class CommentTokenHandler implements TokenHandler {
         @Override
-        public Lexer.Token<String> parse(String source, AtomicInteger index) {
+        public Lexer.Token<String> parse(CharSequence source, AtomicInteger index) {
             StringBuilder comment = new StringBuilder();
             char currentChar = source.charAt(index.get());
 
@@ -181,63 +287,148 @@ public class TokenManager {
         }
 
         @Override
-        public boolean canHandle(String source, AtomicInteger index) {
+        public boolean canHandle(CharSequence source, AtomicInteger index) {
             char currentChar = source.charAt(index.get());
             return currentChar == '~';
         }
+
+        @Override
+        public boolean canStartWith(char c) {
+            return c == '~';
+        }
     }
 
     public static class OperatorTokenHandler implements TokenHandler {
+        private final TokenManager manager;
+        private volatile Versioned<OperatorTrie> trie;
+
+        public OperatorTokenHandler(TokenManager manager) {
+            this.manager = manager;
+        }
+
         @Override
-        public Lexer.Token<String> parse(String source, AtomicInteger index) {
-            return newOrCached(Lexer.TokenType.OPERATOR, getString(source, index, this::canHandle), getString(source, index, this::canHandle));
+        public Lexer.Token<String> parse(CharSequence source, AtomicInteger index) {
+            String operator = getTrie().match(source, index.get());
+            index.getAndAdd(operator.length());
+            return manager.newOrCached(Lexer.TokenType.OPERATOR, operator, operator);
         }
 
         @Override
-        public boolean canHandle(String source, AtomicInteger index) {
-            char currentChar = source.charAt(index.get());
+        public boolean canHandle(CharSequence source, AtomicInteger index) {
+            return getTrie().match(source, index.get()) != null;
+        }
 
-            for (String operator : Interpreter.operationManager.operatorHandlers.keySet()) {
-                if (operator.charAt(0) == currentChar) {
-                    if (index.get() + operator.length() <= source.length()) {
-                        String subSequence = source.substring(index.get(), index.get() + operator.length());
-                        if (subSequence.equals(operator)) {
-                            return true;
-                        }
-                    }
-                }
-            }
+        @Override
+        public boolean canStartWith(char c) {
+            return getTrie().canStartWith(c);
+        }
 
-            return false;
+        private OperatorTrie getTrie() {
+            Versioned<OperatorTrie> compiled = trie;
+            int version = manager.operationManager.getVersion();
+            if (compiled == null || compiled.version() != version) {
+                compiled = new Versioned<>(OperatorTrie.compile(manager.operationManager.getOperators()), version);
+                trie = compiled;
+            }
+            return compiled.value();
         }
     }
 
     public static class StringTokenHandler implements TokenHandler {
+        private final TokenManager manager;
+
+        public StringTokenHandler(TokenManager manager) {
+            this.manager = manager;
+        }
+
         @Override
-        public Lexer.Token<String> parse(String source, AtomicInteger index) {
-            index.getAndIncrement();
-            String stringValue = getString(source, index, (s, idx) -> s.charAt(idx.get()) != '"');
-            index.getAndIncrement();
-            return new Lexer.Token<>(Lexer.TokenType.STRING, stringValue);
+        public Lexer.Token<String> parse(CharSequence source, AtomicInteger index) {
+            return parse(source, index, null);
         }
 
         @Override
-        public boolean canHandle(String source, AtomicInteger index) {
+        public Lexer.Token<String> parse(CharSequence source, AtomicInteger index, SymbolTable symbols) {
+            int start = index.incrementAndGet();
+            int end = start;
+            while (end < source.length() && source.charAt(end) != '"') {
+                end++;
+            }
+            index.set(end + 1);
+            return manager.namedToken(Lexer.TokenType.STRING, source, start, end, symbols);
+        }
+
+        @Override
+        public boolean canHandle(CharSequence source, AtomicInteger index) {
             return source.charAt(index.get()) == '"';
         }
+
+        @Override
+        public boolean canStartWith(char c) {
+            return c == '"';
+        }
     }
 
+    /**
+     * Scans a whole identifier and only then classifies it as keyword, boolean literal or plain identifier,
+     * so reserved words are never matched inside a longer name.
+     */
     public static class IdentifierTokenHandler implements TokenHandler {
+        private final TokenManager manager;
+        private volatile Versioned<KeywordTable> keywordTable;
+
+        public IdentifierTokenHandler(TokenManager manager) {
+            this.manager = manager;
+        }
+
         @Override
-        public Lexer.Token<String> parse(String source, AtomicInteger index) {
-            String identifier = getString(source, index, (s, idx) ->
-                    (Character.isLetterOrDigit(source.charAt(index.get())) || source.charAt(index.get()) == '_'));
-            return new Lexer.Token<>(Lexer.TokenType.IDENTIFIER, identifier);
+        public Lexer.Token<?> parse(CharSequence source, AtomicInteger index) {
+            return parse(source, index, null);
         }
 
         @Override
-        public boolean canHandle(String source, AtomicInteger index) {
-            return Character.isLetter(source.charAt(index.get())) || source.charAt(index.get()) == '_';
+        public Lexer.Token<?> parse(CharSequence source, AtomicInteger index, SymbolTable symbols) {
+            int start = index.get();
+            int end = start;
+            while (end < source.length() && isIdentifierPart(source.charAt(end))) {
+                end++;
+            }
+            index.set(end);
+
+            Lexer.Token<?> reserved = getKeywordTable().lookup(source, start, end);
+            if (reserved != null) {
+                return reserved;
+            }
+            return manager.namedToken(Lexer.TokenType.IDENTIFIER, source, start, end, symbols);
+        }
+
+        @Override
+        public boolean canHandle(CharSequence source, AtomicInteger index) {
+            return canStartWith(source.charAt(index.get()));
+        }
+
+        @Override
+        public boolean canStartWith(char c) {
+            return Character.isLetter(c) || c == '_';
+        }
+
+        private static boolean isIdentifierPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+
+        private KeywordTable getKeywordTable() {
+            Versioned<KeywordTable> compiled = keywordTable;
+            int version = manager.keywordManager.getVersion();
+            if (compiled == null || compiled.version() != version) {
+                Map<String, Lexer.Token<?>> reserved = new HashMap<>();
+                for (String keyword : manager.keywordManager.getKeywords()) {
+                    reserved.put(keyword, manager.newOrCached(Lexer.TokenType.KEYWORD, keyword, keyword));
+                }
+                reserved.put("true", manager.newOrCached(Lexer.TokenType.BOOLEAN, true, true));
+                reserved.put("false", manager.newOrCached(Lexer.TokenType.BOOLEAN, false, false));
+                compiled = new Versioned<>(KeywordTable.compile(reserved), version);
+                keywordTable = compiled;
+            }
+            return compiled.value();
         }
     }
 }
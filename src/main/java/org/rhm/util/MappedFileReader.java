@@ -0,0 +1,76 @@
+package org.rhm.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader that decodes a UTF-8 file through a memory-mapped region that slides over the file,
+ * so the file is never copied onto the heap as a whole.
+ */
+public class MappedFileReader extends Reader {
+    private static final long REGION_SIZE = 1L << 26;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer region;
+    private long regionStart = 0;
+    private boolean flushed = false;
+
+    public MappedFileReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        mapRegion(0);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (flushed) {
+            return -1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+        while (out.position() == offset && !flushed) {
+            boolean lastRegion = regionStart + region.limit() >= fileSize;
+            CoderResult result = decoder.decode(region, out, lastRegion);
+
+            if (result.isOverflow()) {
+                break;
+            } else if (lastRegion) {
+                decoder.flush(out);
+                flushed = true;
+            } else {
+                // bytes of a character split across the region boundary are decoded again from the next region
+                mapRegion(regionStart + region.position());
+            }
+        }
+
+        int read = out.position() - offset;
+        return read == 0 && flushed ? -1 : read;
+    }
+
+    private void mapRegion(long start) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, fileSize - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,76 @@
+package org.rhm.vm;
+
+import java.util.Arrays;
+
+/**
+ * Compiled script: instructions, constant pool and the source offset of every instruction.
+ * Variable slots are symbol ids of the parser's symbol table.
+ */
+public final class Bytecode {
+    private final int[] code;
+    private final Object[] constants;
+    private final int[] positions;
+    private final int maxStack;
+    private final int slotCount;
+
+    Bytecode(int[] code, Object[] constants, int[] positions, int maxStack, int slotCount) {
+        this.code = code;
+        this.constants = constants;
+        this.positions = positions;
+        this.maxStack = maxStack;
+        this.slotCount = slotCount;
+    }
+
+    int[] code() {
+        return code;
+    }
+
+    Object[] constants() {
+        return constants;
+    }
+
+    /**
+     * @return source offset of the instruction at {@code pc}
+     */
+    int position(int pc) {
+        return positions[pc];
+    }
+
+    public int maxStack() {
+        return maxStack;
+    }
+
+    /**
+     * @return number of variable slots the code may touch
+     */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    public int length() {
+        return code.length;
+    }
+
+    /**
+     * @return one instruction per line, for debugging
+     */
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += 1 + Opcodes.OPERAND_COUNTS[code[pc]]) {
+            builder.append(String.format("%4d %-13s", pc, Opcodes.NAMES[code[pc]]));
+            for (int operand = 1; operand <= Opcodes.OPERAND_COUNTS[code[pc]]; operand++) {
+                builder.append(' ').append(code[pc + operand]);
+            }
+            if (code[pc] == Opcodes.CONST) {
+                builder.append("  ; ").append(constants[code[pc + 1]]);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Bytecode{" + code.length + " ints, constants=" + Arrays.toString(constants) + "}";
+    }
+}
@@ -0,0 +1,245 @@
+package org.rhm.vm;
+
+import org.rhm.ast.Assign;
+import org.rhm.ast.BinaryOperation;
+import org.rhm.ast.Block;
+import org.rhm.ast.Call;
+import org.rhm.ast.ForLoop;
+import org.rhm.ast.FunctionDefinition;
+import org.rhm.ast.IfStatement;
+import org.rhm.ast.ListLiteral;
+import org.rhm.ast.Literal;
+import org.rhm.ast.Node;
+import org.rhm.ast.NodeVisitor;
+import org.rhm.ast.Return;
+import org.rhm.ast.Variable;
+import org.rhm.ast.WhileLoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles syntax trees to {@link Bytecode}. Visiting a node emits code that leaves exactly one value on the
+ * stack, statements whose value is unused are compiled through {@link #statement(Node)} instead.
+ */
+public class BytecodeCompiler implements NodeVisitor<Void> {
+    private int[] code = new int[64];
+    private int[] positions = new int[64];
+    private int length = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+    private int stackDepth = 0;
+    private int maxStack = 0;
+    private int slotCount = 0;
+
+    /**
+     * Compiles a statement, the resulting code leaves no value behind.
+     */
+    public static Bytecode compile(Node statement) {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        compiler.statement(statement);
+        compiler.emit(Opcodes.HALT, statement.offset(), 0);
+        return compiler.build();
+    }
+
+    /**
+     * Compiles an expression, running the code returns its value.
+     */
+    public static Bytecode compileExpression(Node expression) {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        expression.accept(compiler);
+        compiler.emit(Opcodes.HALT, expression.offset(), 0);
+        return compiler.build();
+    }
+
+    private Bytecode build() {
+        return new Bytecode(Arrays.copyOf(code, length), constants.toArray(), Arrays.copyOf(positions, length), maxStack, slotCount);
+    }
+
+    private void statement(Node node) {
+        if (node instanceof Assign assign) {
+            assign.value().accept(this);
+            store(assign.symbol(), assign.offset());
+        } else if (node instanceof Block block) {
+            block(block);
+        } else if (node instanceof IfStatement statement) {
+            ifStatement(statement);
+        } else if (node instanceof WhileLoop loop) {
+            whileLoop(loop);
+        } else if (node instanceof ForLoop loop) {
+            forLoop(loop);
+        } else {
+            node.accept(this);
+            emit(Opcodes.POP, node.offset(), -1);
+        }
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        emit(Opcodes.CONST, literal.offset(), 1, constant(literal.value()));
+        return null;
+    }
+
+    @Override
+    public Void visitList(ListLiteral list) {
+        for (Node element : list.elements()) {
+            element.accept(this);
+        }
+        emit(Opcodes.LIST, list.offset(), 1 - list.elements().size(), list.elements().size());
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        slotCount = Math.max(slotCount, variable.symbol() + 1);
+        emit(Opcodes.LOAD, variable.offset(), 1, variable.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign assign) {
+        assign.value().accept(this);
+        emit(Opcodes.DUP, assign.offset(), 1);
+        store(assign.symbol(), assign.offset());
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(BinaryOperation operation) {
+        operation.left().accept(this);
+        operation.right().accept(this);
+        emit(Opcodes.OPERATOR, operation.offset(), -1, operation.operator().code());
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        for (Node argument : call.arguments()) {
+            argument.accept(this);
+        }
+        emit(Opcodes.CALL, call.offset(), 1 - call.arguments().size(), call.symbol(), call.arguments().size());
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        block(block);
+        return pushNull(block);
+    }
+
+    @Override
+    public Void visitIf(IfStatement statement) {
+        ifStatement(statement);
+        return pushNull(statement);
+    }
+
+    @Override
+    public Void visitWhile(WhileLoop loop) {
+        whileLoop(loop);
+        return pushNull(loop);
+    }
+
+    @Override
+    public Void visitFor(ForLoop loop) {
+        forLoop(loop);
+        return pushNull(loop);
+    }
+
+    @Override
+    public Void visitFunction(FunctionDefinition function) {
+        // functions are defined by the tree-walking evaluator and run there
+        throw new IllegalStateException("Function definitions are not compiled.");
+    }
+
+    @Override
+    public Void visitReturn(Return statement) {
+        throw new IllegalStateException("Function bodies are not compiled.");
+    }
+
+    private void block(Block block) {
+        for (Node statement : block.statements()) {
+            statement(statement);
+        }
+    }
+
+    private void ifStatement(IfStatement statement) {
+        statement.condition().accept(this);
+        int end = emitJump(Opcodes.JUMP_IF_FALSE, statement.condition().offset(), -1);
+        block(statement.body());
+        patch(end);
+    }
+
+    private void whileLoop(WhileLoop loop) {
+        int start = length;
+        loop.condition().accept(this);
+        int end = emitJump(Opcodes.JUMP_IF_FALSE, loop.condition().offset(), -1);
+        block(loop.body());
+        emit(Opcodes.JUMP, loop.offset(), 0, start);
+        patch(end);
+    }
+
+    private void forLoop(ForLoop loop) {
+        slotCount = Math.max(slotCount, loop.symbol() + 1);
+        loop.iterable().accept(this);
+        emit(Opcodes.ITERATE, loop.iterable().offset(), 0);
+
+        int next = length;
+        emit(Opcodes.NEXT, loop.offset(), 0, loop.symbol(), -1);
+        int end = length - 1;
+        block(loop.body());
+        emit(Opcodes.JUMP, loop.offset(), 0, next);
+
+        // NEXT pops the iterator when it jumps out of the loop
+        stackDepth--;
+        patch(end);
+    }
+
+    private void store(int symbol, int offset) {
+        slotCount = Math.max(slotCount, symbol + 1);
+        emit(Opcodes.STORE, offset, -1, symbol);
+    }
+
+    private Void pushNull(Node node) {
+        emit(Opcodes.CONST, node.offset(), 1, constant(null));
+        return null;
+    }
+
+    private int constant(Object value) {
+        return constantIndices.computeIfAbsent(value, key -> {
+            constants.add(key);
+            return constants.size() - 1;
+        });
+    }
+
+    /**
+     * @return index of the jump target operand, to be patched once the target is known
+     */
+    private int emitJump(int opcode, int offset, int stackEffect) {
+        emit(opcode, offset, stackEffect, -1);
+        return length - 1;
+    }
+
+    private void patch(int operand) {
+        code[operand] = length;
+    }
+
+    private void emit(int opcode, int offset, int stackEffect, int... operands) {
+        if (length + 1 + operands.length > code.length) {
+            code = Arrays.copyOf(code, code.length * 2 + operands.length);
+            positions = Arrays.copyOf(positions, code.length);
+        }
+
+        positions[length] = offset;
+        code[length++] = opcode;
+        for (int operand : operands) {
+            positions[length] = offset;
+            code[length++] = operand;
+        }
+
+        stackDepth += stackEffect;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+}
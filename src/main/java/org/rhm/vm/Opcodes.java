@@ -0,0 +1,39 @@
+package org.rhm.vm;
+
+/**
+ * Instruction set of the {@link VirtualMachine}. Each instruction is one int followed by its operands.
+ */
+public final class Opcodes {
+    /** {@code CONST index}: push constant {@code index} of the pool. */
+    public static final int CONST = 0;
+    /** {@code LOAD slot}: push the variable in {@code slot}. */
+    public static final int LOAD = 1;
+    /** {@code STORE slot}: pop a value into {@code slot}. */
+    public static final int STORE = 2;
+    /** Discard the top of the stack. */
+    public static final int POP = 3;
+    /** Duplicate the top of the stack. */
+    public static final int DUP = 4;
+    /** {@code OPERATOR code}: pop right and left operand, push the result of the operator with that code. */
+    public static final int OPERATOR = 5;
+    /** {@code CALL symbol count}: pop {@code count} arguments, push the result of the builtin named by {@code symbol}. */
+    public static final int CALL = 6;
+    /** {@code LIST count}: pop {@code count} elements, push them as a list. */
+    public static final int LIST = 7;
+    /** {@code JUMP target}: continue at instruction {@code target}. */
+    public static final int JUMP = 8;
+    /** {@code JUMP_IF_FALSE target}: pop a boolean, continue at {@code target} if it is false. */
+    public static final int JUMP_IF_FALSE = 9;
+    /** Pop a list, push an iterator over its elements. */
+    public static final int ITERATE = 10;
+    /** {@code NEXT slot target}: store the next element of the iterator on the stack, or pop it and jump when done. */
+    public static final int NEXT = 11;
+    /** Stop, the top of the stack (if any) is the result. */
+    public static final int HALT = 12;
+
+    static final String[] NAMES = {"CONST", "LOAD", "STORE", "POP", "DUP", "OPERATOR", "CALL", "LIST", "JUMP", "JUMP_IF_FALSE", "ITERATE", "NEXT", "HALT"};
+    static final int[] OPERAND_COUNTS = {1, 1, 1, 0, 0, 1, 2, 1, 1, 1, 0, 2, 0};
+
+    private Opcodes() {
+    }
+}
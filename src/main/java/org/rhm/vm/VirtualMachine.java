@@ -0,0 +1,175 @@
+package org.rhm.vm;
+
+import org.rhm.FunctionManager;
+import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+import org.rhm.SafeObject;
+import org.rhm.SourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Stack machine running {@link Bytecode}. Variables live in the {@link Interpreter}'s slots, so scripts can mix
+ * code run here with code run by the tree-walking evaluator.
+ */
+public class VirtualMachine {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualMachine.class);
+
+    private final Interpreter interpreter;
+    private final OperationManager operations;
+
+    public VirtualMachine(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.operations = interpreter.getContext().getOperationManager();
+    }
+
+    /**
+     * @return the value left on the stack when the code halts, or null if there is none
+     */
+    public Object run(Bytecode bytecode) {
+        final int[] code = bytecode.code();
+        final Object[] constants = bytecode.constants();
+        final Object[] stack = new Object[bytecode.maxStack() + 1];
+        final Object[] slots = interpreter.getVariableSlots(bytecode.slotCount());
+        int sp = 0;
+        int pc = 0;
+
+        while (true) {
+            int instruction = pc;
+            switch (code[pc++]) {
+                case Opcodes.CONST -> stack[sp++] = constants[code[pc++]];
+                case Opcodes.LOAD -> {
+                    int slot = code[pc++];
+                    Object value = slots[slot];
+                    if (value == null) {
+                        String name = interpreter.getSymbols().name(slot);
+                        logger.error("Attempted to access an undefined variable: {}", name);
+                        throw error(bytecode, instruction, "Variable not defined: " + name);
+                    }
+                    stack[sp++] = value;
+                }
+                case Opcodes.STORE -> slots[code[pc++]] = stack[--sp];
+                case Opcodes.POP -> stack[--sp] = null;
+                case Opcodes.DUP -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+                case Opcodes.OPERATOR -> {
+                    OperationManager.Operator operator = operations.getOperator(code[pc++]);
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    stack[sp - 1] = operate(bytecode, instruction, operator, left, right);
+                }
+                case Opcodes.CALL -> {
+                    int symbol = code[pc++];
+                    int count = code[pc++];
+                    sp -= count;
+                    stack[sp] = call(bytecode, instruction, symbol, stack, sp, count);
+                    for (int i = sp + 1; i < sp + count; i++) {
+                        stack[i] = null;
+                    }
+                    sp++;
+                }
+                case Opcodes.LIST -> {
+                    int count = code[pc++];
+                    sp -= count;
+                    stack[sp] = list(bytecode, instruction, stack, sp, count);
+                    sp++;
+                }
+                case Opcodes.JUMP -> pc = code[pc];
+                case Opcodes.JUMP_IF_FALSE -> {
+                    Object condition = stack[--sp];
+                    if (!(condition instanceof Boolean b)) {
+                        logger.error("Condition must evaluate to a boolean value, but got {}", OperationManager.typeName(condition));
+                        throw error(bytecode, instruction, "Condition must evaluate to a boolean value.");
+                    }
+                    pc = b ? pc + 1 : code[pc];
+                }
+                case Opcodes.ITERATE -> {
+                    Object iterable = stack[sp - 1];
+                    if (!(iterable instanceof List<?> elements)) {
+                        logger.error("Expected a list for 'for' loop, but found {}", OperationManager.typeName(iterable));
+                        throw error(bytecode, instruction, "Expected a list for 'for' loop.");
+                    }
+                    stack[sp - 1] = elements.iterator();
+                }
+                case Opcodes.NEXT -> {
+                    Iterator<?> iterator = (Iterator<?>) stack[sp - 1];
+                    if (iterator.hasNext()) {
+                        Object element = iterator.next();
+                        slots[code[pc]] = element instanceof SafeObject safe ? safe.getAs(Object.class) : element;
+                        pc += 2;
+                    } else {
+                        stack[--sp] = null;
+                        pc = code[pc + 1];
+                    }
+                }
+                case Opcodes.HALT -> {
+                    return sp > 0 ? stack[sp - 1] : null;
+                }
+                default -> throw new IllegalStateException("Invalid opcode " + code[instruction] + " at " + instruction);
+            }
+        }
+    }
+
+    private Object operate(Bytecode bytecode, int instruction, OperationManager.Operator operator, Object left, Object right) {
+        try {
+            return operations.apply(operator, left, right);
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(bytecode, instruction, e.getMessage());
+        } catch (ClassCastException | NullPointerException e) {
+            throw error(bytecode, instruction, OperationManager.unsupportedOperands(operator, left, right));
+        }
+    }
+
+    private Object call(Bytecode bytecode, int instruction, int symbol, Object[] stack, int base, int count) {
+        FunctionManager.FunctionHandler function = interpreter.getFunction(symbol);
+        if (function == null) {
+            String name = interpreter.getSymbols().name(symbol);
+            logger.error("Call to unknown function {}", name);
+            throw error(bytecode, instruction, "Unknown function: " + name);
+        }
+
+        SafeObject[] arguments = new SafeObject[count];
+        for (int i = 0; i < count; i++) {
+            arguments[i] = new SafeObject(stack[base + i]);
+        }
+
+        try {
+            return function.execute(arguments);
+        } catch (SourceException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw error(bytecode, instruction, e.getMessage());
+        }
+    }
+
+    private Object list(Bytecode bytecode, int instruction, Object[] stack, int base, int count) {
+        List<SafeObject> elements = new ArrayList<>(count);
+        Class<?> elementType = null;
+
+        for (int i = 0; i < count; i++) {
+            Object element = stack[base + i];
+            stack[base + i] = null;
+            Class<?> type = element == null ? null : element.getClass();
+            if (i == 0) {
+                elementType = type;
+            } else if (elementType != type) {
+                logger.error("List element of type {} does not match {}", type, elementType);
+                throw error(bytecode, instruction, "List elements must all be of the same type.");
+            }
+            elements.add(new SafeObject(element));
+        }
+        return elements;
+    }
+
+    private SourceException error(Bytecode bytecode, int instruction, String message) {
+        return new SourceException(message, bytecode.position(instruction), interpreter.getParser().getSourceMap());
+    }
+}
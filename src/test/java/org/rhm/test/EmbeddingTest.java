@@ -0,0 +1,91 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.script.RhlCompiledScript;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.List;
+import java.util.Map;
+
+class EmbeddingTest {
+    private static final String RULE = "discount = 0;\nif (total > 100) { discount = total / 10; }\nfor (item in items) { count += 1; }";
+
+    @Test
+    void testCompiledScriptRunsWithFreshVariables() {
+        CompiledScript script = CompiledScript.compile(RULE);
+
+        Map<String, Object> first = script.run(Map.of("total", 250, "items", List.of(1, 2), "count", 0));
+        assertEquals(25, first.get("discount"));
+        assertEquals(2, first.get("count"));
+
+        Map<String, Object> second = script.run(Map.of("total", 50, "items", List.of(), "count", 7));
+        assertEquals(0, second.get("discount"));
+        assertEquals(7, second.get("count"));
+        assertFalse(second.containsKey("item"));
+
+        // undefined inputs fail each run on its own
+        assertThrows(IllegalArgumentException.class, () -> script.run(Map.of("items", List.of())));
+        assertEquals(25, script.run(Map.of("total", 250, "items", List.of(), "count", 0)).get("discount"));
+    }
+
+    @Test
+    void testEnginesAgreeOnCompiledScript() {
+        CompiledScript script = CompiledScript.compile("s = 0; i = 0; while (i < 300) { s += i * 3; i += 1; }");
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            assertEquals(134550, script.run(Map.of(), engine).get("s"), engine.name());
+        }
+
+        // the last top-level statement gives the value of a run
+        script = CompiledScript.compile("fn twice(x) { return x * 2; }\ns = 0; i = 0; while (i < 300) { s += i; i += 1; }\ntwice(s) + 1;");
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Interpreter interpreter = script.newInterpreter(Map.of());
+            interpreter.setEngine(engine);
+            assertEquals(89701, script.execute(interpreter), engine.name());
+            assertEquals(44850, interpreter.getVariableValue("s"), engine.name());
+        }
+        assertNull(CompiledScript.compile("").execute(CompiledScript.compile("").newInterpreter()));
+    }
+
+    @Test
+    void testScriptEngineCompilesOnce() throws ScriptException {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("rhlang");
+        assertNotNull(engine);
+        RhlCompiledScript compiled = (RhlCompiledScript) ((Compilable) engine).compile(RULE);
+
+        for (int total : new int[]{90, 300, 120}) {
+            Bindings bindings = engine.createBindings();
+            bindings.put("total", total);
+            bindings.put("items", List.of("a"));
+            bindings.put("count", 0);
+            // the rule ends with a loop, which has no value
+            assertNull(compiled.eval(bindings));
+            assertEquals(total > 100 ? total / 10 : 0, bindings.get("discount"));
+            assertEquals(1, bindings.get("count"));
+        }
+
+        engine.put("total", 500);
+        engine.put("items", List.of());
+        assertEquals(true, engine.eval("big = total > 100;"));
+        assertEquals(true, engine.get("big"));
+        assertEquals(1000, engine.eval("half = total / 2;\nhalf * 4;"));
+        assertEquals(250, engine.get("half"));
+    }
+
+    @Test
+    void testScriptErrorsCarryPositions() {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByExtension("rhl");
+        ScriptException error = assertThrows(ScriptException.class, () -> ((Compilable) engine).compile("a = 1;\nb = (a + 2 3);"));
+        assertEquals(2, error.getLineNumber());
+        assertEquals(12, error.getColumnNumber());
+
+        assertThrows(ScriptException.class, () -> engine.eval("a = missing + 1;"));
+    }
+}
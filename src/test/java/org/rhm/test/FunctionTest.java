@@ -0,0 +1,129 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.Parser;
+import org.rhm.ScriptCache;
+import org.rhm.SourceException;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+class FunctionTest {
+    private static final String FUNCTIONS = "scale = 3;\n"
+            + "fn add(a, b) { c = a + b * scale; return c; }\n"
+            + "fn fact(n, acc) { if (n <= 1) { return acc; } return fact(n - 1, acc * n); }\n"
+            + "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }\n"
+            + "fn firstOver(list, limit) { for (x in list) { if (x > limit) { return x; } } return -1; }\n"
+            + "fn even(n) { if (n == 0) { return true; } return odd(n - 1); }\n"
+            + "fn odd(n) { if (n == 0) { return false; } return even(n - 1); }\n";
+
+    @Test
+    void testCallsAndLocals() {
+        Interpreter interpreter = Scripts.run(FUNCTIONS + "r = add(1, 2); f = fact(10, 1); g = fib(15); o = firstOver([1, 5, 9], 4); n = firstOver([1], 4);");
+
+        assertEquals(7, interpreter.getVariableValue("r"));
+        assertEquals(3628800, interpreter.getVariableValue("f"));
+        assertEquals(610, interpreter.getVariableValue("g"));
+        assertEquals(5, interpreter.getVariableValue("o"));
+        assertEquals(-1, interpreter.getVariableValue("n"));
+        // parameters and assigned variables stay in the frame
+        assertThrows(IllegalArgumentException.class, () -> interpreter.getVariableValue("c"));
+        assertThrows(IllegalArgumentException.class, () -> interpreter.getVariableValue("x"));
+    }
+
+    @Test
+    void testTailCallsRunInConstantStackDepth() {
+        Interpreter interpreter = Scripts.run(FUNCTIONS + "fn count(n, acc) { if (n == 0) { return acc; } return count(n - 1, acc + 1); }\n"
+                + "deep = count(1000000, 0); parity = even(300001);");
+
+        assertEquals(1000000, interpreter.getVariableValue("deep"));
+        assertEquals(false, interpreter.getVariableValue("parity"));
+    }
+
+    @Test
+    void testArgumentsSurviveStackGrowth() {
+        // the argument's recursion grows the frame stack past its initial 256 slots before the argument is stored
+        String source = "fn depth(n) { if (n == 0) { return 0; } return 1 + depth(n - 1); }\n"
+                + "fn id(x) { return x; }\n"
+                + "fn tail(n) { return id(depth(n)); }\n";
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Map<String, Object> variables = CompiledScript.compile(source + "a = id(depth(400)); b = tail(400);").run(Map.of(), engine);
+            assertEquals(400, variables.get("a"), engine.name());
+            assertEquals(400, variables.get("b"), engine.name());
+        }
+    }
+
+    @Test
+    void testDeepRecursionFailsAtTheCallSite() throws InterruptedException {
+        String source = "fn d(n) { if (n == 0) { return 0; } return 1 + d(n - 1); }\nr = d(100000);\ns = d(10);\n";
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Interpreter interpreter = Scripts.interpreter(source, engine);
+            SourceException error = assertThrows(SourceException.class, interpreter::interpret, engine.name());
+            assertEquals("1:48: Recursion too deep", error.getMessage(), engine.name());
+            // the failed call unwound its frames, so the next statement runs on the same interpreter
+            interpreter.interpret();
+            assertEquals(10, interpreter.getVariableValue("s"), engine.name());
+        }
+
+        // with a Java stack large enough for the limit, the frame depth is what stops the recursion
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> failure[0] = assertThrows(SourceException.class,
+                () -> Scripts.run(source, Interpreter.Engine.BYTECODE)), "deep", 1L << 30);
+        thread.start();
+        thread.join();
+        assertEquals("1:48: Recursion too deep", failure[0].getMessage());
+    }
+
+    @Test
+    void testEnginesAgree() {
+        CompiledScript script = CompiledScript.compile(FUNCTIONS + "i = 0; s = 0; while (i < 400) { s += add(i, 1) + fact(3, 1); i += 1; }");
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            assertEquals(83400, script.run(Map.of(), engine).get("s"), engine.name());
+        }
+    }
+
+    @Test
+    void testDefinitionsEvaluatedAsExpressions() {
+        for (Interpreter.Engine engine : List.of(Interpreter.Engine.BYTECODE, Interpreter.Engine.JVM)) {
+            Interpreter interpreter = Scripts.interpreter("fn twice(a) { return a * 2; } x = twice(21)", engine);
+            Parser parser = interpreter.getParser();
+
+            assertNull(parser.parseExpression(), engine.name());
+            parser.parseExpression();
+            assertEquals(42, interpreter.getVariableValue("x"), engine.name());
+        }
+    }
+
+    @Test
+    void testErrors() {
+        SourceException error = assertThrows(SourceException.class, () -> Scripts.run("fn f(a) { return a; }\nx = f(1, 2);"));
+        assertEquals("2:5: Function f expects 1 arguments but got 2.", error.getMessage());
+
+        error = assertThrows(SourceException.class, () -> Scripts.run("fn f() { return missing; }\nx = f();"));
+        assertEquals("1:17: Variable not defined: missing", error.getMessage());
+
+        error = assertThrows(SourceException.class, () -> Scripts.run("fn sqrt(a) { return a; }"));
+        assertEquals("1:1: Cannot redefine builtin function: sqrt", error.getMessage());
+
+        assertThrows(SourceException.class, () -> Scripts.run("if (true) { fn f() { } }"));
+        assertThrows(SourceException.class, () -> Scripts.run("return 1;"));
+        assertThrows(SourceException.class, () -> Scripts.run("fn f(a, a) { }"));
+    }
+
+    @Test
+    void testCachedFunctions(@TempDir Path directory) {
+        String source = FUNCTIONS + "r = fact(6, 1);";
+        new ScriptCache(directory).load(source);
+        ScriptCache cache = new ScriptCache(directory);
+        CompiledScript cached = cache.load(source);
+
+        assertEquals(1, cache.getHits());
+        assertEquals(720, cached.run(Map.of()).get("r"));
+    }
+}
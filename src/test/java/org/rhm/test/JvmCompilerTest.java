@@ -0,0 +1,104 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.Parser;
+import org.rhm.SourceException;
+import org.rhm.ast.Node;
+import org.rhm.jit.JvmCode;
+import org.rhm.jit.JvmCodeCache;
+import org.rhm.jit.JvmCompiler;
+
+import java.util.Map;
+
+class JvmCompilerTest {
+
+    private static final String PROGRAM = "i = 0; total = 0; while (i < 3000) { i += 1; if (i % 2 == 0) { total += i; } } "
+            + "for (x in [1, 2, 3]) { last = x * 10; } m = max(last, 5) + 1; big = 3000000000 + i;";
+
+    @Test
+    void testAheadOfTimeMatchesInterpreter() {
+        Interpreter tree = Scripts.interpreter(PROGRAM, Interpreter.Engine.TREE);
+        tree.getTierUp().setThreshold(0);
+        tree.interpret();
+        Interpreter jvm = Scripts.interpreter(PROGRAM, Interpreter.Engine.JVM);
+        jvm.interpret();
+
+        for (String name : new String[]{"i", "total", "last", "m", "big"}) {
+            assertEquals(tree.getVariableValue(name), jvm.getVariableValue(name), name);
+        }
+        assertEquals(2_251_500, jvm.getVariableValue("total"));
+    }
+
+    @Test
+    void testHotLoopTiersUpMidLoop() {
+        Interpreter interpreter = Scripts.interpreter("i = 0; while (i < 5000) { i += 1; }", Interpreter.Engine.TREE);
+        interpreter.getTierUp().setThreshold(1000);
+        Node program = interpreter.getParser().getAstParser().parseProgram();
+
+        interpreter.execute(program);
+
+        assertEquals(5000, interpreter.getVariableValue("i"));
+        Node loop = ((org.rhm.ast.Block) program).statements().get(1);
+        assertNotNull(interpreter.tierUp(loop, 0), "loop should have been compiled");
+    }
+
+    @Test
+    void testGeneratedClassIsHidden() {
+        Interpreter interpreter = Scripts.interpreter("a = 2; b = a * 21", Interpreter.Engine.JVM);
+        Parser parser = interpreter.getParser();
+        parser.getAstParser().parseStatement();
+        interpreter.setVariableValue("a", 2);
+
+        JvmCode code = JvmCompiler.compile(parser.getAstParser().parseStatement(), interpreter.getContext().getOperationManager());
+
+        assertEquals(42, code.run(interpreter));
+        assertEquals(42, interpreter.getVariableValue("b"));
+        assertTrue(code.isCurrent());
+    }
+
+    @Test
+    void testScriptsCompileOnceForAllRuns() {
+        CompiledScript script = CompiledScript.compile(PROGRAM + " missing();");
+        JvmCodeCache cache = script.newInterpreter().getTierUp().getCache();
+
+        // every statement is compiled before the first one runs
+        assertThrows(SourceException.class, () -> script.run(Map.of(), Interpreter.Engine.JVM));
+        int statements = script.getProgram().statements().size();
+        assertEquals(statements, cache.getCompilations());
+
+        script.getContext().getOperationManager().registerOperator("<~>", (left, right) -> left);
+        assertThrows(SourceException.class, () -> script.run(Map.of(), Interpreter.Engine.JVM));
+        assertThrows(SourceException.class, () -> script.run(Map.of(), Interpreter.Engine.JVM));
+        // registering an operator invalidates the code once
+        assertEquals(2 * statements, cache.getCompilations());
+
+        CompiledScript loop = CompiledScript.compile("i = 0; while (i < 30000) { i += 1; }");
+        JvmCodeCache loops = loop.newInterpreter().getTierUp().getCache();
+        for (int run = 0; run < 5; run++) {
+            assertEquals(30000, loop.run(Map.of()).get("i"));
+        }
+        // the hot loop was compiled by the first run and reused by the others
+        assertEquals(1, loops.getCompilations());
+    }
+
+    @Test
+    void testErrorsReportSourcePosition() {
+        SourceException error = assertThrows(SourceException.class,
+                () -> Scripts.interpreter("a = 1;\nb = a + c;", Interpreter.Engine.JVM).interpret());
+        assertEquals("Variable not defined: c", error.getDiagnostic().message());
+        assertEquals(2, error.getDiagnostic().line());
+        assertEquals(9, error.getDiagnostic().column());
+
+        error = assertThrows(SourceException.class,
+                () -> Scripts.interpreter("a = [1] - true;", Interpreter.Engine.JVM).interpret());
+        assertTrue(error.getMessage().startsWith("1:9: Unsupported operand"), error.getMessage());
+
+        error = assertThrows(SourceException.class,
+                () -> Scripts.interpreter("for (x in 3) { y = x; }", Interpreter.Engine.JVM).interpret());
+        assertEquals("Expected a list for 'for' loop.", error.getDiagnostic().message());
+    }
+}
@@ -0,0 +1,313 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.Diagnostics;
+import org.rhm.Lexer;
+import org.rhm.ParallelLexer;
+import org.rhm.RuntimeContext;
+import org.rhm.SourceException;
+import org.rhm.SourceMap;
+import org.rhm.StreamingLexer;
+import org.rhm.SymbolTable;
+import org.rhm.tokens.ParenthesisTokenHandler;
+import org.rhm.tokens.TokenBuffer;
+import org.rhm.tokens.TokenManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LexerTest {
+
+    private final Lexer lexer = new Lexer();
+
+    @Test
+    void testTokenStream() {
+        List<Lexer.Token<?>> tokens = lexer.tokenize("a = [1, -2]; ~ comment\nprintln(\"x\", a)");
+
+        assertTypes(tokens,
+                Lexer.TokenType.IDENTIFIER, Lexer.TokenType.OPERATOR, Lexer.TokenType.PARENTHESIS,
+                Lexer.TokenType.INTEGER, Lexer.TokenType.COMMA, Lexer.TokenType.INTEGER,
+                Lexer.TokenType.PARENTHESIS, Lexer.TokenType.SEMICOLON, Lexer.TokenType.COMMENT,
+                Lexer.TokenType.IDENTIFIER, Lexer.TokenType.PARENTHESIS, Lexer.TokenType.STRING,
+                Lexer.TokenType.COMMA, Lexer.TokenType.IDENTIFIER, Lexer.TokenType.PARENTHESIS,
+                Lexer.TokenType.EOF);
+        assertEquals(-2, tokens.get(5).getAs(Integer.class));
+        assertEquals(ParenthesisTokenHandler.ParenthesisType.SQUARE_RIGHT, tokens.get(6).getAs(ParenthesisTokenHandler.ParenthesisType.class));
+        assertEquals("comment", tokens.get(8).getAs(String.class));
+    }
+
+    @Test
+    void testNumericLiterals() {
+        List<Lexer.Token<?>> tokens = lexer.tokenize("1.5 -0.25f 2e3 1_000 3000000000 7L 0x7fFFffFF 0xFFFFFFFF 0b1010 1.1d -9223372036854775808");
+
+        assertTypes(tokens,
+                Lexer.TokenType.FLOAT, Lexer.TokenType.FLOAT, Lexer.TokenType.FLOAT, Lexer.TokenType.INTEGER,
+                Lexer.TokenType.LONG, Lexer.TokenType.LONG, Lexer.TokenType.INTEGER, Lexer.TokenType.INTEGER,
+                Lexer.TokenType.INTEGER, Lexer.TokenType.DOUBLE, Lexer.TokenType.LONG, Lexer.TokenType.EOF);
+        assertEquals(1.5f, tokens.get(0).getAs(Float.class));
+        assertEquals(-0.25f, tokens.get(1).getAs(Float.class));
+        assertEquals(2000f, tokens.get(2).getAs(Float.class));
+        assertEquals(1000, tokens.get(3).getAs(Integer.class));
+        assertEquals(3_000_000_000L, tokens.get(4).getAs(Long.class));
+        assertEquals(7L, tokens.get(5).getAs(Long.class));
+        assertEquals(Integer.MAX_VALUE, tokens.get(6).getAs(Integer.class));
+        assertEquals(-1, tokens.get(7).getAs(Integer.class));
+        assertEquals(10, tokens.get(8).getAs(Integer.class));
+        assertEquals(1.1d, tokens.get(9).getAs(Double.class));
+        assertEquals(Long.MIN_VALUE, tokens.get(10).getAs(Long.class));
+    }
+
+    @Test
+    void testNumericLiteralsRoundCorrectly() {
+        String[] literals = {"0.1", "3.14159", "1e-7", "123456.789", "0.30000000000000004", "1.7976931348623157e308", "4.9e-324", "9007199254740993",
+                "9999999999999999999", "12345678901234567890123"};
+
+        for (String literal : literals) {
+            assertEquals(Float.parseFloat(literal), lexer.tokenize(literal + "f").get(0).getAs(Float.class), literal);
+            assertEquals(Double.parseDouble(literal), lexer.tokenize(literal + "d").get(0).getAs(Double.class), literal);
+        }
+        assertThrows(IllegalArgumentException.class, () -> lexer.tokenize("99999999999999999999"));
+        assertThrows(IllegalArgumentException.class, () -> lexer.tokenize("0x"));
+        for (String malformed : new String[]{"1_", "1__0", "1.5e", "2e+", "1.5_", "0x1_"}) {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> lexer.tokenize(malformed), malformed);
+            assertTrue(error.getMessage().contains("Invalid number format"), error.getMessage());
+        }
+    }
+
+    @Test
+    void testOperatorLongestMatch() {
+        List<Lexer.Token<?>> tokens = lexer.tokenize("a<<=b>=c");
+
+        assertTypes(tokens,
+                Lexer.TokenType.IDENTIFIER, Lexer.TokenType.OPERATOR, Lexer.TokenType.OPERATOR,
+                Lexer.TokenType.IDENTIFIER, Lexer.TokenType.OPERATOR, Lexer.TokenType.IDENTIFIER,
+                Lexer.TokenType.EOF);
+        assertEquals("<<", tokens.get(1).getAs(String.class));
+        assertEquals("=", tokens.get(2).getAs(String.class));
+        assertEquals(">=", tokens.get(4).getAs(String.class));
+    }
+
+    @Test
+    void testOperatorRegisteredAtRuntime() {
+        RuntimeContext context = new RuntimeContext();
+        context.getOperationManager().registerOperator("<=>", (left, right) -> Float.compare(((Number) left).floatValue(), ((Number) right).floatValue()));
+
+        List<Lexer.Token<?>> tokens = new Lexer(context).tokenize("1<=>2");
+
+        assertTypes(tokens, Lexer.TokenType.INTEGER, Lexer.TokenType.OPERATOR, Lexer.TokenType.INTEGER, Lexer.TokenType.EOF);
+        assertEquals("<=>", tokens.get(1).getAs(String.class));
+    }
+
+    @Test
+    void testKeywordsRespectWordBoundaries() {
+        List<Lexer.Token<?>> tokens = lexer.tokenize("for format true trueValue while_");
+
+        assertTypes(tokens,
+                Lexer.TokenType.KEYWORD, Lexer.TokenType.IDENTIFIER, Lexer.TokenType.BOOLEAN,
+                Lexer.TokenType.IDENTIFIER, Lexer.TokenType.IDENTIFIER, Lexer.TokenType.EOF);
+        assertEquals("format", tokens.get(1).getAs(String.class));
+        assertEquals(true, tokens.get(2).getAs(Boolean.class));
+        assertEquals("trueValue", tokens.get(3).getAs(String.class));
+    }
+
+    @Test
+    void testStreamingMatchesTokenize() throws IOException {
+        String source = "x = \"" + "s".repeat(100_000) + "\"\n~* block\ncomment *~ y <= 42 format";
+        List<Lexer.Token<?>> expected = lexer.tokenize(source);
+
+        List<Lexer.Token<?>> streamed = new ArrayList<>();
+        try (StreamingLexer streamingLexer = new StreamingLexer(new StringReader(source))) {
+            streamingLexer.forEachRemaining(streamed::add);
+        }
+
+        assertEquals(expected.toString(), streamed.toString());
+    }
+
+    @Test
+    void testCompactBufferMatchesTokenize() {
+        String source = "a = 1 + 1; b = \"a\" if (a >= 2) { println(\"{}\", b) }";
+        List<Lexer.Token<?>> expected = lexer.tokenize(source);
+        TokenBuffer buffer = lexer.tokenizeCompact(source);
+
+        assertEquals(expected.toString(), buffer.toString());
+        assertEquals(Lexer.TokenType.OPERATOR, buffer.type(3));
+        assertEquals("+", source.substring(buffer.start(3), buffer.end(3)));
+
+        // repeated identifiers, literals and operators share one pool entry
+        TokenBuffer repeated = lexer.tokenizeCompact("x = x + 1; ".repeat(100));
+        assertEquals(601, repeated.size());
+        assertEquals(5, repeated.literalCount());
+    }
+
+    @Test
+    void testIdentifiersAreInterned() {
+        List<Lexer.Token<?>> tokens = lexer.tokenize("count = count + \"count\"; other");
+        SymbolTable symbols = lexer.getSymbols();
+
+        assertEquals(tokens.get(0).symbol, tokens.get(2).symbol);
+        assertEquals(tokens.get(0).symbol, tokens.get(4).symbol);
+        assertSame(tokens.get(0).getAs(String.class), tokens.get(2).getAs(String.class));
+        assertEquals("other", symbols.name(tokens.get(6).symbol));
+        assertEquals(SymbolTable.NO_SYMBOL, tokens.get(1).symbol);
+        assertEquals(2, symbols.size());
+    }
+
+    @Test
+    void testConcurrentLexing() throws Exception {
+        StringBuilder literals = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            literals.append("n = ").append(i).append(";\n");
+        }
+        String source = "total = 0 for (x in [1, 2, 3]) { total = total + x; } println(\"{}\", total == 6)\n".repeat(200) + literals;
+        String expected = lexer.tokenize(source).toString();
+        // lexers of one context share its registries and token cache
+        RuntimeContext context = lexer.getContext();
+        TokenManager.CacheStats before = context.getTokenManager().getCacheStats();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> new Lexer(context).tokenize(source).toString()));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        TokenManager.CacheStats after = context.getTokenManager().getCacheStats();
+        assertTrue(after.hits() > before.hits());
+        // the distinct literals overflow the cache, evictions keep it bounded
+        assertTrue(after.misses() - before.misses() > 1024);
+        assertTrue(after.cacheSize() <= 1024, "cache size " + after.cacheSize());
+    }
+
+    @Test
+    void testRepeatedLiteralsShareTokens() {
+        List<Lexer.Token<?>> tokens = lexer.tokenize("x = 1.5; y = 1.5 + 1.5d");
+        assertSame(tokens.get(2), tokens.get(6));
+        assertNotSame(tokens.get(6), tokens.get(8));
+
+        // names are only shared when there is no symbol table to intern them into
+        TokenManager manager = lexer.getContext().getTokenManager();
+        Lexer.Token<?> name = manager.handleToken("x", new AtomicInteger());
+        assertSame(name, manager.handleToken("x", new AtomicInteger()));
+        assertNotSame(name, manager.handleToken("\"x\"", new AtomicInteger()));
+    }
+
+    @Test
+    void testParallelMatchesTokenize() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            source.append("v").append(i % 500).append(" = \"line\n").append(i).append("\" ~* multi\nline *~ + 15\n");
+            if (i % 5000 == 0) {
+                source.append("~*\n").append("inside comment \" ~\n".repeat(20_000)).append("*~\n");
+                source.append("\"").append("inside string ~* \n".repeat(20_000)).append("\"\n");
+            }
+        }
+
+        Lexer sequential = new Lexer();
+        Lexer parallel = new Lexer();
+        List<Lexer.Token<?>> expected = sequential.tokenize(source);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Lexer.Token<?>> tokens = new ParallelLexer(parallel, pool).tokenize(source);
+
+            assertEquals(expected.toString(), tokens.toString());
+            for (int i = 0; i < tokens.size(); i++) {
+                assertEquals(expected.get(i).symbol, tokens.get(i).symbol);
+            }
+            assertEquals(sequential.getSymbols().size(), parallel.getSymbols().size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testInvalidCharacter() {
+        assertThrows(IllegalArgumentException.class, () -> lexer.tokenize("a = $"));
+
+        SourceException error = assertThrows(SourceException.class, () -> lexer.tokenizeCompact("a = 1;\nb = $"));
+        assertEquals(2, error.getDiagnostic().line());
+        assertEquals(5, error.getDiagnostic().column());
+        assertEquals(0, error.getStackTrace().length);
+    }
+
+    @Test
+    void testTokenPositions() {
+        String source = "a = 1;\n~* block\ncomment *~\nprintln(\"x\ny\", a)";
+        TokenBuffer tokens = lexer.tokenizeCompact(source);
+        SourceMap sourceMap = tokens.getSourceMap();
+
+        assertEquals(5, sourceMap.lineCount());
+        int println = 5;
+        assertEquals("println", tokens.value(println));
+        assertEquals(4, sourceMap.line(tokens.start(println)));
+        assertEquals(1, sourceMap.column(tokens.start(println)));
+        assertEquals(5, sourceMap.line(tokens.start(println + 4)));
+        assertEquals(5, sourceMap.column(tokens.start(println + 4)));
+
+        try (StreamingLexer streaming = new StreamingLexer(new StringReader(source))) {
+            for (int i = 0; i <= println; i++) {
+                streaming.next();
+            }
+            assertEquals(tokens.start(println), streaming.getTokenStart());
+            assertEquals(4, streaming.getSourceMap().line(streaming.getTokenStart()));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    void testDiagnosticsCollectAllErrors() {
+        Diagnostics diagnostics = new Diagnostics();
+        TokenBuffer tokens = lexer.tokenizeCompact("a = $;\nb = 0x;\nc = 1 @ 2", diagnostics);
+
+        assertEquals(3, diagnostics.getDiagnostics().size());
+        assertEquals("1:5: Invalid character: $", diagnostics.getDiagnostics().get(0).toString());
+        assertEquals(2, diagnostics.getDiagnostics().get(1).line());
+        assertEquals(3, diagnostics.getDiagnostics().get(2).line());
+        assertEquals(7, diagnostics.getDiagnostics().get(2).column());
+        assertEquals(Lexer.TokenType.EOF, tokens.type(tokens.size() - 1));
+    }
+
+    @Test
+    void testBracketPairs() {
+        TokenBuffer tokens = lexer.tokenizeCompact("while (a < [1, (2)][0]) { if (b) { c = 1; } }");
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) == Lexer.TokenType.PARENTHESIS) {
+                int match = tokens.matching(i);
+                assertEquals(i, tokens.matching(match));
+                ParenthesisTokenHandler.ParenthesisType type = (ParenthesisTokenHandler.ParenthesisType) tokens.value(i);
+                ParenthesisTokenHandler.ParenthesisType other = (ParenthesisTokenHandler.ParenthesisType) tokens.value(match);
+                assertSame(type.isOpening() ? type.closing() : type, type.isOpening() ? other : other.closing());
+            } else {
+                assertEquals(TokenBuffer.NO_MATCH, tokens.matching(i));
+            }
+        }
+
+        Diagnostics diagnostics = new Diagnostics();
+        lexer.tokenizeCompact("a = (1]);\nif (a) {\n  b = 2;\n", diagnostics);
+        assertEquals(List.of("1:7: Expected ')' to close '(' from 1:5 but found ']'.", "1:8: Unmatched ')'.", "2:8: Unclosed '{'."),
+                diagnostics.getDiagnostics().stream().map(Object::toString).toList());
+    }
+
+    private void assertTypes(List<Lexer.Token<?>> tokens, Lexer.TokenType... types) {
+        assertEquals(types.length, tokens.size(), () -> "Unexpected token stream: " + tokens);
+        for (int i = 0; i < types.length; i++) {
+            assertEquals(types[i], tokens.get(i).type, "Token " + i);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.Interpreter;
+import org.rhm.SourceException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class LoopOptimizerTest {
+
+    private Interpreter run(String source, boolean optimizing) {
+        Interpreter interpreter = Scripts.interpreter(source);
+        interpreter.setOptimizing(optimizing);
+        interpreter.getTierUp().setThreshold(0);
+        interpreter.interpret();
+        return interpreter;
+    }
+
+    private void assertSameResults(String source, String... names) {
+        Interpreter plain = run(source, false);
+        Interpreter optimized = run(source, true);
+        for (String name : names) {
+            assertEquals(plain.getVariableValue(name), optimized.getVariableValue(name), name);
+        }
+    }
+
+    @Test
+    void testHoistsInvariantsAndReducesInductions() {
+        String source = "a = [1, 2, 3]; n = 10; i = 0; t = 0; while (i < n * 2) { t += i * 3 + len(a) * sqrt(n); i += 1; }";
+        Interpreter interpreter = run(source, true);
+
+        List<String> report = interpreter.getLoopOptimizer().getReport();
+        assertEquals(3, report.size(), report.toString());
+        assertTrue(report.get(0).startsWith("1:38: hoisted (n * 2) out of while loop"), report.get(0));
+        assertTrue(report.get(1).contains("hoisted (len(a) * sqrt(n))"), report.get(1));
+        assertTrue(report.get(2).contains("reduced (i * 3) in while loop") && report.get(2).endsWith("+= 3"), report.get(2));
+        assertSameResults(source, "i", "t");
+    }
+
+    @Test
+    void testFloatingPointInductionKeepsOriginalLoop() {
+        assertSameResults("f = 0.1; s = 0; while (f < 50) { s += f * 3; f += 1; }", "f", "s");
+        assertSameResults("i = 2147483000; s = 0; while (i > 0) { s = i * 7; i += 100; }", "i", "s");
+    }
+
+    @Test
+    void testForLoops() {
+        assertSameResults("a = [3, 4, 5]; s = 0; k = 0; for (x in a) { s += x * len(a); k += 2; p = k * 5; }", "s", "k", "p");
+    }
+
+    @Test
+    void testLoopsThatNeverRunDoNotEvaluateHoistedCode() {
+        Interpreter interpreter = run("i = 5; while (i < 0) { x = len(undefined) + i * 2; i += 1; } "
+                + "for (y in []) { z = sqrt(missing); }", true);
+
+        assertEquals(5, interpreter.getVariableValue("i"));
+        assertFalse(interpreter.getLoopOptimizer().getReport().isEmpty());
+    }
+
+    @Test
+    void testErrorsMatchUnoptimizedLoops() {
+        SourceException error = assertThrows(SourceException.class, () -> run("for (x in 3) { y = len([1]) * 2; }", true));
+        assertEquals("Expected a list for 'for' loop.", error.getDiagnostic().message());
+        assertEquals(11, error.getDiagnostic().column());
+    }
+
+    @Test
+    void testInvariantsAfterExitsAreNotHoisted() {
+        String source = "fn f(x) { i = 0 while (i < 3) { if (i == 0) { return 7 } y = len(x) i += 1 } return 0 } r = f(5)";
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Interpreter interpreter = Scripts.interpreter(source, engine);
+            interpreter.getTierUp().setThreshold(0);
+            interpreter.interpret();
+            assertEquals(7, interpreter.getVariableValue("r"), engine.name());
+        }
+    }
+
+    @Test
+    void testInvariantsAfterSideEffectsAreNotHoisted() {
+        String source = "x = 5 i = 0 while (i < 3) { println(i) y = sqrt(x - \"a\") i += 1 }";
+        List<String> printed = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        PrintStream out = System.out;
+        try {
+            for (boolean optimizing : new boolean[]{false, true}) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(buffer, true));
+                errors.add(assertThrows(SourceException.class, () -> run(source, optimizing)).getMessage());
+                // log lines go to the same stream
+                printed.add(buffer.toString().lines().filter(line -> !line.startsWith("[")).collect(Collectors.joining("\n")));
+            }
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals("0", printed.get(0));
+        assertEquals(printed.get(0), printed.get(1));
+        assertEquals(errors.get(0), errors.get(1));
+    }
+}
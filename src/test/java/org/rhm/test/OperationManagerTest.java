@@ -0,0 +1,51 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.OperationManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+class OperationManagerTest {
+
+    @Test
+    void testDispatchMatchesHandlers() {
+        OperationManager manager = new OperationManager();
+        List<Object> operands = Arrays.asList(7, -3, 5_000_000_000L, 2.5f, 0.1d, "text", null);
+        for (String symbol : manager.getOperators()) {
+            if (symbol.equals("=")) {
+                continue;
+            }
+            OperationManager.Operator operator = manager.getOperator(symbol);
+            for (Object left : operands) {
+                for (Object right : operands) {
+                    Object expected;
+                    try {
+                        expected = operator.handler().parse(left, right);
+                    } catch (RuntimeException e) {
+                        assertThrows(e.getClass(), () -> manager.apply(operator, left, right), left + " " + symbol + " " + right);
+                        continue;
+                    }
+                    assertEquals(expected, manager.apply(operator, left, right), left + " " + symbol + " " + right);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCustomOperatorsDispatchToTheirHandlers() {
+        OperationManager manager = new OperationManager();
+        OperationManager.Operator builtin = manager.getOperator("+");
+        manager.registerOperator("+", (left, right) -> "replaced");
+        manager.registerOperator("<>", (left, right) -> left.equals(right) ? 0 : 1);
+
+        assertEquals("replaced", manager.apply(manager.getOperator("+"), 1, 2));
+        assertEquals(builtin.code(), manager.getOperator("+").code());
+        // a record of the replaced operator keeps running the builtin
+        assertEquals(3, manager.apply(builtin, 1, 2));
+        assertEquals(1, manager.apply(manager.getOperator("<>"), 1, 2L));
+        assertEquals(0, manager.apply(manager.getOperator("<>"), 1.5, 1.5));
+    }
+}
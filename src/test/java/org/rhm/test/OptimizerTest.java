@@ -0,0 +1,70 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.Interpreter;
+import org.rhm.Lexer;
+import org.rhm.Parser;
+import org.rhm.SourceException;
+import org.rhm.ast.Assign;
+import org.rhm.ast.Block;
+import org.rhm.ast.Call;
+import org.rhm.ast.Literal;
+import org.rhm.ast.Node;
+import org.rhm.ast.Optimizer;
+
+class OptimizerTest {
+
+    private Block optimize(String source) {
+        Parser parser = new Parser(new Lexer().tokenizeCompact(source));
+        new Interpreter(parser);
+        return (Block) new Optimizer(parser.getContext()).optimize(parser.getAstParser().parseProgram());
+    }
+
+    private Object foldedValue(Node statement) {
+        Node value = ((Assign) statement).value();
+        assertInstanceOf(Literal.class, value);
+        return ((Literal) value).value();
+    }
+
+    @Test
+    void testFoldsConstantExpressions() {
+        Block program = optimize("day = 60 * 60 * 24; root = sqrt(16) + abs(-2); big = 3000000000 + 1; half = 1 / 2.0;");
+
+        assertEquals(86400, foldedValue(program.statements().get(0)));
+        assertEquals(6.0, foldedValue(program.statements().get(1)));
+        assertEquals(3_000_000_001L, foldedValue(program.statements().get(2)));
+        assertEquals(0.5f, foldedValue(program.statements().get(3)));
+    }
+
+    @Test
+    void testKeepsSideEffectsAndVariables() {
+        Block program = optimize("a = b + 1 * 2; println(\"{}\", 1 + 1);");
+
+        assertInstanceOf(Call.class, program.statements().get(1));
+        Call call = (Call) program.statements().get(1);
+        assertEquals(2, ((Literal) call.arguments().get(1)).value());
+        assertFalse(((Assign) program.statements().get(0)).value() instanceof Literal);
+    }
+
+    @Test
+    void testDropsUnreachableBranches() {
+        Block program = optimize("if (false) { a = 1; b = 2; } while (1 > 2) { c = 3; } if (2 > 1) { d = 4; } e = 5;");
+
+        assertEquals(2, program.statements().size());
+        assertEquals("d", ((Assign) program.statements().get(0)).name());
+        assertEquals("e", ((Assign) program.statements().get(1)).name());
+    }
+
+    @Test
+    void testFailedFoldsReportAtRuntime() {
+        Parser parser = new Parser(new Lexer().tokenizeCompact("a = 1;\nb = 2 - true;"));
+        Interpreter interpreter = new Interpreter(parser);
+
+        SourceException error = assertThrows(SourceException.class, interpreter::interpret);
+        assertEquals(2, error.getDiagnostic().line());
+        assertEquals(1, interpreter.getVariableValue("a"));
+        assertEquals(0, interpreter.getOptimizer().getFolded());
+    }
+}
@@ -7,6 +7,10 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.rhm.Lexer;
 import org.rhm.Parser;
 import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+import org.rhm.SourceException;
+import org.rhm.ast.Block;
+import org.rhm.ast.WhileLoop;
 
 import java.util.Arrays;
 import java.util.List;
@@ -70,6 +74,91 @@ class ParserTest {
         assertEquals(10, result);
     }
 
+    @Test
+    void testNumericPromotion() {
+        parser.setTokens(new Lexer().tokenize("3000000000 + 1"));
+        assertEquals(3_000_000_001L, parser.parseExpression());
+
+        parser.setTokens(new Lexer().tokenize("0.1d + 0.2d"));
+        assertEquals(0.1d + 0.2d, parser.parseExpression());
+
+        parser.setTokens(new Lexer().tokenize("2 * 1.5"));
+        assertEquals(3f, parser.parseExpression());
+    }
+
+    @Test
+    void testErrorsReportSourcePosition() {
+        parser = new Parser(new Lexer().tokenizeCompact("a = 1;\nb = (a + 2 3);"));
+        interpreter = new Interpreter(parser);
+
+        SourceException error = assertThrows(SourceException.class, interpreter::interpret);
+        assertEquals(2, error.getDiagnostic().line());
+        assertEquals(12, error.getDiagnostic().column());
+
+        // unbalanced brackets are found while lexing, before anything runs
+        error = assertThrows(SourceException.class, () -> new Lexer().tokenizeCompact("a = 1;\nb = (a + 2;"));
+        assertEquals("2:5: Unclosed '('.", error.getMessage());
+    }
+
+    @Test
+    void testSyntaxTreeIsReusable() {
+        parser = new Parser(new Lexer().tokenizeCompact("i = 0; while (i < 1000) { i += 1; } for (x in [1, 2]) { last = x; }"));
+        interpreter = new Interpreter(parser);
+        Block program = parser.getAstParser().parseProgram();
+
+        assertEquals(3, program.statements().size());
+        assertInstanceOf(WhileLoop.class, program.statements().get(1));
+
+        interpreter.execute(program);
+        assertEquals(1000, interpreter.getVariableValue("i"));
+        assertEquals(2, interpreter.getVariableValue("last"));
+
+        interpreter.setVariableValue("i", 990);
+        interpreter.execute(program.statements().get(1));
+        assertEquals(1000, interpreter.getVariableValue("i"));
+    }
+
+    @Test
+    void testCallArgumentsAndConditions() {
+        parser = new Parser(new Lexer().tokenizeCompact("m = max(1, 2); if (m > 1) { big = true; } if (m > 5) { huge = true; }"));
+        interpreter = new Interpreter(parser);
+        interpreter.interpret();
+
+        assertEquals(2f, interpreter.getVariableValue("m"));
+        assertEquals(true, interpreter.getVariableValue("big"));
+        assertThrows(IllegalArgumentException.class, () -> interpreter.getVariableValue("huge"));
+    }
+
+    @Test
+    void testOperatorPrecedence() {
+        assertEquals(7, evaluate("1 + 2 * 3"));
+        assertEquals(3, evaluate("10 - 4 - 3"));
+        assertEquals(512f, evaluate("2 ^ 3 ^ 2"));
+        assertEquals(true, evaluate("1 + 2 < 2 * 2 && 3 > 2"));
+        assertEquals(20, evaluate("(1 + 4) * 4"));
+
+        evaluate("a = b = 2 + 3");
+        assertEquals(5, interpreter.getVariableValue("a"));
+        assertEquals(5, interpreter.getVariableValue("b"));
+    }
+
+    @Test
+    void testRegisteredOperatorPrecedence() {
+        OperationManager operations = parser.getContext().getOperationManager();
+        operations.registerOperator("**", 11, OperationManager.Associativity.RIGHT,
+                (left, right) -> (int) Math.pow((Integer) left, (Integer) right));
+
+        assertEquals(19, evaluate("1 + 2 * 3 ** 2"));
+        assertEquals(512, evaluate("2 ** 3 ** 2"));
+        assertEquals(11, operations.getOperator("**").precedence());
+        assertSame(operations.getOperator("**"), operations.getOperator(operations.getOperator("**").code()));
+    }
+
+    private Object evaluate(String source) {
+        parser.setTokens(new Lexer(parser.getContext()).tokenizeCompact(source));
+        return parser.parseExpression();
+    }
+
     private void parseAll(Parser parser) {
         while (parser.hasMoreTokens()) {
             parser.parseExpression();
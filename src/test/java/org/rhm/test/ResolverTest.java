@@ -0,0 +1,71 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.Lexer;
+import org.rhm.Parser;
+import org.rhm.SourceException;
+import org.rhm.ast.Resolver;
+import org.rhm.ast.Variable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+class ResolverTest {
+
+    private List<String> reads(String source) {
+        Parser parser = new Parser(new Lexer().tokenizeCompact(source));
+        Variable[] reads = new Resolver().resolve(parser.getAstParser().parseStatement());
+        return Arrays.stream(reads).map(Variable::name).toList();
+    }
+
+    @Test
+    void testFindsReadsBeforeAssignments() {
+        assertEquals(List.of("b", "c"), reads("a = b + c * b;"));
+        assertEquals(List.of("a"), reads("a = a + 1;"));
+        assertEquals(List.of("b"), reads("a = (c = 1) + b + c;"));
+        // the condition runs at least once, the body may not
+        assertEquals(List.of("i", "n"), reads("while (i < n) { total += i; i += 1; }"));
+        assertEquals(List.of("list"), reads("for (x in list) { y = x + missing; }"));
+    }
+
+    @Test
+    void testUndefinedVariablesFailBeforeTheStatementRuns() {
+        Parser parser = new Parser(new Lexer().tokenizeCompact("a = 1;\nb = (a = 2) + missing;"));
+        Interpreter interpreter = new Interpreter(parser);
+
+        SourceException error = assertThrows(SourceException.class, interpreter::interpret);
+        assertEquals("2:15: Variable not defined: missing", error.getMessage());
+        assertEquals(1, interpreter.getVariableValue("a"));
+    }
+
+    @Test
+    void testScriptsFailBeforeTheFirstStatementRuns() {
+        CompiledScript script = CompiledScript.compile("a = 1;\nsqrt(a);\nif (a == 1) { c = 2; }\nd = c + a;\nb = missing;");
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Interpreter interpreter = script.newInterpreter();
+            interpreter.setEngine(engine);
+
+            SourceException error = assertThrows(SourceException.class, () -> script.execute(interpreter));
+            assertEquals("5:5: Variable not defined: missing", error.getMessage());
+            assertThrows(IllegalArgumentException.class, () -> interpreter.getVariableValue("a"), engine.name());
+        }
+        // bindings define variables, assignments in bodies that may run do too
+        assertEquals(5, script.run(Map.of("missing", 5)).get("b"));
+        assertEquals(3, script.run(Map.of("missing", 5)).get("d"));
+    }
+
+    @Test
+    void testBodiesThatDoNotRunMayReadUndefinedVariables() {
+        Parser parser = new Parser(new Lexer().tokenizeCompact("a = 1; if (a == 2) { b = missing; } c = a;"));
+        Interpreter interpreter = new Interpreter(parser);
+        interpreter.interpret();
+
+        assertEquals(1, interpreter.getVariableValue("c"));
+        assertThrows(IllegalArgumentException.class, () -> interpreter.getVariableValue("b"));
+    }
+}
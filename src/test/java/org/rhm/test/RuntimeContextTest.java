@@ -0,0 +1,112 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.Lexer;
+import org.rhm.Parser;
+import org.rhm.RuntimeContext;
+import org.rhm.SourceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class RuntimeContextTest {
+    private static final String SCRIPT = "fn scale(x, k) { return x * k; }\n"
+            + "i = 0; total = 0; while (i < 500) { total += scale(i, k) <+> 1; i += 1; }";
+
+    @Test
+    void testOperatorsAreIsolatedPerContext() {
+        RuntimeContext context = new RuntimeContext();
+        context.getOperationManager().registerOperator("<+>", (left, right) -> (Integer) left + 2 * (Integer) right);
+
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer(context).tokenizeCompact("a = 1 <+> 2;"), context));
+        interpreter.interpret();
+        assertEquals(5, interpreter.getVariableValue("a"));
+
+        assertThrows(SourceException.class, () -> CompiledScript.compile("a = 1 <+> 2;", new RuntimeContext()));
+        assertNull(new RuntimeContext().getOperationManager().getOperator("<+>"));
+    }
+
+    @Test
+    void testConcurrentScriptsShareNoState() throws Exception {
+        Interpreter.Engine[] engines = Interpreter.Engine.values();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int script = i;
+                results.add(executor.submit(() -> {
+                    // every context gives the operator its own meaning
+                    RuntimeContext context = new RuntimeContext();
+                    context.getOperationManager().registerOperator("<+>", (left, right) -> (Integer) left + script * (Integer) right);
+                    CompiledScript compiled = CompiledScript.compile(SCRIPT, context);
+                    return compiled.run(Map.of("k", script % 7), engines[script % engines.length]).get("total");
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                int expected = 0;
+                for (int n = 0; n < 500; n++) {
+                    expected += n * (i % 7) + i;
+                }
+                assertEquals(expected, results.get(i).get(), "script " + i);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRegistrationWhileScriptsRun() throws Exception {
+        RuntimeContext context = new RuntimeContext();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(() -> CompiledScript.compile(SCRIPT.replace("<+>", "+"), context)
+                        .run(Map.of("k", 2)).get("total")));
+            }
+            for (int i = 0; i < 200; i++) {
+                int registered = i;
+                context.getFunctionManager().registerFunction("f" + i, args -> registered);
+                context.getKeywordManager().registerKeyword("kw" + i, context.getKeywordManager().keywordHandlers.get("if"));
+                context.getOperationManager().registerOperator("<" + "~".repeat(i + 1) + ">", (left, right) -> registered);
+            }
+            for (Future<Object> result : results) {
+                assertEquals(250000, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer(context).tokenizeCompact("a = f7() <~> 1;"), context));
+        interpreter.interpret();
+        assertEquals(0, interpreter.getVariableValue("a"));
+    }
+
+    @Test
+    void testRunsOfOneScriptShareNoState() throws Exception {
+        CompiledScript compiled = CompiledScript.compile(SCRIPT.replace("<+>", "+"));
+        assertNotSame(compiled.newInterpreter().getParser(), compiled.newInterpreter().getParser());
+
+        Interpreter.Engine[] engines = Interpreter.Engine.values();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int run = i;
+                results.add(executor.submit(() -> compiled.run(Map.of("k", run), engines[run % engines.length]).get("total")));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(124750 * i + 500, results.get(i).get(), "run " + i);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
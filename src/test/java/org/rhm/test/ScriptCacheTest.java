@@ -0,0 +1,87 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.CompiledScript;
+import org.rhm.Interpreter;
+import org.rhm.ScriptCache;
+import org.rhm.SourceException;
+import org.rhm.ast.AstPrinter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+class ScriptCacheTest {
+    private static final String SOURCE = "total = 0; i = 0;\nwhile (i < 10) { if (i % 2 == 0) { total += i * 2.5; } i += 1; }\n"
+            + "big = 3000000000; name = \"x\"; flag = true; for (n in [1, 2, 3]) { total += n; }";
+
+    @TempDir
+    Path directory;
+
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void testCachedScriptMatchesParsedScript() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+        CompiledScript parsed = cache.load(SOURCE);
+        CompiledScript cached = new ScriptCache(directory).load(SOURCE);
+
+        assertEquals(1, entries().size());
+        assertEquals(1, cache.getMisses());
+        assertEquals(AstPrinter.print(parsed.getProgram()), AstPrinter.print(cached.getProgram()));
+        assertEquals(parsed.getSourceMap().lineCount(), cached.getSourceMap().lineCount());
+        assertEquals(parsed.getProgram().statements().get(2).offset(), cached.getProgram().statements().get(2).offset());
+
+        Interpreter interpreter = cached.newInterpreter();
+        cached.execute(interpreter);
+        assertEquals(56.0f, interpreter.getVariableValue("total"));
+        assertEquals(3_000_000_000L, interpreter.getVariableValue("big"));
+        assertEquals(true, interpreter.getVariableValue("flag"));
+    }
+
+    @Test
+    void testHitsAndInvalidation() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+        cache.load(SOURCE);
+        cache.load(SOURCE);
+        assertEquals(1, cache.getHits());
+
+        // an edited script misses the entry of the old one
+        cache.load(SOURCE + " total += 1;");
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, entries().size());
+    }
+
+    @Test
+    void testDamagedEntryIsReplaced() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+        cache.load(SOURCE);
+        Path entry = entries().get(0);
+        byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+
+        CompiledScript script = cache.load(SOURCE);
+        assertEquals(2, cache.getMisses());
+        assertEquals(7, script.getProgram().statements().size());
+        assertEquals(bytes.length, Files.size(entry));
+    }
+
+    @Test
+    void testScriptsThatDoNotParseAreNotCached() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+        SourceException error = assertThrows(SourceException.class, () -> cache.load("a = 1;\nb = (a + 2 3);"));
+
+        assertEquals(2, error.getDiagnostic().line());
+        assertTrue(entries().isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+package org.rhm.test;
+
+import org.rhm.Interpreter;
+import org.rhm.Lexer;
+import org.rhm.Parser;
+
+/**
+ * Lexes and parses test scripts into interpreters.
+ */
+final class Scripts {
+
+    private Scripts() {
+    }
+
+    /**
+     * @return an interpreter for the source that has not run yet, so engine and tiering can still be configured
+     */
+    static Interpreter interpreter(String source) {
+        return new Interpreter(new Parser(new Lexer().tokenizeCompact(source)));
+    }
+
+    static Interpreter interpreter(String source, Interpreter.Engine engine) {
+        Interpreter interpreter = interpreter(source);
+        interpreter.setEngine(engine);
+        return interpreter;
+    }
+
+    static Interpreter run(String source) {
+        return run(source, Interpreter.Engine.TREE);
+    }
+
+    /**
+     * @return an interpreter after running the whole source on the given engine
+     */
+    static Interpreter run(String source, Interpreter.Engine engine) {
+        Interpreter interpreter = interpreter(source, engine);
+        interpreter.interpret();
+        return interpreter;
+    }
+}
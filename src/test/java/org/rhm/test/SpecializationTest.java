@@ -0,0 +1,84 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.Interpreter;
+import org.rhm.OperationManager;
+import org.rhm.ast.BinaryOperation;
+import org.rhm.ast.Block;
+import org.rhm.ast.Specialization;
+import org.rhm.ast.WhileLoop;
+
+import java.util.List;
+
+class SpecializationTest {
+
+    @Test
+    void testSpecializedResultsMatchHandlers() {
+        OperationManager operations = new OperationManager();
+        List<Object> operands = List.of(7, -3, 5_000_000_000L, 2.5f, 0.1d);
+        for (String symbol : List.of("+", "-", "*", "/", "%", "<", "<=", ">", ">=", "+=", "^", "==")) {
+            OperationManager.Operator operator = operations.getOperator(symbol);
+            for (Object left : operands) {
+                for (Object right : operands) {
+                    Specialization specialization = new Specialization(operator);
+                    Object expected = operator.handler().parse(left, right);
+                    // the first call specializes, the second runs the fast path
+                    assertEquals(expected, specialization.execute(operations, left, right), left + " " + symbol + " " + right);
+                    assertEquals(expected, specialization.execute(operations, left, right), left + " " + symbol + " " + right);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSpecializesAndDeoptimizes() {
+        OperationManager operations = new OperationManager();
+        Specialization specialization = new Specialization(operations.getOperator("+"));
+        assertFalse(specialization.isSpecialized());
+
+        assertEquals(3, specialization.execute(operations, 1, 2));
+        assertTrue(specialization.isSpecialized());
+        assertEquals("Integer, Integer", specialization.toString());
+
+        assertEquals(3.5f, specialization.execute(operations, 1, 2.5f));
+        assertTrue(specialization.isGeneric());
+        assertEquals(7, specialization.execute(operations, 3, 4));
+    }
+
+    @Test
+    void testLoopSpecializesOperators() {
+        Interpreter interpreter = Scripts.interpreter("i = 0; x = 0.5f; while (i < 100) { i += 1; x = x * 1.01f; }", Interpreter.Engine.SPECIALIZING);
+        interpreter.getTierUp().setThreshold(0);
+        Block program = interpreter.getParser().getAstParser().parseProgram();
+
+        interpreter.execute(program);
+
+        WhileLoop loop = (WhileLoop) program.statements().get(2);
+        BinaryOperation condition = (BinaryOperation) loop.condition();
+        assertEquals("Integer, Integer", condition.specialization().toString());
+        assertEquals(100, interpreter.getVariableValue("i"));
+
+        Interpreter reference = Scripts.run("i = 0; x = 0.5f; while (i < 100) { i += 1; x = x * 1.01f; }", Interpreter.Engine.TREE);
+        assertEquals(reference.getVariableValue("x"), interpreter.getVariableValue("x"));
+    }
+
+    @Test
+    void testNestedArithmeticMatchesTreeEngine() {
+        String source = "fn mix(a, b) { return a * 3 + b / 2 - a % 7 * (b - 1); }\n"
+                + "fn step(t, k) { return t * 1.5f + k / 4; }\n"
+                + "i = 0; total = 0; big = 0; x = 0.5f; small = 0; mixed = 0;\n"
+                + "while (i < 300) { total += mix(i, i + 2); big = big + i * 3000000000; x = step(x, i) / 3;"
+                + " if (i * 2 + 1 < 40 - i) { small += 1; } mixed = mix(x, i); i += 1; }\n"
+                + "mixed = mix(3000000000, 2);";
+        Interpreter specializing = Scripts.run(source, Interpreter.Engine.SPECIALIZING);
+        Interpreter reference = Scripts.run(source, Interpreter.Engine.TREE);
+
+        for (String name : List.of("total", "big", "x", "small", "mixed")) {
+            assertEquals(reference.getVariableValue(name), specializing.getVariableValue(name), name);
+        }
+        assertEquals(13, specializing.getVariableValue("small"));
+        assertEquals(8999999997L, specializing.getVariableValue("mixed"));
+    }
+}
@@ -0,0 +1,69 @@
+package org.rhm.test;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.rhm.Interpreter;
+import org.rhm.Parser;
+import org.rhm.SourceException;
+import org.rhm.vm.Bytecode;
+import org.rhm.vm.BytecodeCompiler;
+
+class VirtualMachineTest {
+
+    @Test
+    void testEnginesAgree() {
+        String source = "i = 0; total = 0; while (i < 100) { i += 1; if (i % 2 == 0) { total += i; } } "
+                + "for (x in [1, 2, 3]) { last = x * 10; } m = max(last, 5) + 1; big = 3000000000 + i;";
+
+        Interpreter tree = Scripts.run(source, Interpreter.Engine.TREE);
+        Interpreter vm = Scripts.run(source, Interpreter.Engine.BYTECODE);
+
+        for (String name : new String[]{"i", "total", "last", "m", "big"}) {
+            assertEquals(tree.getVariableValue(name), vm.getVariableValue(name), name);
+        }
+        assertEquals(2550, vm.getVariableValue("total"));
+        assertEquals(30, vm.getVariableValue("last"));
+    }
+
+    @Test
+    void testExpressionsAndChainedAssignment() {
+        Interpreter interpreter = Scripts.interpreter("a = b = 2 + 3 * 4", Interpreter.Engine.BYTECODE);
+        Parser parser = interpreter.getParser();
+
+        Object result = parser.parseExpression();
+
+        assertInstanceOf(Parser.Assignment.class, result);
+        assertEquals(14, ((Parser.Assignment) result).value());
+        assertEquals(14, interpreter.getVariableValue("a"));
+        assertEquals(14, interpreter.getVariableValue("b"));
+    }
+
+    @Test
+    void testCompiledCodeIsCompact() {
+        Parser parser = Scripts.interpreter("i = 0; while (i < 10) { i += 1; }").getParser();
+        parser.getAstParser().parseStatement();
+
+        Bytecode bytecode = BytecodeCompiler.compile(parser.getAstParser().parseStatement());
+
+        assertEquals(2, bytecode.maxStack());
+        assertTrue(bytecode.disassemble().contains("JUMP_IF_FALSE"));
+    }
+
+    @Test
+    void testErrorsReportSourcePosition() {
+        SourceException error = assertThrows(SourceException.class,
+                () -> Scripts.run("a = 1;\nb = a + c;", Interpreter.Engine.BYTECODE));
+        assertEquals("Variable not defined: c", error.getDiagnostic().message());
+        assertEquals(2, error.getDiagnostic().line());
+        assertEquals(9, error.getDiagnostic().column());
+
+        error = assertThrows(SourceException.class,
+                () -> Scripts.run("if (1) { x = 2; }", Interpreter.Engine.BYTECODE));
+        assertEquals("Condition must evaluate to a boolean value.", error.getDiagnostic().message());
+
+        error = assertThrows(SourceException.class,
+                () -> Scripts.run("nope(1);", Interpreter.Engine.BYTECODE));
+        assertEquals("Unknown function: nope", error.getDiagnostic().message());
+    }
+}